@@ -0,0 +1,56 @@
+package com.paybase.testtask.jmh;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-point arithmetic done by {@link AccountEntity#credit} and {@link AccountEntity#debit},
+ * with the equivalent {@link BigDecimal} operations as a baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountArithmeticBenchmark {
+
+    private final Money amount = Money.of("12.3456");
+    private final BigDecimal decimalAmount = new BigDecimal("12.3456");
+    private AccountEntity account;
+    private BigDecimal decimalBalance;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        account = new AccountEntity();
+        account.setBalance(Money.of("1000000000.0000"));
+        decimalBalance = new BigDecimal("1000000000.0000");
+    }
+
+    @Benchmark
+    public Money credit() {
+        account.credit(amount);
+        return account.getBalance();
+    }
+
+    @Benchmark
+    public Money creditThenDebit() {
+        account.credit(amount);
+        account.debit(amount);
+        return account.getBalance();
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalCreditThenDebit() {
+        decimalBalance = decimalBalance.add(decimalAmount);
+        if (decimalBalance.compareTo(decimalAmount) < 0) {
+            throw new IllegalStateException();
+        }
+        decimalBalance = decimalBalance.subtract(decimalAmount);
+        return decimalBalance;
+    }
+}
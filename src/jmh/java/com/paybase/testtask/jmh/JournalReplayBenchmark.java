@@ -0,0 +1,81 @@
+package com.paybase.testtask.jmh;
+
+import com.paybase.testtask.config.JournalProperties;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.service.JournalReader;
+import com.paybase.testtask.service.LedgerJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full replay of a journal from the page cache. Setup prints the journal size, so MB/s is
+ * that size over the measured time; run {@code -p entries=10000000} for the large case.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalReplayBenchmark {
+
+    @Param({"1000000"})
+    public int entries;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal-bench");
+        var journal = new LedgerJournal(
+                new JournalProperties(true, directory, DataSize.ofMegabytes(256), Duration.ofSeconds(30)),
+                new SimpleMeterRegistry());
+
+        var tx = new TransactionEntity();
+        tx.setType(TransactionType.TRANSFER);
+        tx.setFromAccountId(1L);
+        tx.setToAccountId(2L);
+        tx.setAmount(Money.of("1.2500"));
+        tx.setCurrency("USD");
+        tx.setStatus("COMPLETED");
+        tx.setFromBalanceBefore(Money.of("1000.0000"));
+        tx.setFromBalanceAfter(Money.of("998.7500"));
+        tx.setToBalanceBefore(Money.of("10.0000"));
+        tx.setToBalanceAfter(Money.of("11.2500"));
+        tx.setReference("invoice");
+
+        long end = 0;
+        var now = Instant.now();
+        for (int i = 0; i < entries; i++) {
+            tx.setId((long) i);
+            tx.setIdempotencyKey("bench-" + i);
+            tx.setCreatedAt(now);
+            end = journal.append(tx);
+        }
+        journal.awaitDurable(end);
+        journal.destroy();
+        System.out.printf("%njournal: %d entries, %.1f MB%n", entries, end / 1e6);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long replay(Blackhole blackhole) {
+        return JournalReader.open(directory, 0).replay(blackhole::consume);
+    }
+}
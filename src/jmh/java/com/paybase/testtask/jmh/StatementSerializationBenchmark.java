@@ -0,0 +1,73 @@
+package com.paybase.testtask.jmh;
+
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.TransactionDetailsResponse;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity-to-DTO mapping and JSON serialization of a statement page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatementSerializationBenchmark {
+
+    @Param({"100", "1000"})
+    public int rows;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private List<TransactionEntity> statement;
+    private TransactionEntity single;
+
+    @Setup
+    public void setUp() {
+        statement = new ArrayList<>(rows);
+        Instant now = Instant.now();
+        Money balance = Money.of("1000.0000");
+        for (int i = 0; i < rows; i++) {
+            TransactionEntity tx = new TransactionEntity();
+            tx.setId((long) i + 1);
+            tx.setIdempotencyKey("key-" + i);
+            tx.setType(TransactionType.TRANSFER);
+            tx.setFromAccountId(1L);
+            tx.setToAccountId(2L);
+            tx.setAmount(Money.of("1.2500"));
+            tx.setCurrency("USD");
+            tx.setStatus("COMPLETED");
+            tx.setFromBalanceBefore(balance);
+            balance = balance.minus(tx.getAmount());
+            tx.setFromBalanceAfter(balance);
+            tx.setReference("invoice " + i);
+            tx.setCreatedAt(now.plusMillis(i));
+            statement.add(tx);
+        }
+        single = statement.get(0);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public TransactionDetailsResponse mapOne() {
+        return TransactionDetailsResponse.from(single);
+    }
+
+    @Benchmark
+    public byte[] serializeEntities() {
+        return jsonMapper.writeValueAsBytes(statement);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() {
+        return jsonMapper.writeValueAsBytes(statement.stream().map(TransactionDetailsResponse::from).toList());
+    }
+}
@@ -0,0 +1,146 @@
+package com.paybase.testtask.jmh;
+
+import com.paybase.testtask.config.AccountBucketProperties;
+import com.paybase.testtask.config.BalanceCacheProperties;
+import com.paybase.testtask.config.ConcurrencyProperties;
+import com.paybase.testtask.config.IdempotencyKeyFilterProperties;
+import com.paybase.testtask.config.IdempotencyProperties;
+import com.paybase.testtask.config.JournalProperties;
+import com.paybase.testtask.config.LedgerMetricsProperties;
+import com.paybase.testtask.config.OutboxProperties;
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountBuckets;
+import com.paybase.testtask.service.BalanceCache;
+import com.paybase.testtask.service.ContentionTracker;
+import com.paybase.testtask.service.IdempotencyKeyFilter;
+import com.paybase.testtask.service.IdempotencyStore;
+import com.paybase.testtask.service.LedgerJournal;
+import com.paybase.testtask.service.LedgerMetrics;
+import com.paybase.testtask.service.OutboxWriter;
+import com.paybase.testtask.service.TransactionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TransactionService#create} for each transaction type against in-memory repository
+ * stubs, so only the service's own dispatch, arithmetic and entity building is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionExecuteBenchmark {
+
+    @Param({"DEPOSIT", "WITHDRAWAL", "TRANSFER"})
+    public TransactionType type;
+
+    private TransactionService service;
+    private TransactionRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<Long, AccountEntity> accounts = new ConcurrentHashMap<>();
+        accounts.put(1L, account(1L));
+        accounts.put(2L, account(2L));
+
+        var registry = new SimpleMeterRegistry();
+        var txRepo = stub(TransactionRepository.class, (name, args) -> switch (name) {
+            case "save" -> args[0];
+            default -> throw new UnsupportedOperationException(name);
+        });
+        var accountRepo = stub(AccountRepository.class, (name, args) -> switch (name) {
+            case "lockById", "findById" -> Optional.ofNullable(accounts.get((Long) args[0]));
+            case "lockAllById", "findAllById" -> ((Collection<?>) args[0]).stream().map(accounts::get).toList();
+            default -> throw new UnsupportedOperationException(name);
+        });
+
+        // claims and lookups of idempotency keys are database round trips, not measured here
+        var keys = new IdempotencyStore(new IdempotencyProperties(Duration.ofDays(30), false, 0, 1), new JdbcTemplate() {
+            @Override
+            public int update(String sql, Object... args) {
+                return 1;
+            }
+
+            @Override
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+                return List.of();
+            }
+        }, null, registry);
+        var keyFilter = new IdempotencyKeyFilter(
+                new IdempotencyKeyFilterProperties(false, 1, 0.01, 0, 1, 0), keys, registry);
+        var balanceCache = new BalanceCache(new BalanceCacheProperties(false, Duration.ofSeconds(1)));
+        var contention = new ContentionTracker(new ConcurrencyProperties(ConcurrencyProperties.Mode.PESSIMISTIC,
+                1, Duration.ZERO, Duration.ZERO, Duration.ZERO, 1.0, Duration.ZERO), registry);
+
+        var metrics = new LedgerMetrics(new LedgerMetricsProperties(16, Duration.ofMillis(200)), registry);
+
+        var outbox = new OutboxWriter(new OutboxProperties(false, false, 200, 1000, 500, "memory", 0, Path.of("unused")),
+                null, null);
+
+        var journal = new LedgerJournal(
+                new JournalProperties(false, Path.of("unused"), DataSize.ofMegabytes(1), Duration.ZERO), registry);
+
+        // no account is bucketed until the first refresh, which never runs here
+        var buckets = new AccountBuckets(new AccountBucketProperties(64, false, 1000), null, accountRepo, null, null,
+                registry);
+
+        service = new TransactionService(accountRepo, txRepo, keyFilter, keys, balanceCache, contention, metrics, outbox,
+                journal, buckets);
+        request = new TransactionRequest(
+                "bench",
+                type,
+                type == TransactionType.DEPOSIT ? null : 1L,
+                type == TransactionType.WITHDRAWAL ? null : 2L,
+                new BigDecimal("0.0100"),
+                "USD",
+                "bench"
+        );
+    }
+
+    @Benchmark
+    public TransactionEntity execute() {
+        return service.create(request);
+    }
+
+    private static AccountEntity account(Long id) {
+        AccountEntity account = new AccountEntity();
+        account.setId(id);
+        account.setCurrency("USD");
+        account.setBalance(Money.of("1000000000.0000"));
+        return account;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.handle(method.getName(), args != null ? args : new Object[0]));
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object handle(String method, Object[] args) throws Throwable;
+    }
+}
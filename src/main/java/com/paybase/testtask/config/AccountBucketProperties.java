@@ -0,0 +1,19 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for accounts whose balance is split across bucket rows.
+ *
+ * @param maxBuckets          upper bound for the bucket count of one account
+ * @param rebalanceEnabled    periodically spread each bucketed account's balance evenly
+ * @param rebalanceIntervalMs pause between rebalancing passes
+ */
+@ConfigurationProperties("ledger.buckets")
+public record AccountBucketProperties(
+        @DefaultValue("64") int maxBuckets,
+        @DefaultValue("true") boolean rebalanceEnabled,
+        @DefaultValue("1000") long rebalanceIntervalMs
+) {
+}
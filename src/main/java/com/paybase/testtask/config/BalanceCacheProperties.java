@@ -0,0 +1,20 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the in-process balance cache.
+ *
+ * @param enabled      serve balance reads from balances published after commit
+ * @param maxStaleness entries older than this are ignored and the database is read instead;
+ *                     bounds how far behind writes made by other instances a read can be
+ */
+@ConfigurationProperties("ledger.balance-cache")
+public record BalanceCacheProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("1s") Duration maxStaleness
+) {
+}
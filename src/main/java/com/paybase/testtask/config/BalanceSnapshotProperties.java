@@ -0,0 +1,28 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the end-of-day balance snapshot job.
+ *
+ * @param enabled      run the job on a schedule
+ * @param intervalMs   pause between runs; a run with no finished day left is a single query
+ * @param chunkSize    accounts snapshotted per database transaction
+ * @param parallelism  chunks processed at the same time
+ * @param backfillDays how many past days the very first run covers
+ * @param settleDelay  how long after midnight UTC a day is considered closed, so transactions
+ *                     stamped just before midnight have committed
+ */
+@ConfigurationProperties("ledger.snapshots")
+public record BalanceSnapshotProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("3600000") long intervalMs,
+        @DefaultValue("1000") int chunkSize,
+        @DefaultValue("4") int parallelism,
+        @DefaultValue("30") int backfillDays,
+        @DefaultValue("5m") Duration settleDelay
+) {
+}
@@ -0,0 +1,35 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * How writers protect account balances.
+ *
+ * @param mode                 PESSIMISTIC locks account rows; OPTIMISTIC relies on the
+ *                             {@code version} column and retries on conflict
+ * @param maxAttempts          attempts per request in optimistic mode, including the first
+ * @param backoffDelay         base delay before the first retry
+ * @param backoffJitter        random extra delay added to each retry
+ * @param backoffMaxDelay      upper bound for the exponential backoff
+ * @param fallbackConflictRate conflict rate (0..1, moving average) above which an account
+ *                             is switched to row locking
+ * @param fallbackDuration     how long an account stays on row locking once switched
+ */
+@ConfigurationProperties("ledger.concurrency")
+public record ConcurrencyProperties(
+        @DefaultValue("PESSIMISTIC") Mode mode,
+        @DefaultValue("5") int maxAttempts,
+        @DefaultValue("5ms") Duration backoffDelay,
+        @DefaultValue("5ms") Duration backoffJitter,
+        @DefaultValue("100ms") Duration backoffMaxDelay,
+        @DefaultValue("0.3") double fallbackConflictRate,
+        @DefaultValue("1m") Duration fallbackDuration
+) {
+
+    public enum Mode {
+        PESSIMISTIC, OPTIMISTIC
+    }
+}
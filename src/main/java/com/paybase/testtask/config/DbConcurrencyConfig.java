@@ -0,0 +1,55 @@
+package com.paybase.testtask.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the application {@link DataSource} in a {@link LimitedDataSource}. Used with
+ * virtual threads, where request concurrency is no longer bounded by the Tomcat pool.
+ * With sharding, each shard's pool gets a limit of its own.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "ledger.db-concurrency", name = "enabled", havingValue = "true")
+public class DbConcurrencyConfig {
+
+    @Bean
+    static BeanPostProcessor dbConcurrencyLimiter(Environment environment, ObjectProvider<MeterRegistry> registry) {
+
+        var props = Binder.get(environment)
+                .bindOrCreate("ledger.db-concurrency", DbConcurrencyProperties.class);
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+
+                if (!(bean instanceof DataSource dataSource) || bean instanceof LimitedDataSource) {
+                    return bean;
+                }
+                if (bean instanceof ShardRoutingDataSource sharded) {
+                    return sharded.wrapShards((shard, pool) -> limit(pool, Tags.of("shard", String.valueOf(shard))));
+                }
+                return limit(dataSource, Tags.empty());
+            }
+
+            private LimitedDataSource limit(DataSource dataSource, Tags tags) {
+
+                int permits = props.permits() > 0 ? props.permits()
+                        : dataSource instanceof HikariDataSource hikari ? hikari.getMaximumPoolSize()
+                        : 10;
+                var limited = new LimitedDataSource(dataSource, permits, props.acquireTimeout());
+                registry.ifAvailable(r -> limited.bindTo(r, tags));
+                return limited;
+            }
+        };
+    }
+}
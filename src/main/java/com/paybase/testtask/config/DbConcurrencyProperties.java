@@ -0,0 +1,22 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Caps how many threads may hold a database connection at once.
+ *
+ * @param enabled        wrap the application {@code DataSource} with the limit
+ * @param permits        concurrent connections allowed; {@code 0} uses the Hikari pool size, per
+ *                       shard with sharding
+ * @param acquireTimeout how long a thread waits for a permit before failing
+ */
+@ConfigurationProperties("ledger.db-concurrency")
+public record DbConcurrencyProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("0") int permits,
+        @DefaultValue("30s") Duration acquireTimeout
+) {
+}
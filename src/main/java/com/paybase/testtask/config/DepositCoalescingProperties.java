@@ -0,0 +1,21 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for coalescing credits to the same account.
+ *
+ * @param enabled  collect deposits and refunds per account and apply them together
+ * @param window   how long the first credit to an account waits for others to join it
+ * @param maxBatch credits that close a window early
+ */
+@ConfigurationProperties("ledger.deposit-coalescing")
+public record DepositCoalescingProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("2ms") Duration window,
+        @DefaultValue("256") int maxBatch
+) {
+}
@@ -0,0 +1,26 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the in-process idempotency key filter.
+ *
+ * @param enabled            when false every key is treated as possibly known and looked up
+ * @param initialCapacity    keys the first filter stage is sized for; later stages double
+ * @param falsePositiveRate  target false-positive rate across all stages
+ * @param warmupSize         number of most recent keys loaded from the database at startup
+ *                           and on every rebuild
+ * @param maxStages          stages the filter may grow to before it looks up every key
+ * @param rebuildIntervalMs  pause between rebuilds from the most recent keys
+ */
+@ConfigurationProperties("ledger.idempotency-filter")
+public record IdempotencyKeyFilterProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1000000") int initialCapacity,
+        @DefaultValue("0.01") double falsePositiveRate,
+        @DefaultValue("1000000") int warmupSize,
+        @DefaultValue("4") int maxStages,
+        @DefaultValue("86400000") long rebuildIntervalMs
+) {
+}
@@ -0,0 +1,23 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the idempotency key store.
+ *
+ * @param retention         how long a key is remembered; a request retried later is treated as new
+ * @param purgeEnabled      purge expired keys on a schedule
+ * @param purgeIntervalMs   pause between purges
+ * @param purgeBatchSize    keys deleted per statement, so a purge never holds many row locks at once
+ */
+@ConfigurationProperties("ledger.idempotency")
+public record IdempotencyProperties(
+        @DefaultValue("30d") Duration retention,
+        @DefaultValue("true") boolean purgeEnabled,
+        @DefaultValue("600000") long purgeIntervalMs,
+        @DefaultValue("5000") int purgeBatchSize
+) {
+}
@@ -0,0 +1,26 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Local transaction journal settings.
+ *
+ * @param enabled      append every committed transaction to the journal
+ * @param directory    where segment files live
+ * @param segmentSize  size of each memory-mapped segment file
+ * @param flushTimeout how long a request waits for its entry to reach the disk before
+ *                     it is answered anyway
+ */
+@ConfigurationProperties("ledger.journal")
+public record JournalProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("journal") Path directory,
+        @DefaultValue("64MB") DataSize segmentSize,
+        @DefaultValue("5s") Duration flushTimeout
+) {
+}
@@ -0,0 +1,21 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Hot-path metrics settings.
+ *
+ * @param shards            number of account shards metrics are tagged with; keeps the tag
+ *                          cardinality bounded however many accounts there are
+ * @param slowLockThreshold row-lock waits longer than this are logged with the account and
+ *                          merchant ids
+ */
+@ConfigurationProperties("ledger.metrics")
+public record LedgerMetricsProperties(
+        @DefaultValue("16") int shards,
+        @DefaultValue("200ms") Duration slowLockThreshold
+) {
+}
@@ -0,0 +1,29 @@
+package com.paybase.testtask.config;
+
+import com.paybase.testtask.service.FileOutboxSink;
+import com.paybase.testtask.service.InMemoryOutboxSink;
+import com.paybase.testtask.service.OutboxSink;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Picks the outbox sink from {@code ledger.outbox.sink}; declaring an {@link OutboxSink}
+ * bean replaces it, e.g. with a message broker publisher.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(OutboxSink.class)
+    OutboxSink outboxSink(OutboxProperties props, JsonMapper jsonMapper) {
+        return switch (props.sink()) {
+            case "memory" -> new InMemoryOutboxSink(props.memoryCapacity());
+            case "file" -> new FileOutboxSink(props.file(), jsonMapper);
+            default -> throw new IllegalStateException("Unknown ledger.outbox.sink: " + props.sink());
+        };
+    }
+}
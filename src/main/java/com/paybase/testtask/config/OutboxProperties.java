@@ -0,0 +1,34 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Transactional outbox settings.
+ *
+ * @param enabled          write an outbox row for every account a transaction touches
+ * @param relayEnabled     run the background relay in this instance; without it nothing
+ *                         deletes events from the outbox
+ * @param pollIntervalMs   pause between relay passes when there is nothing left to drain
+ * @param rollupIntervalMs pause between passes of the merchant rollup feed, which runs whether
+ *                         or not the relay does
+ * @param batchSize        events read, published and deleted per partition in one transaction
+ * @param sink             where the relay publishes: {@code file}, forced to disk before the
+ *                         events are deleted, or {@code memory}, which drops the oldest
+ * @param memoryCapacity   events the in-memory sink keeps, oldest dropped first
+ * @param file             NDJSON file the file sink appends to
+ */
+@ConfigurationProperties("ledger.outbox")
+public record OutboxProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("true") boolean relayEnabled,
+        @DefaultValue("200") long pollIntervalMs,
+        @DefaultValue("1000") long rollupIntervalMs,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("file") String sink,
+        @DefaultValue("10000") int memoryCapacity,
+        @DefaultValue("outbox-events.ndjson") Path file
+) {
+}
@@ -0,0 +1,41 @@
+package com.paybase.testtask.config;
+
+/**
+ * Per-thread read-your-writes flag. While it is set, read-only transactions read from the
+ * primary instead of the replica, so a client sees its own writes even when the replica
+ * has not replayed them yet.
+ */
+public final class ReadConsistency {
+
+    private static final ThreadLocal<Boolean> PRIMARY = new ThreadLocal<>();
+
+    private ReadConsistency() {
+    }
+
+    /**
+     * Sets the flag until the returned scope is closed.
+     */
+    public static Scope readYourWrites() {
+
+        var previous = PRIMARY.get();
+        PRIMARY.set(Boolean.TRUE);
+        return () -> {
+            if (previous == null) {
+                PRIMARY.remove();
+            } else {
+                PRIMARY.set(previous);
+            }
+        };
+    }
+
+    public static boolean primaryRequired() {
+        return Boolean.TRUE.equals(PRIMARY.get());
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.paybase.testtask.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Connection pool to the read replica plus its lag guard. The replica is only used while
+ * the last check found it reachable and no further behind than {@code maxLag}; until the
+ * first check succeeds, and whenever a check fails, reads stay on the primary.
+ */
+@Slf4j
+public class ReadReplica implements DisposableBean {
+
+    private final ReplicaProperties props;
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbc;
+
+    private volatile double lagSeconds = Double.NaN;
+    private volatile boolean usable;
+
+    public ReadReplica(ReplicaProperties props, MeterRegistry registry) {
+        this.props = props;
+
+        this.dataSource = new HikariDataSource();
+        this.dataSource.setPoolName("replica");
+        this.dataSource.setJdbcUrl(props.url());
+        this.dataSource.setUsername(props.username());
+        this.dataSource.setPassword(props.password());
+        this.dataSource.setMaximumPoolSize(props.maxPoolSize());
+        this.dataSource.setReadOnly(true);
+        this.jdbc = new JdbcTemplate(dataSource);
+
+        Gauge.builder("ledger.replica.lag", this, replica -> replica.lagSeconds)
+                .description("Replication lag of the read replica, NaN while it is unreachable")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    public DataSource dataSource() {
+        return dataSource;
+    }
+
+    public boolean isUsable() {
+        return usable;
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.replica.lag-check-interval-ms:1000}")
+    public void check() {
+
+        boolean wasUsable = usable;
+        try {
+            Double lag = jdbc.queryForObject(props.lagQuery(), Double.class);
+            lagSeconds = lag != null ? lag : 0;
+            usable = lagSeconds * 1000 <= props.maxLag().toMillis();
+        } catch (DataAccessException ex) {
+            lagSeconds = Double.NaN;
+            usable = false;
+            if (wasUsable) {
+                log.warn("Read replica unreachable, reading from the primary", ex);
+            }
+            return;
+        }
+
+        if (wasUsable && !usable) {
+            log.warn("Read replica is {}s behind, reading from the primary", lagSeconds);
+        } else if (!wasUsable && usable) {
+            log.info("Read replica is {}s behind, reading from it", lagSeconds);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,25 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the ledger reconciliation job.
+ *
+ * @param enabled              run the job on a schedule
+ * @param intervalMs           pause between scheduled runs; the first one waits this long too
+ * @param chunkSize            accounts checked per database transaction
+ * @param parallelism          chunks checked at the same time
+ * @param fetchSize            transaction rows the driver fetches per round trip while streaming
+ * @param maxStoredMismatches  mismatches kept per run; the rest are only counted
+ */
+@ConfigurationProperties("ledger.reconciliation")
+public record ReconciliationProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("86400000") long intervalMs,
+        @DefaultValue("500") int chunkSize,
+        @DefaultValue("4") int parallelism,
+        @DefaultValue("1000") int fetchSize,
+        @DefaultValue("10000") int maxStoredMismatches
+) {
+}
@@ -0,0 +1,35 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Read replica that read-only transactions are routed to.
+ *
+ * @param enabled             route read-only transactions to the replica
+ * @param url                 JDBC URL of the replica
+ * @param username            replica user
+ * @param password            replica password
+ * @param maxPoolSize         connections kept to the replica
+ * @param maxLag              replication lag beyond which reads go back to the primary
+ * @param lagCheckIntervalMs  pause between lag checks
+ * @param lagQuery            query returning the replica's lag in seconds; the default reports
+ *                            0 while the replica has replayed everything it received
+ */
+@ConfigurationProperties("ledger.replica")
+public record ReplicaProperties(
+        @DefaultValue("false") boolean enabled,
+        String url,
+        String username,
+        String password,
+        @DefaultValue("10") int maxPoolSize,
+        @DefaultValue("1s") Duration maxLag,
+        @DefaultValue("1000") long lagCheckIntervalMs,
+        @DefaultValue("""
+                SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                            ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END""")
+        String lagQuery
+) {
+}
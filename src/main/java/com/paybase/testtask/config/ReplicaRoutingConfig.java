@@ -0,0 +1,69 @@
+package com.paybase.testtask.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+
+/**
+ * Wraps the application {@link DataSource} in a {@link ReplicaRoutingDataSource}, so every
+ * {@code @Transactional(readOnly = true)} method reads from the replica. A request carrying
+ * {@value #READ_YOUR_WRITES_HEADER}{@code : true} reads from the primary instead.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "ledger.replica", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaRoutingConfig {
+
+    public static final String READ_YOUR_WRITES_HEADER = "X-Read-Your-Writes";
+
+    @Bean
+    ReadReplica readReplica(ReplicaProperties props, MeterRegistry registry) {
+        return new ReadReplica(props, registry);
+    }
+
+    @Bean
+    static BeanPostProcessor replicaRouting(ObjectProvider<ReadReplica> replica) {
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+
+                if (!(bean instanceof DataSource primary) || bean instanceof ReplicaRoutingDataSource) {
+                    return bean;
+                }
+                return new ReplicaRoutingDataSource(primary, replica.getObject());
+            }
+        };
+    }
+
+    @Bean
+    OncePerRequestFilter readYourWritesFilter() {
+
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                    throws ServletException, IOException {
+
+                if (!Boolean.parseBoolean(request.getHeader(READ_YOUR_WRITES_HEADER))) {
+                    chain.doFilter(request, response);
+                    return;
+                }
+                try (var scope = ReadConsistency.readYourWrites()) {
+                    chain.doFilter(request, response);
+                }
+            }
+        };
+    }
+}
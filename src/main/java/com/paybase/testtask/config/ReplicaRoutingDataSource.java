@@ -0,0 +1,44 @@
+package com.paybase.testtask.config;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to the read replica and everything else to the primary.
+ *
+ * <p>The physical connection is only fetched at the first statement, once the transaction
+ * manager has marked the connection read-only, which is what tells the two apart. A
+ * read-only transaction still goes to the primary when the replica is lagging or
+ * unreachable, or when the thread asked for {@link ReadConsistency#readYourWrites()}.
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    private enum Target { PRIMARY, REPLICA }
+
+    public ReplicaRoutingDataSource(DataSource primary, ReadReplica replica) {
+        super(primary);
+
+        var reads = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return replica.isUsable() && !ReadConsistency.primaryRequired() ? Target.REPLICA : Target.PRIMARY;
+            }
+        };
+        reads.setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica.dataSource()));
+        reads.afterPropertiesSet();
+        setReadOnlyDataSource(reads);
+    }
+
+    /**
+     * Closes the primary pool, which this wrapper replaces as the application bean.
+     */
+    @Override
+    public void close() throws Exception {
+        if (getTargetDataSource() instanceof AutoCloseable primary) {
+            primary.close();
+        }
+    }
+}
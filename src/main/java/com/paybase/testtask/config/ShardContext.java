@@ -0,0 +1,39 @@
+package com.paybase.testtask.config;
+
+/**
+ * Shard the current thread's database work goes to. Without one, work goes to shard 0.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * Routes the thread to {@code shard} until the returned scope is closed. Scopes nest.
+     */
+    public static Scope enter(int shard) {
+
+        var previous = CURRENT.get();
+        CURRENT.set(shard);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
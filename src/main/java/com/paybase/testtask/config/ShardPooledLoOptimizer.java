@@ -0,0 +1,69 @@
+package com.paybase.testtask.config;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.PooledLoOptimizer;
+import org.hibernate.sql.ast.tree.expression.Expression;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pooled-lo id allocation with one pool per shard. Every shard has its own sequence, but
+ * Hibernate keeps a single optimizer per generator in the one session factory; shared, a
+ * pool fetched from one shard's sequence would go on to number rows written to the others.
+ *
+ * <p>The pool is picked by the thread's {@link ShardContext}, which is the shard the
+ * session's connection, and so the sequence call, goes to. Instantiated by Hibernate from
+ * {@code hibernate.id.optimizer.pooled.preferred}.
+ */
+public class ShardPooledLoOptimizer implements Optimizer {
+
+    private final Class<?> returnClass;
+    private final int incrementSize;
+    private final Map<Integer, PooledLoOptimizer> shards = new ConcurrentHashMap<>();
+
+    public ShardPooledLoOptimizer(Class<?> returnClass, int incrementSize) {
+        this.returnClass = returnClass;
+        this.incrementSize = incrementSize;
+    }
+
+    private PooledLoOptimizer current() {
+        var shard = ShardContext.current();
+        return shards.computeIfAbsent(shard != null ? shard : 0,
+                ignored -> new PooledLoOptimizer(returnClass, incrementSize));
+    }
+
+    @Override
+    public Serializable generate(AccessCallback callback) {
+        return current().generate(callback);
+    }
+
+    @Override
+    public void reset() {
+        shards.values().forEach(PooledLoOptimizer::reset);
+    }
+
+    @Override
+    public IntegralDataTypeHolder getLastSourceValue() {
+        return current().getLastSourceValue();
+    }
+
+    @Override
+    public int getIncrementSize() {
+        return incrementSize;
+    }
+
+    @Override
+    public boolean applyIncrementSizeToSourceValues() {
+        return true;
+    }
+
+    @Override
+    public Expression createLowValueExpression(Expression databaseValue, SessionFactoryImplementor sessionFactory) {
+        return current().createLowValueExpression(databaseValue, sessionFactory);
+    }
+}
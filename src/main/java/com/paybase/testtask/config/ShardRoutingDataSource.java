@@ -0,0 +1,69 @@
+package com.paybase.testtask.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One connection pool per shard, picked by the thread's {@link ShardContext} when a
+ * connection is requested. The shard must therefore be chosen before a transaction starts,
+ * and a transaction never spans shards.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final List<HikariDataSource> shards;
+
+    public ShardRoutingDataSource(List<HikariDataSource> shards) {
+        this(shards, (shard, pool) -> pool);
+    }
+
+    private ShardRoutingDataSource(List<HikariDataSource> shards, ShardWrapper wrapper) {
+
+        this.shards = List.copyOf(shards);
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, wrapper.wrap(shard, shards.get(shard)));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(targets.get(0));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * The shard pools themselves, bypassing any wrapper.
+     */
+    public List<HikariDataSource> shards() {
+        return shards;
+    }
+
+    /**
+     * Routes over the same pools, each reached through {@code wrapper}. Used by data source
+     * post-processors, which would otherwise wrap this bean and hide it from code that
+     * needs the shards.
+     */
+    public ShardRoutingDataSource wrapShards(ShardWrapper wrapper) {
+        return new ShardRoutingDataSource(shards, wrapper);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    @Override
+    public void close() {
+        shards.forEach(HikariDataSource::close);
+    }
+
+    @FunctionalInterface
+    public interface ShardWrapper {
+
+        DataSource wrap(int shard, HikariDataSource pool);
+    }
+}
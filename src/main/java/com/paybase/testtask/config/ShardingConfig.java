@@ -0,0 +1,174 @@
+package com.paybase.testtask.config;
+
+import com.paybase.testtask.service.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.flywaydb.core.Flyway;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.flyway.autoconfigure.FlywayMigrationStrategy;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the application {@link DataSource} with a {@link ShardRoutingDataSource} over
+ * {@code ledger.sharding.databases}, migrates every shard on startup, and routes requests
+ * for {@code /api/accounts/{id}/...} and {@code /api/transactions/{id}} to the shard that
+ * owns the id. Writes are routed by {@code TransactionProcessor}. Transaction ids come from
+ * the sequence of the shard they are written to, see {@link ShardPooledLoOptimizer}.
+ *
+ * <p>Background jobs visit every shard in turn themselves; anything else that runs outside
+ * a routed request or a shard scope goes to shard 0.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "ledger.sharding", name = "enabled", havingValue = "true")
+public class ShardingConfig {
+
+    private static final String SHARD_SCOPE = ShardingConfig.class.getName() + ".scope";
+
+    @Bean
+    ShardRoutingDataSource dataSource(
+            ShardingProperties props,
+            @Value("${ledger.single-writer.enabled:false}") boolean singleWriter,
+            @Value("${ledger.replica.enabled:false}") boolean replica
+    ) {
+        if (singleWriter) {
+            // its owner threads take requests for accounts on every shard
+            throw new IllegalStateException("ledger.single-writer cannot be combined with ledger.sharding");
+        }
+        if (replica) {
+            // ledger.replica names one replica, of one primary
+            throw new IllegalStateException("ledger.replica cannot be combined with ledger.sharding");
+        }
+        if (props.databases().isEmpty()) {
+            throw new IllegalStateException("ledger.sharding.databases must list at least one database");
+        }
+
+        List<HikariDataSource> shards = new ArrayList<>();
+        for (int shard = 0; shard < props.databases().size(); shard++) {
+            var db = props.databases().get(shard);
+            var pool = new HikariDataSource();
+            pool.setPoolName("shard-" + shard);
+            pool.setJdbcUrl(db.url());
+            pool.setUsername(db.username());
+            pool.setPassword(db.password());
+            pool.setMaximumPoolSize(db.maxPoolSize());
+            shards.add(pool);
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer shardIdAllocation() {
+        return properties -> properties.put(
+                AvailableSettings.PREFERRED_POOLED_OPTIMIZER, ShardPooledLoOptimizer.class.getName());
+    }
+
+    @Bean
+    FlywayMigrationStrategy shardMigrations(ShardRoutingDataSource dataSource) {
+
+        return flyway -> {
+            var shards = dataSource.shards();
+            for (int shard = 0; shard < shards.size(); shard++) {
+                Flyway.configure(flyway.getConfiguration().getClassLoader())
+                        .configuration(flyway.getConfiguration())
+                        .dataSource(shards.get(shard))
+                        .load()
+                        .migrate();
+                alignIds(shards.get(shard), shard);
+            }
+        };
+    }
+
+    @Bean
+    WebMvcConfigurer shardRoutingInterceptor(ShardRouter router) {
+
+        var interceptor = new AsyncHandlerInterceptor() {
+
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+                @SuppressWarnings("unchecked")
+                var variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+                var id = variables != null ? variables.get("id") : null;
+                if (id == null) {
+                    return true;
+                }
+                try {
+                    request.setAttribute(SHARD_SCOPE, router.enter(ShardRouter.shardOf(Long.parseLong(id))));
+                } catch (NumberFormatException ex) {
+                    // not an id; the handler rejects it
+                }
+                return true;
+            }
+
+            @Override
+            public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                leave(request);
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+                leave(request);
+            }
+
+            private void leave(HttpServletRequest request) {
+                if (request.getAttribute(SHARD_SCOPE) instanceof ShardContext.Scope scope) {
+                    request.removeAttribute(SHARD_SCOPE);
+                    scope.close();
+                }
+            }
+        };
+
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(interceptor).addPathPatterns("/api/accounts/*/**", "/api/transactions/*");
+            }
+        };
+    }
+
+    /**
+     * Moves the id generators of a shard that has not issued ids from its range yet to the
+     * start of that range. Shard 0's range starts at 0, which also keeps the ids of a
+     * database that predates sharding valid.
+     */
+    static void alignIds(DataSource shardDataSource, int shard) {
+
+        if (shard == 0) {
+            return;
+        }
+        long first = ShardRouter.firstId(shard) + 1;
+
+        var jdbc = new JdbcTemplate(shardDataSource);
+        Long maxAccount = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM accounts", Long.class);
+        if (maxAccount != null && maxAccount < first) {
+            var product = jdbc.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+            if ("PostgreSQL".equals(product)) {
+                jdbc.queryForObject("SELECT setval(pg_get_serial_sequence('accounts', 'id'), ?, false)", Long.class, first);
+            } else {
+                jdbc.execute("ALTER TABLE accounts ALTER COLUMN id RESTART WITH " + first);
+            }
+        }
+
+        // ids are allocated pooled-lo: the value read from the sequence is the first id of a pool
+        Long maxTransaction = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM transactions", Long.class);
+        if (maxTransaction != null && maxTransaction < first) {
+            jdbc.execute("ALTER SEQUENCE transactions_seq RESTART WITH " + first);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Databases that accounts and their transactions are spread across.
+ *
+ * @param enabled                  place accounts across {@code databases} instead of the single
+ *                                 {@code spring.datasource}
+ * @param databases                one entry per shard, in shard order; shards may only be appended
+ * @param sagaRecoveryIntervalMs   pause between scans for cross-shard transfers left half done
+ * @param sagaRecoveryAge          how long a transfer may stay half done before the scan finishes it
+ * @param keyTakeoverAge           how long an idempotency key may stay with a shard that stored no
+ *                                 transaction under it before a request on another shard may use it
+ */
+@ConfigurationProperties("ledger.sharding")
+public record ShardingProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue List<Database> databases,
+        @DefaultValue("5000") long sagaRecoveryIntervalMs,
+        @DefaultValue("30s") Duration sagaRecoveryAge,
+        @DefaultValue("5m") Duration keyTakeoverAge
+) {
+
+    /**
+     * @param url         JDBC URL of the shard
+     * @param username    shard user
+     * @param password    shard password
+     * @param maxPoolSize connections kept to the shard
+     */
+    public record Database(
+            String url,
+            String username,
+            String password,
+            @DefaultValue("10") int maxPoolSize
+    ) {
+    }
+}
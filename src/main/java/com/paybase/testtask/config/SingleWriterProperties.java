@@ -0,0 +1,21 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the single-writer ledger engine.
+ *
+ * @param enabled       routes transactions through per-shard owner threads instead of the request thread
+ * @param shards        number of owner threads; an account always maps to the same shard
+ * @param batchSize     maximum number of queued transactions applied in one database transaction
+ * @param queueCapacity bounded queue size per shard, submitters block when it is full
+ */
+@ConfigurationProperties("ledger.single-writer")
+public record SingleWriterProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("8") int shards,
+        @DefaultValue("256") int batchSize,
+        @DefaultValue("4096") int queueCapacity
+) {
+}
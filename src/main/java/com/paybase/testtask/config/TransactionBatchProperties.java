@@ -0,0 +1,15 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for {@code POST /api/transactions/batch}.
+ *
+ * @param chunkSize number of items applied and committed together
+ */
+@ConfigurationProperties("ledger.batch")
+public record TransactionBatchProperties(
+        @DefaultValue("500") int chunkSize
+) {
+}
@@ -0,0 +1,26 @@
+package com.paybase.testtask.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the monthly partitions of {@code transactions} on PostgreSQL.
+ *
+ * @param enabled       run partition maintenance on a schedule
+ * @param intervalMs    pause between maintenance runs
+ * @param monthsAhead   how many months past the current one must already have a partition
+ * @param retainMonths  months kept attached besides the current one; older partitions are
+ *                      detached into {@code archiveSchema}. {@code 0} never detaches. Point-in-time
+ *                      balances and statements only see attached months, so keep this beyond
+ *                      the audit horizon
+ * @param archiveSchema schema detached partitions are moved to
+ */
+@ConfigurationProperties("ledger.partitions")
+public record TransactionPartitionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("3600000") long intervalMs,
+        @DefaultValue("3") int monthsAhead,
+        @DefaultValue("0") int retainMonths,
+        @DefaultValue("archive") String archiveSchema
+) {
+}
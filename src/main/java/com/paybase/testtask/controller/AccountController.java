@@ -2,17 +2,28 @@ package com.paybase.testtask.controller;
 
 import com.paybase.testtask.domain.AccountEntity;
 import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.BalanceHistoryResponse;
 import com.paybase.testtask.dto.BalanceResponse;
 import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.StatementFormat;
 import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.BalanceHistoryService;
+import com.paybase.testtask.service.ShardRouter;
+import com.paybase.testtask.service.StatementExportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -21,7 +32,12 @@ import java.util.List;
 @Tag(name = "Accounts", description = "Account management and statements.")
 public class AccountController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final AccountService service;
+    private final StatementExportService exportService;
+    private final BalanceHistoryService historyService;
+    private final ShardRouter router;
 
     @PostMapping
     @Operation(summary = "Create account", description = "Creates a new merchant account with an initial balance.")
@@ -30,30 +46,116 @@ public class AccountController {
             @ApiResponse(responseCode = "400", description = "Validation error")
     })
     public AccountEntity create(@RequestBody CreateAccountRequest r) {
-        return service.create(r);
+        return router.on(router.shardOfMerchant(r.merchantId()), () -> service.create(r));
     }
 
     @GetMapping("/{id}/balance")
-    @Operation(summary = "Get account balance", description = "Returns the current balance for an account.")
+    @Operation(summary = "Get account balance",
+            description = "Returns the current balance for an account, or with asOf its balance at that "
+                    + "instant, including transactions created exactly at it.")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Balance retrieved"),
+            @ApiResponse(responseCode = "400", description = "Account did not exist at asOf"),
             @ApiResponse(responseCode = "404", description = "Account not found")
     })
     public BalanceResponse balance(
             @Parameter(description = "Account identifier", example = "123")
-            @PathVariable Long id) {
-        return service.balance(id);
+            @PathVariable Long id,
+            @Parameter(description = "Point in time to report the balance at", example = "2024-01-15T12:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant asOf) {
+        return asOf != null ? historyService.balanceAt(id, asOf) : service.balance(id);
+    }
+
+    @PostMapping("/{id}/buckets")
+    @Operation(summary = "Enable balance buckets",
+            description = "Splits a hot account's balance across several rows so concurrent credits "
+                    + "do not queue on one row lock. The bucket count cannot be changed afterwards.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Buckets enabled"),
+            @ApiResponse(responseCode = "400", description = "Invalid bucket count"),
+            @ApiResponse(responseCode = "404", description = "Account not found")
+    })
+    public AccountEntity enableBuckets(
+            @Parameter(description = "Account identifier", example = "123")
+            @PathVariable Long id,
+            @Parameter(description = "Number of buckets", example = "16")
+            @RequestParam int count) {
+        return service.enableBuckets(id, count);
+    }
+
+    @GetMapping("/{id}/balance-history")
+    @Operation(summary = "Get balance history",
+            description = "Returns the closing balance of each UTC day in a period of at most 366 days, "
+                    + "built from daily snapshots plus the transactions since the nearest one.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "History retrieved"),
+            @ApiResponse(responseCode = "400", description = "Invalid period"),
+            @ApiResponse(responseCode = "404", description = "Account not found")
+    })
+    public BalanceHistoryResponse balanceHistory(
+            @Parameter(description = "Account identifier", example = "123")
+            @PathVariable Long id,
+            @Parameter(description = "First day, inclusive", example = "2024-01-01")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @Parameter(description = "Last day, inclusive", example = "2024-01-31")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return historyService.history(id, from, to);
     }
 
     @GetMapping("/{id}/statement")
-    @Operation(summary = "Get account statement", description = "Returns transactions for an account.")
+    @Operation(summary = "Get account statement",
+            description = "Returns one page of transactions for an account ordered by creation time. "
+                    + "When more rows exist the X-Next-Cursor header holds the value for the next 'after'.")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Statement retrieved"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
             @ApiResponse(responseCode = "404", description = "Account not found")
     })
-    public List<TransactionEntity> statement(
+    public ResponseEntity<List<TransactionEntity>> statement(
             @Parameter(description = "Account identifier", example = "123")
-            @PathVariable Long id) {
-        return service.statement(id);
+            @PathVariable Long id,
+            @Parameter(description = "Page size, at most 1000")
+            @RequestParam(defaultValue = "100") int limit,
+            @Parameter(description = "Cursor returned in X-Next-Cursor by the previous page")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Inclusive lower bound on createdAt", example = "2024-01-01T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @Parameter(description = "Exclusive upper bound on createdAt", example = "2024-02-01T00:00:00Z")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+
+        var page = service.statement(id, from, to, after, limit);
+
+        var response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+
+    @GetMapping("/{id}/statement/export")
+    @Operation(summary = "Export account statement",
+            description = "Streams the full transaction history of an account as NDJSON or CSV.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Export streamed"),
+            @ApiResponse(responseCode = "400", description = "Unsupported format"),
+            @ApiResponse(responseCode = "404", description = "Account not found")
+    })
+    public ResponseEntity<StreamingResponseBody> export(
+            @Parameter(description = "Account identifier", example = "123")
+            @PathVariable Long id,
+            @Parameter(description = "ndjson or csv")
+            @RequestParam(defaultValue = "ndjson") String format) {
+
+        var statementFormat = StatementFormat.of(format);
+        exportService.checkExists(id);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(statementFormat.contentType()))
+                .body(out -> {
+                    // streamed on another thread, after the request's shard scope has closed
+                    try (var scope = router.enter(ShardRouter.shardOf(id))) {
+                        exportService.export(id, statementFormat, out);
+                    }
+                });
     }
 }
@@ -0,0 +1,44 @@
+package com.paybase.testtask.controller;
+
+import com.paybase.testtask.dto.MerchantSummaryResponse;
+import com.paybase.testtask.service.MerchantRollups;
+import com.paybase.testtask.service.ShardRouter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/merchants")
+@Tag(name = "Merchants", description = "Aggregates over a merchant's accounts.")
+public class MerchantController {
+
+    private final MerchantRollups rollups;
+    private final ShardRouter router;
+
+    @GetMapping("/{merchantId}/summary")
+    @Operation(summary = "Get merchant summary",
+            description = "Returns the merchant's total balance, account and transaction counts per currency, "
+                    + "with credited and debited volume per day and transaction type. Figures are maintained "
+                    + "as transactions are published and trail the ledger by the outbox relay's lag.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Summary retrieved"),
+            @ApiResponse(responseCode = "400", description = "Invalid number of days"),
+            @ApiResponse(responseCode = "404", description = "Merchant has no accounts")
+    })
+    public MerchantSummaryResponse summary(
+            @Parameter(description = "Merchant identifier", example = "merchant-1")
+            @PathVariable String merchantId,
+            @Parameter(description = "UTC days of volume to include, today first (1-31)", example = "7")
+            @RequestParam(defaultValue = "1") int days) {
+        return router.on(router.shardOfMerchant(merchantId), () -> rollups.summary(merchantId, days));
+    }
+}
@@ -0,0 +1,66 @@
+package com.paybase.testtask.controller;
+
+import com.paybase.testtask.dto.ReconciliationReport;
+import com.paybase.testtask.dto.ReconciliationRun;
+import com.paybase.testtask.service.LedgerReconciliation;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/reconciliations")
+@Tag(name = "Reconciliation", description = "Checks of account balances against their transactions.")
+public class ReconciliationController {
+
+    private final LedgerReconciliation reconciliation;
+
+    @PostMapping
+    @Operation(summary = "Start reconciliation",
+            description = "Starts checking every account against its transactions in the background, "
+                    + "or returns the run already in progress.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Run started or already running")
+    })
+    public ReconciliationRun start() {
+        return reconciliation.start();
+    }
+
+    @GetMapping("/latest")
+    @Operation(summary = "Get latest reconciliation",
+            description = "Returns the most recent run with its first mismatches in account order.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Run retrieved"),
+            @ApiResponse(responseCode = "400", description = "Invalid limit"),
+            @ApiResponse(responseCode = "404", description = "No run yet")
+    })
+    public ReconciliationReport latest(
+            @Parameter(description = "Maximum mismatches to return (1-1000)", example = "100")
+            @RequestParam(defaultValue = "100") int limit) {
+        return reconciliation.latest(limit);
+    }
+
+    @GetMapping("/{runId}")
+    @Operation(summary = "Get reconciliation", description = "Returns a run with its first mismatches in account order.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Run retrieved"),
+            @ApiResponse(responseCode = "400", description = "Invalid limit"),
+            @ApiResponse(responseCode = "404", description = "Run not found")
+    })
+    public ReconciliationReport get(
+            @Parameter(description = "Run identifier", example = "1")
+            @PathVariable long runId,
+            @Parameter(description = "Maximum mismatches to return (1-1000)", example = "100")
+            @RequestParam(defaultValue = "100") int limit) {
+        return reconciliation.report(runId, limit);
+    }
+}
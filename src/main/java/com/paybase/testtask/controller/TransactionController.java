@@ -1,7 +1,10 @@
 package com.paybase.testtask.controller;
 
+import com.paybase.testtask.dto.BatchItemResult;
 import com.paybase.testtask.dto.TransactionDetailsResponse;
 import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.service.BatchTransactionService;
+import com.paybase.testtask.service.TransactionProcessor;
 import com.paybase.testtask.service.TransactionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -16,6 +19,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/api/transactions")
@@ -23,22 +28,38 @@ import org.springframework.web.bind.annotation.RestController;
 public class TransactionController {
 
     private final TransactionService service;
+    private final TransactionProcessor processor;
+    private final BatchTransactionService batchService;
 
     @PostMapping
-    @Operation(summary = "Create transaction", description = "Creates a deposit, withdrawal, transfer, fee, or refund.")
+    @Operation(summary = "Create transaction", description = "Creates a deposit, withdrawal, transfer, fee, or refund. "
+            + "A request with an idempotency key that was already used returns the transaction stored under it.")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Transaction created"),
             @ApiResponse(responseCode = "400", description = "Validation error"),
             @ApiResponse(responseCode = "404", description = "Account not found"),
-            @ApiResponse(responseCode = "409", description = "Insufficient funds")
+            @ApiResponse(responseCode = "409", description = "Insufficient funds, or idempotency key in use by a request in progress")
     })
     public TransactionDetailsResponse create(
             @Valid @RequestBody TransactionRequest r) {
 
-        var tx = service.create(r);
+        var tx = processor.create(r);
         return TransactionDetailsResponse.from(tx);
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Create transactions in bulk",
+            description = "Applies a list of transactions in chunks and reports an outcome per item.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Batch processed, see per-item status"),
+            @ApiResponse(responseCode = "400", description = "Validation error")
+    })
+    public List<BatchItemResult> createBatch(
+            @RequestBody List<@Valid TransactionRequest> requests) {
+
+        return batchService.submit(requests);
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Get transaction", description = "Returns details for a single transaction.")
     @ApiResponses({
@@ -7,7 +7,6 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 
 @Entity
@@ -24,7 +23,7 @@ public class AccountEntity {
     private String merchantId;
 
     @Column(precision = 19, scale = 4)
-    private BigDecimal balance;
+    private Money balance;
 
     private String currency;
 
@@ -33,15 +32,25 @@ public class AccountEntity {
 
     private Instant createdAt;
 
-    public void credit(BigDecimal amount) {
-        balance = balance.add(amount);
+    private Instant updatedAt;
+
+    @Version
+    private Long version;
+
+    // number of account_buckets rows holding part of the balance, 0 for a plain account
+    private int bucketCount;
+
+    public void credit(Money amount) {
+        balance = balance.plus(amount);
+        updatedAt = Instant.now();
     }
 
-    public void debit(BigDecimal amount) {
-        if (balance.compareTo(amount) < 0) {
+    public void debit(Money amount) {
+        if (balance.isLessThan(amount)) {
             throw new InsufficientFundsException();
         }
-        balance = balance.subtract(amount);
+        balance = balance.minus(amount);
+        updatedAt = Instant.now();
     }
 
 }
@@ -0,0 +1,72 @@
+package com.paybase.testtask.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amount in minor units at scale 4, the scale of every {@code NUMERIC(19,4)} money column.
+ * Arithmetic is exact {@code long} arithmetic and throws {@link ArithmeticException} on
+ * overflow instead of wrapping; conversion to {@link BigDecimal} happens only when the value
+ * is persisted or serialized.
+ */
+public record Money(long minorUnits) implements Comparable<Money> {
+
+    public static final int SCALE = 4;
+
+    public static final Money ZERO = new Money(0);
+
+    /**
+     * @throws ArithmeticException if {@code value} has more than four decimal places or
+     *                             does not fit into a {@code long} at scale 4
+     */
+    @JsonCreator
+    public static Money of(BigDecimal value) {
+        return new Money(value.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    public static Money of(String value) {
+        return of(new BigDecimal(value));
+    }
+
+    public static Money ofNullable(BigDecimal value) {
+        return value != null ? of(value) : null;
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    @JsonValue
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public static BigDecimal toBigDecimal(Money value) {
+        return value != null ? value.toBigDecimal() : null;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -0,0 +1,20 @@
+package com.paybase.testtask.domain;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.math.BigDecimal;
+
+@Converter(autoApply = true)
+public class MoneyConverter implements AttributeConverter<Money, BigDecimal> {
+
+    @Override
+    public BigDecimal convertToDatabaseColumn(Money attribute) {
+        return Money.toBigDecimal(attribute);
+    }
+
+    @Override
+    public Money convertToEntityAttribute(BigDecimal dbData) {
+        return Money.ofNullable(dbData);
+    }
+}
@@ -5,21 +5,18 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 
 @Entity
-@Table(
-        name = "transactions",
-        uniqueConstraints = @UniqueConstraint(columnNames = "idempotencyKey")
-)
+@Table(name = "transactions")
 @Getter
 @Setter
 @NoArgsConstructor
 public class TransactionEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+    @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
     private Long id;
 
     private String idempotencyKey;
@@ -31,16 +28,16 @@ public class TransactionEntity {
     private Long toAccountId;
 
     @Column(precision = 19, scale = 4)
-    private BigDecimal amount;
+    private Money amount;
 
     private String currency;
     private String status;
 
-    private BigDecimal fromBalanceBefore;
-    private BigDecimal fromBalanceAfter;
+    private Money fromBalanceBefore;
+    private Money fromBalanceAfter;
 
-    private BigDecimal toBalanceBefore;
-    private BigDecimal toBalanceAfter;
+    private Money toBalanceBefore;
+    private Money toBalanceAfter;
 
     private String reference;
     private Instant createdAt;
@@ -0,0 +1,19 @@
+package com.paybase.testtask.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Closing balance for each UTC day of a period, with the balance the period opened at.
+ */
+public record BalanceHistoryResponse(
+        Long accountId,
+        String currency,
+        LocalDate from,
+        LocalDate to,
+        BigDecimal openingBalance,
+        BigDecimal closingBalance,
+        List<DailyBalance> days
+) {
+}
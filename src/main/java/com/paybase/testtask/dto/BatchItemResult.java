@@ -0,0 +1,9 @@
+package com.paybase.testtask.dto;
+
+public record BatchItemResult(
+        int index,
+        String idempotencyKey,
+        BatchItemStatus status,
+        TransactionDetailsResponse transaction
+) {
+}
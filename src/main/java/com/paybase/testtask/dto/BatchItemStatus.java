@@ -0,0 +1,5 @@
+package com.paybase.testtask.dto;
+
+public enum BatchItemStatus {
+    CREATED, DUPLICATE, INSUFFICIENT_FUNDS, NOT_FOUND, FAILED
+}
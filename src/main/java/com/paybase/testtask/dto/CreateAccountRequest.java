@@ -1,6 +1,7 @@
 package com.paybase.testtask.dto;
 
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
 
 import java.math.BigDecimal;
@@ -8,7 +9,7 @@ import java.math.BigDecimal;
 public record CreateAccountRequest(
         @NotBlank String merchantId,
         @NotBlank String currency,
-        @DecimalMin("0.0000") BigDecimal initialBalance
+        @DecimalMin("0.0000") @Digits(integer = 14, fraction = 4) BigDecimal initialBalance
 ) {
 }
 
@@ -0,0 +1,10 @@
+package com.paybase.testtask.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record DailyBalance(
+        LocalDate date,
+        BigDecimal closingBalance
+) {
+}
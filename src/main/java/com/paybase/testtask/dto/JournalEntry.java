@@ -0,0 +1,29 @@
+package com.paybase.testtask.dto;
+
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionType;
+
+import java.time.Instant;
+
+/**
+ * A completed transaction as stored in the journal. {@code offset} is where the entry
+ * starts and {@code nextOffset} where reading continues.
+ */
+public record JournalEntry(
+        long offset,
+        long nextOffset,
+        long transactionId,
+        String idempotencyKey,
+        TransactionType type,
+        Long fromAccountId,
+        Long toAccountId,
+        Money amount,
+        String currency,
+        Money fromBalanceBefore,
+        Money fromBalanceAfter,
+        Money toBalanceBefore,
+        Money toBalanceAfter,
+        String reference,
+        Instant createdAt
+) {
+}
@@ -0,0 +1,19 @@
+package com.paybase.testtask.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * A merchant's accounts in one currency.
+ *
+ * @param transactions legs posted to the accounts; a transfer between two of them counts twice
+ * @param days         volumes per day and type, latest day first; days without any are absent
+ */
+public record MerchantCurrencySummary(
+        String currency,
+        BigDecimal balance,
+        int accounts,
+        long transactions,
+        List<MerchantDailyVolume> days
+) {
+}
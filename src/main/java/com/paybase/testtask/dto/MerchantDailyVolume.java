@@ -0,0 +1,16 @@
+package com.paybase.testtask.dto;
+
+import com.paybase.testtask.domain.TransactionType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record MerchantDailyVolume(
+        LocalDate date,
+        TransactionType type,
+        long credits,
+        BigDecimal creditVolume,
+        long debits,
+        BigDecimal debitVolume
+) {
+}
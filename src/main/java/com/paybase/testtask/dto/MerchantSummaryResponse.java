@@ -0,0 +1,9 @@
+package com.paybase.testtask.dto;
+
+import java.util.List;
+
+public record MerchantSummaryResponse(
+        String merchantId,
+        List<MerchantCurrencySummary> currencies
+) {
+}
@@ -0,0 +1,16 @@
+package com.paybase.testtask.dto;
+
+public enum MismatchKind {
+    /**
+     * The balance a transaction started from is not where the previous one left the account.
+     */
+    BROKEN_CHAIN,
+    /**
+     * The balance after a transaction is not the balance before it plus or minus its amount.
+     */
+    WRONG_AMOUNT,
+    /**
+     * The account's balance is not where its last transaction left it.
+     */
+    BALANCE
+}
@@ -0,0 +1,17 @@
+package com.paybase.testtask.dto;
+
+import java.time.Instant;
+
+/**
+ * A transaction as seen by one of the accounts it touched. {@code payload} is the
+ * {@link TransactionDetailsResponse} JSON.
+ */
+public record OutboxEvent(
+        Long id,
+        Long accountId,
+        Long transactionId,
+        String eventType,
+        String payload,
+        Instant createdAt
+) {
+}
@@ -0,0 +1,15 @@
+package com.paybase.testtask.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * @param transactionId the offending transaction; {@code null} for {@link MismatchKind#BALANCE}
+ */
+public record ReconciliationMismatch(
+        Long accountId,
+        Long transactionId,
+        MismatchKind kind,
+        BigDecimal expected,
+        BigDecimal actual
+) {
+}
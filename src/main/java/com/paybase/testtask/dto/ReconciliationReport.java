@@ -0,0 +1,12 @@
+package com.paybase.testtask.dto;
+
+import java.util.List;
+
+/**
+ * A reconciliation run with a page of its mismatches, in account order.
+ */
+public record ReconciliationReport(
+        ReconciliationRun run,
+        List<ReconciliationMismatch> mismatches
+) {
+}
@@ -0,0 +1,14 @@
+package com.paybase.testtask.dto;
+
+import java.time.Instant;
+
+public record ReconciliationRun(
+        Long id,
+        String status,
+        Instant startedAt,
+        Instant finishedAt,
+        long accounts,
+        long transactions,
+        long mismatches
+) {
+}
@@ -0,0 +1,40 @@
+package com.paybase.testtask.dto;
+
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.exceptions.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Position in a statement ordered by {@code (created_at, id)}. Clients only see the
+ * opaque {@link #encode() encoded} form.
+ */
+public record StatementCursor(Instant createdAt, Long id) {
+
+    public static final StatementCursor START = new StatementCursor(Instant.EPOCH, 0L);
+
+    public static StatementCursor after(TransactionEntity tx) {
+        return new StatementCursor(tx.getCreatedAt(), tx.getId());
+    }
+
+    public static StatementCursor decode(String token) {
+
+        if (token == null || token.isBlank()) {
+            return START;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('_');
+            return new StatementCursor(Instant.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException ex) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        String raw = createdAt + "_" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
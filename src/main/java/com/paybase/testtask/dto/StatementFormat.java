@@ -0,0 +1,28 @@
+package com.paybase.testtask.dto;
+
+import com.paybase.testtask.exceptions.BadRequestException;
+
+import java.util.Locale;
+
+public enum StatementFormat {
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv");
+
+    private final String contentType;
+
+    StatementFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public static StatementFormat of(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Unsupported format: " + value);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.paybase.testtask.dto;
+
+import com.paybase.testtask.domain.TransactionEntity;
+
+import java.util.List;
+
+public record StatementPage(
+        List<TransactionEntity> items,
+        String nextCursor
+) {
+}
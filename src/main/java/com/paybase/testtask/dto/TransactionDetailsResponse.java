@@ -1,5 +1,6 @@
 package com.paybase.testtask.dto;
 
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 
@@ -30,13 +31,13 @@ public record TransactionDetailsResponse(
                 tx.getType(),
                 tx.getFromAccountId(),
                 tx.getToAccountId(),
-                tx.getAmount(),
+                Money.toBigDecimal(tx.getAmount()),
                 tx.getCurrency(),
                 tx.getStatus(),
-                tx.getFromBalanceBefore(),
-                tx.getFromBalanceAfter(),
-                tx.getToBalanceBefore(),
-                tx.getToBalanceAfter(),
+                Money.toBigDecimal(tx.getFromBalanceBefore()),
+                Money.toBigDecimal(tx.getFromBalanceAfter()),
+                Money.toBigDecimal(tx.getToBalanceBefore()),
+                Money.toBigDecimal(tx.getToBalanceAfter()),
                 tx.getReference(),
                 tx.getCreatedAt()
         );
@@ -2,6 +2,7 @@ package com.paybase.testtask.dto;
 
 import com.paybase.testtask.domain.TransactionType;
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 
@@ -12,7 +13,7 @@ public record TransactionRequest(
         @NotNull TransactionType type,
         Long fromAccountId,
         Long toAccountId,
-        @DecimalMin("0.0001") BigDecimal amount,
+        @DecimalMin("0.0001") @Digits(integer = 14, fraction = 4) BigDecimal amount,
         @NotBlank String currency,
         String reference
 ) {}
@@ -1,5 +1,6 @@
 package com.paybase.testtask.exceptions;
 
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -22,4 +23,25 @@ public class ApiExceptionHandler {
                 .body("Not found");
     }
 
+    @ExceptionHandler(IdempotencyKeyInUseException.class)
+    ResponseEntity<?> idempotencyKeyInUse() {
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body("Idempotency key is in use by a request in progress, please retry");
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    ResponseEntity<?> concurrentUpdate() {
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body("Concurrent update, please retry");
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    ResponseEntity<?> badRequest(BadRequestException ex) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(ex.getMessage());
+    }
+
 }
@@ -0,0 +1,8 @@
+package com.paybase.testtask.exceptions;
+
+public class BadRequestException extends RuntimeException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
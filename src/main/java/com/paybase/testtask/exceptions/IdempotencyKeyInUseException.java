@@ -0,0 +1,4 @@
+package com.paybase.testtask.exceptions;
+
+public class IdempotencyKeyInUseException extends RuntimeException {
+}
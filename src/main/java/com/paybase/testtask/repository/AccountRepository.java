@@ -6,6 +6,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface AccountRepository extends JpaRepository<AccountEntity, Long> {
@@ -14,8 +16,13 @@ public interface AccountRepository extends JpaRepository<AccountEntity, Long> {
     @Query("select a from AccountEntity a where a.id = :id")
     Optional<AccountEntity> lockById(Long id);
 
-    @Lock(LockModeType.PESSIMISTIC_READ)
-    @Query("select a from AccountEntity a where a.id = :id")
-    Optional<AccountEntity> findByIdForRead(Long id);
+    /**
+     * Locks all given accounts with a single {@code SELECT ... FOR UPDATE}. Rows are
+     * returned, and therefore locked, in ascending id order, so callers touching the same
+     * accounts in opposite directions cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from AccountEntity a where a.id in :ids order by a.id")
+    List<AccountEntity> lockAllById(Collection<Long> ids);
 
 }
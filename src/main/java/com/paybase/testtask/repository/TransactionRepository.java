@@ -1,19 +1,88 @@
 package com.paybase.testtask.repository;
 
 import com.paybase.testtask.domain.TransactionEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface TransactionRepository
         extends JpaRepository<TransactionEntity, Long> {
 
-    Optional<TransactionEntity> findByIdempotencyKey(String key);
+    /**
+     * Reads one transaction from the partition for {@code createdAt} only; {@code findById}
+     * has to probe every month.
+     */
+    Optional<TransactionEntity> findByIdAndCreatedAt(Long id, Instant createdAt);
 
-    List<TransactionEntity> findAllByFromAccountIdOrToAccountIdOrderByCreatedAt(
-            Long fromId,
-            Long toId
+    /**
+     * Like {@link #findByIdAndCreatedAt} for many ids, pruned to the months between
+     * {@code from} and {@code to} inclusive.
+     */
+    List<TransactionEntity> findAllByIdInAndCreatedAtBetween(Collection<Long> ids, Instant from, Instant to);
+
+    /**
+     * Keyset page of transactions debiting an account, served by
+     * {@code idx_transactions_from_account_created}.
+     */
+    @Query("""
+            select t from TransactionEntity t
+            where t.fromAccountId = :accountId
+              and t.createdAt >= :from and t.createdAt < :to
+              and (t.createdAt > :afterCreatedAt or (t.createdAt = :afterCreatedAt and t.id > :afterId))
+            order by t.createdAt, t.id
+            """)
+    List<TransactionEntity> findDebitPage(
+            Long accountId,
+            Instant from,
+            Instant to,
+            Instant afterCreatedAt,
+            Long afterId,
+            Limit limit
+    );
+
+    /**
+     * Keyset page of transactions crediting an account, served by
+     * {@code idx_transactions_to_account_created}.
+     */
+    @Query("""
+            select t from TransactionEntity t
+            where t.toAccountId = :accountId
+              and t.createdAt >= :from and t.createdAt < :to
+              and (t.createdAt > :afterCreatedAt or (t.createdAt = :afterCreatedAt and t.id > :afterId))
+            order by t.createdAt, t.id
+            """)
+    List<TransactionEntity> findCreditPage(
+            Long accountId,
+            Instant from,
+            Instant to,
+            Instant afterCreatedAt,
+            Long afterId,
+            Limit limit
     );
 
+    /**
+     * Full debit history of an account as a database cursor; must be consumed inside a
+     * transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select t from TransactionEntity t where t.fromAccountId = :accountId order by t.createdAt, t.id")
+    Stream<TransactionEntity> streamDebits(Long accountId);
+
+    /**
+     * Full credit history of an account as a database cursor; must be consumed inside a
+     * transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select t from TransactionEntity t where t.toAccountId = :accountId order by t.createdAt, t.id")
+    Stream<TransactionEntity> streamCredits(Long accountId);
+
 }
@@ -0,0 +1,271 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.AccountBucketProperties;
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.exceptions.BadRequestException;
+import com.paybase.testtask.exceptions.InsufficientFundsException;
+import com.paybase.testtask.repository.AccountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Balance slots of bucketed accounts. A bucketed account's balance is its row balance plus
+ * the sum of its {@code account_buckets} rows, and every slot stays non-negative.
+ *
+ * <p>A credit adds to one random bucket without touching the account row, so concurrent
+ * credits only contend when they pick the same bucket. A debit first tries a single random
+ * bucket that covers it on its own; failing that, the caller locks the account row and
+ * {@link #drain} locks all buckets and takes from the row, then the fullest buckets. The
+ * background rebalance spreads the balance evenly again so the single-bucket debit keeps
+ * succeeding. Every multi-slot operation locks the row first, then the buckets in order.
+ *
+ * <p>Which accounts are bucketed is cached here and refreshed with each rebalance pass. An
+ * instance that has not seen an account switch yet keeps crediting its row, which is still
+ * part of the balance, so a stale view only costs contention.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(AccountBucketProperties.class)
+public class AccountBuckets {
+
+    private static final String CREDIT =
+            "UPDATE account_buckets SET balance = balance + ? WHERE account_id = ? AND bucket = ?";
+    private static final String LOCK_IF_COVERED = """
+            SELECT balance FROM account_buckets WHERE account_id = ? AND bucket = ? AND balance >= ?
+            FOR UPDATE SKIP LOCKED""";
+    private static final String DEBIT =
+            "UPDATE account_buckets SET balance = balance - ? WHERE account_id = ? AND bucket = ?";
+    private static final String SET =
+            "UPDATE account_buckets SET balance = ? WHERE account_id = ? AND bucket = ?";
+    private static final String LOCK_ALL =
+            "SELECT balance FROM account_buckets WHERE account_id = ? ORDER BY bucket FOR UPDATE";
+    private static final String TOTAL = """
+            SELECT a.balance + COALESCE((SELECT SUM(b.balance) FROM account_buckets b WHERE b.account_id = a.id), 0)
+            FROM accounts a
+            WHERE a.id = ?""";
+
+    private final AccountBucketProperties props;
+    private final JdbcTemplate jdbc;
+    private final AccountRepository accountRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter router;
+    private final Map<Long, Integer> bucketCounts = new ConcurrentHashMap<>();
+
+    private final Counter rebalances;
+
+    public AccountBuckets(
+            AccountBucketProperties props,
+            JdbcTemplate jdbc,
+            AccountRepository accountRepo,
+            TransactionTemplate transactionTemplate,
+            ShardRouter router,
+            MeterRegistry registry
+    ) {
+        this.props = props;
+        this.jdbc = jdbc;
+        this.accountRepo = accountRepo;
+        this.transactionTemplate = transactionTemplate;
+        this.router = router;
+        this.rebalances = Counter.builder("ledger.buckets.rebalances")
+                .description("Bucketed accounts whose balance was spread evenly again")
+                .register(registry);
+    }
+
+    public boolean isBucketed(Long accountId) {
+        return accountId != null && bucketCounts.containsKey(accountId);
+    }
+
+    /**
+     * @return {@code false} when the account has no buckets after all; the caller then
+     * credits the account row instead
+     */
+    public boolean credit(Long accountId, Money amount) {
+
+        Integer count = bucketCounts.get(accountId);
+        if (count == null) {
+            return false;
+        }
+        int bucket = ThreadLocalRandom.current().nextInt(count);
+        return jdbc.update(CREDIT, amount.toBigDecimal(), accountId, bucket) == 1;
+    }
+
+    /**
+     * Takes the whole amount from one random bucket if that bucket covers it and no other
+     * writer holds it. It never waits for the bucket: a caller that falls back to
+     * {@link #drain} then locks the account row, and must not hold a bucket while doing so.
+     */
+    public boolean tryDebit(Long accountId, Money amount) {
+
+        Integer count = bucketCounts.get(accountId);
+        if (count == null) {
+            return false;
+        }
+        int bucket = ThreadLocalRandom.current().nextInt(count);
+        var value = amount.toBigDecimal();
+        if (jdbc.queryForList(LOCK_IF_COVERED, BigDecimal.class, accountId, bucket, value).isEmpty()) {
+            return false;
+        }
+        return jdbc.update(DEBIT, value, accountId, bucket) == 1;
+    }
+
+    /**
+     * Debits the account's total balance. The caller must hold the account row lock.
+     *
+     * @return the total balance before the debit
+     */
+    public Money drain(AccountEntity account, Money amount) {
+
+        var balances = lockAll(account.getId());
+        var total = balances.stream().reduce(account.getBalance(), Money::plus);
+        if (total.isLessThan(amount)) {
+            throw new InsufficientFundsException();
+        }
+
+        var remaining = amount;
+        var fromRow = min(account.getBalance(), remaining);
+        if (fromRow.compareTo(Money.ZERO) > 0) {
+            account.debit(fromRow);
+            remaining = remaining.minus(fromRow);
+        }
+
+        List<Object[]> updates = new ArrayList<>();
+        var fullestFirst = IntStream.range(0, balances.size()).boxed()
+                .sorted(Comparator.comparing(balances::get).reversed())
+                .toList();
+        for (int bucket : fullestFirst) {
+            if (remaining.compareTo(Money.ZERO) == 0) {
+                break;
+            }
+            var take = min(balances.get(bucket), remaining);
+            remaining = remaining.minus(take);
+            updates.add(new Object[]{balances.get(bucket).minus(take).toBigDecimal(), account.getId(), bucket});
+        }
+        jdbc.batchUpdate(SET, updates);
+        return total;
+    }
+
+    /**
+     * Row balance plus buckets, read in one statement so both come from the same snapshot: a
+     * rebalance committing between two reads would otherwise count moved money twice, or
+     * not at all.
+     */
+    public Money total(AccountEntity account) {
+        return Money.of(jdbc.queryForObject(TOTAL, BigDecimal.class, account.getId()));
+    }
+
+    /**
+     * Creates empty buckets for an account whose row the caller has locked.
+     */
+    void enable(AccountEntity account, int count) {
+
+        if (count < 1 || count > props.maxBuckets()) {
+            throw new BadRequestException("Bucket count must be between 1 and " + props.maxBuckets());
+        }
+        if (account.getBucketCount() == count) {
+            return;
+        }
+        if (account.getBucketCount() > 0) {
+            throw new BadRequestException("Account already has " + account.getBucketCount() + " buckets");
+        }
+
+        jdbc.batchUpdate("INSERT INTO account_buckets (account_id, bucket, balance) VALUES (?, ?, 0)",
+                IntStream.range(0, count).mapToObj(b -> new Object[]{account.getId(), b}).toList());
+        account.setBucketCount(count);
+        // a credit that races the commit finds no bucket row and falls back to the account row
+        bucketCounts.put(account.getId(), count);
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.buckets.rebalance-interval-ms:1000}")
+    public void maintain() {
+
+        refresh();
+        if (!props.rebalanceEnabled()) {
+            return;
+        }
+        for (Long accountId : bucketCounts.keySet()) {
+            try {
+                router.run(ShardRouter.shardOf(accountId),
+                        () -> transactionTemplate.executeWithoutResult(status -> rebalance(accountId)));
+            } catch (RuntimeException ex) {
+                log.warn("Failed to rebalance buckets of account {}", accountId, ex);
+            }
+        }
+    }
+
+    /**
+     * Reads the bucketed accounts of every shard; accounts are only forgotten once all shards
+     * have been read.
+     */
+    void refresh() {
+
+        Map<Long, Integer> current = new ConcurrentHashMap<>();
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            router.run(shard, () -> jdbc.query("SELECT id, bucket_count FROM accounts WHERE bucket_count > 0",
+                    (RowCallbackHandler) rs -> current.put(rs.getLong("id"), rs.getInt("bucket_count"))));
+        }
+        bucketCounts.putAll(current);
+        bucketCounts.keySet().retainAll(current.keySet());
+    }
+
+    /**
+     * Moves the row balance into the buckets and splits the total evenly, unless the row
+     * is already empty and no bucket has fallen below half its share.
+     */
+    private void rebalance(Long accountId) {
+
+        var account = accountRepo.lockById(accountId).orElse(null);
+        if (account == null) {
+            return;
+        }
+        var balances = lockAll(accountId);
+        if (balances.isEmpty()) {
+            return;
+        }
+
+        var total = balances.stream().reduce(account.getBalance(), Money::plus);
+        long share = total.minorUnits() / balances.size();
+        long rest = total.minorUnits() % balances.size();
+
+        boolean balanced = account.getBalance().compareTo(Money.ZERO) == 0
+                && balances.stream().allMatch(b -> b.minorUnits() * 2 >= share);
+        if (balanced) {
+            return;
+        }
+
+        List<Object[]> updates = new ArrayList<>(balances.size());
+        for (int bucket = 0; bucket < balances.size(); bucket++) {
+            var target = new Money(share + (bucket == 0 ? rest : 0));
+            updates.add(new Object[]{target.toBigDecimal(), accountId, bucket});
+        }
+        jdbc.batchUpdate(SET, updates);
+        account.setBalance(Money.ZERO);
+        account.setUpdatedAt(Instant.now());
+        rebalances.increment();
+    }
+
+    private List<Money> lockAll(Long accountId) {
+        return jdbc.query(LOCK_ALL, (rs, row) -> Money.of(rs.getBigDecimal("balance")), accountId);
+    }
+
+    private static Money min(Money a, Money b) {
+        return a.isLessThan(b) ? a : b;
+    }
+}
@@ -1,19 +1,24 @@
 package com.paybase.testtask.service;
 
 import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.AccountStatus;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.dto.BalanceResponse;
 import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.StatementCursor;
+import com.paybase.testtask.dto.StatementPage;
 import com.paybase.testtask.exceptions.NotFoundException;
 import com.paybase.testtask.repository.AccountRepository;
 import com.paybase.testtask.repository.TransactionRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
-import java.util.List;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -22,6 +27,17 @@ public class AccountService {
 
     private final AccountRepository accountRepository;
     private final TransactionRepository transactionRepository;
+    private final BalanceCache balanceCache;
+    private final AccountBuckets buckets;
+    private final MerchantRollups rollups;
+
+    static final int MAX_STATEMENT_PAGE = 1000;
+
+    private static final Instant OPEN_END = Instant.parse("9999-12-31T00:00:00Z");
+
+    private static final Comparator<TransactionEntity> STATEMENT_ORDER = Comparator
+            .comparing(TransactionEntity::getCreatedAt)
+            .thenComparing(TransactionEntity::getId);
 
     @Transactional
     public AccountEntity create(CreateAccountRequest r) {
@@ -29,36 +45,81 @@ public class AccountService {
         AccountEntity account = new AccountEntity();
         account.setMerchantId(r.merchantId());
         account.setCurrency(r.currency());
-        account.setBalance(r.initialBalance());
+        account.setBalance(Money.of(r.initialBalance()));
         account.setStatus(AccountStatus.ACTIVE);
         account.setCreatedAt(Instant.now());
+        account.setUpdatedAt(account.getCreatedAt());
 
-        return accountRepository.save(account);
+        account = accountRepository.save(account);
+        rollups.accountOpened(account);
+        return account;
     }
 
+    /**
+     * Splits the account's balance across {@code count} bucket rows from now on. The current
+     * balance stays on the account row until the next rebalance spreads it out.
+     */
+    @Transactional
+    public AccountEntity enableBuckets(Long accountId, int count) {
+
+        var account = accountRepository.lockById(accountId).orElseThrow(NotFoundException::new);
+        buckets.enable(account, count);
+        return account;
+    }
+
+    /**
+     * Current balance from a plain MVCC snapshot read, so polling never waits for, or
+     * blocks, writers holding the account row lock. For a bucketed account it is the row
+     * plus the sum of its buckets, both read by a single statement.
+     */
     public BalanceResponse balance(Long accountId) {
 
-        AccountEntity acc = accountRepository
-                .findByIdForRead(accountId)
-                .orElseThrow(NotFoundException::new);
+        return balanceCache.get(accountId).orElseGet(() -> {
+            AccountEntity acc = accountRepository
+                    .findById(accountId)
+                    .orElseThrow(NotFoundException::new);
 
-        return new BalanceResponse(
-                acc.getId(),
-                acc.getBalance(),
-                acc.getCurrency(),
-                Instant.now()
-        );
+            var balance = acc.getBucketCount() > 0
+                    ? BalanceCache.snapshot(acc, buckets.total(acc))
+                    : BalanceCache.snapshot(acc);
+            balanceCache.put(balance);
+            return balance;
+        });
     }
 
-    public List<TransactionEntity> statement(Long accountId) {
+    /**
+     * One page of the account statement in {@code (created_at, id)} order. Debits and
+     * credits are read as two keyset range scans over their own index and merged, which
+     * keeps the cost proportional to the page size rather than the account history.
+     */
+    public StatementPage statement(Long accountId, Instant from, Instant to, String after, int limit) {
+
+        if (!accountRepository.existsById(accountId)) {
+            throw new NotFoundException();
+        }
+
+        int size = Math.max(1, Math.min(limit, MAX_STATEMENT_PAGE));
+        var cursor = StatementCursor.decode(after);
+        var lower = from != null ? from : Instant.EPOCH;
+        var upper = to != null ? to : OPEN_END;
+
+        var debits = transactionRepository.findDebitPage(
+                accountId, lower, upper, cursor.createdAt(), cursor.id(), Limit.of(size + 1));
+        var credits = transactionRepository.findCreditPage(
+                accountId, lower, upper, cursor.createdAt(), cursor.id(), Limit.of(size + 1));
+
+        var merged = Stream.concat(debits.stream(), credits.stream())
+                .sorted(STATEMENT_ORDER)
+                // a transfer to itself shows up on both sides as the same managed instance
+                .distinct()
+                .limit(size + 1L)
+                .toList();
 
-        accountRepository
-                .findByIdForRead(accountId)
-                .orElseThrow(NotFoundException::new);
+        if (merged.size() <= size) {
+            return new StatementPage(merged, null);
+        }
 
-        return transactionRepository
-                .findAllByFromAccountIdOrToAccountIdOrderByCreatedAt(
-                        accountId, accountId
-                );
+        var page = merged.subList(0, size);
+        return new StatementPage(page, StatementCursor.after(page.get(size - 1)).encode());
     }
 }
@@ -0,0 +1,79 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.Money;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Point-in-time balance straight from the balance columns the ledger records on every
+ * transaction. Each query is a single backward (or forward) probe of the two
+ * {@code (account, created_at, id)} indexes, which carry those columns, so its cost does not
+ * grow with the account's history.
+ */
+@Component
+public class BalanceAsOfLookup {
+
+    private static final String LAST_AT_OR_BEFORE = """
+            SELECT balance, created_at FROM (
+                (SELECT from_balance_after AS balance, created_at, id FROM transactions
+                 WHERE from_account_id = ? AND created_at <= ?
+                 ORDER BY created_at DESC, id DESC LIMIT 1)
+                UNION ALL
+                (SELECT to_balance_after AS balance, created_at, id FROM transactions
+                 WHERE to_account_id = ? AND created_at <= ?
+                 ORDER BY created_at DESC, id DESC LIMIT 1)
+            ) latest
+            ORDER BY created_at DESC, id DESC LIMIT 1""";
+
+    private static final String FIRST_AFTER = """
+            SELECT balance, created_at FROM (
+                (SELECT from_balance_before AS balance, created_at, id FROM transactions
+                 WHERE from_account_id = ? AND created_at > ?
+                 ORDER BY created_at, id LIMIT 1)
+                UNION ALL
+                (SELECT to_balance_before AS balance, created_at, id FROM transactions
+                 WHERE to_account_id = ? AND created_at > ?
+                 ORDER BY created_at, id LIMIT 1)
+            ) earliest
+            ORDER BY created_at, id LIMIT 1""";
+
+    /**
+     * A recorded balance and when the transaction recording it was created. The balance is
+     * {@code null} where the ledger did not record one, as for bucketed credits.
+     */
+    record Entry(Money balance, Instant createdAt) {
+    }
+
+    private final JdbcTemplate jdbc;
+
+    public BalanceAsOfLookup(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Balance after the account's last transaction at or before {@code asOf}.
+     */
+    Optional<Entry> lastAtOrBefore(Long accountId, Instant asOf) {
+        return probe(LAST_AT_OR_BEFORE, accountId, asOf);
+    }
+
+    /**
+     * Balance before the account's first transaction after {@code asOf}.
+     */
+    Optional<Entry> firstAfter(Long accountId, Instant asOf) {
+        return probe(FIRST_AFTER, accountId, asOf);
+    }
+
+    private Optional<Entry> probe(String sql, Long accountId, Instant asOf) {
+
+        var at = Timestamp.from(asOf);
+        return jdbc.query(sql, (rs, row) -> {
+            var balance = rs.getBigDecimal("balance");
+            return new Entry(balance != null ? Money.of(balance) : null, rs.getTimestamp("created_at").toInstant());
+        }, accountId, at, accountId, at).stream().findFirst();
+    }
+}
@@ -0,0 +1,97 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.BalanceCacheProperties;
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.dto.BalanceResponse;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versioned cache of account balances. Writers publish the balance they committed; an
+ * entry is only replaced by one with a newer modification time, so out-of-order
+ * after-commit callbacks cannot roll a balance back. Entries expire after
+ * {@code ledger.balance-cache.max-staleness}.
+ */
+@Component
+@EnableConfigurationProperties(BalanceCacheProperties.class)
+public class BalanceCache {
+
+    private final BalanceCacheProperties props;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    public BalanceCache(BalanceCacheProperties props) {
+        this.props = props;
+    }
+
+    public Optional<BalanceResponse> get(Long accountId) {
+
+        if (!props.enabled()) {
+            return Optional.empty();
+        }
+
+        var entry = entries.get(accountId);
+        if (entry == null || System.nanoTime() - entry.cachedAtNanos() > props.maxStaleness().toNanos()) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.balance());
+    }
+
+    /**
+     * Publishes the account's current balance once the surrounding transaction commits,
+     * or immediately when there is none. Bucketed accounts are skipped: their row holds
+     * only part of the balance.
+     */
+    public void publish(AccountEntity account) {
+
+        if (!props.enabled() || account.getBucketCount() > 0) {
+            return;
+        }
+
+        var balance = snapshot(account);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(balance);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(balance);
+            }
+        });
+    }
+
+    public void put(BalanceResponse balance) {
+
+        if (!props.enabled() || balance.lastUpdated() == null) {
+            return;
+        }
+
+        var fresh = new Entry(balance, System.nanoTime());
+        entries.merge(balance.accountId(), fresh, (current, next) ->
+                next.balance().lastUpdated().isBefore(current.balance().lastUpdated()) ? current : next);
+    }
+
+    static BalanceResponse snapshot(AccountEntity account) {
+        return snapshot(account, account.getBalance());
+    }
+
+    static BalanceResponse snapshot(AccountEntity account, Money balance) {
+        return new BalanceResponse(
+                account.getId(),
+                Money.toBigDecimal(balance),
+                account.getCurrency(),
+                account.getUpdatedAt() != null ? account.getUpdatedAt() : account.getCreatedAt()
+        );
+    }
+
+    private record Entry(BalanceResponse balance, long cachedAtNanos) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.dto.BalanceHistoryResponse;
+import com.paybase.testtask.dto.BalanceResponse;
+import com.paybase.testtask.dto.DailyBalance;
+import com.paybase.testtask.exceptions.BadRequestException;
+import com.paybase.testtask.exceptions.NotFoundException;
+import com.paybase.testtask.repository.AccountRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historical balances of an account. Days with a snapshot are read as is; any other day
+ * starts from the nearest earlier snapshot and replays only the transactions in between,
+ * so a report never scans the account's full history. Each call runs as one repeatable-read
+ * transaction so the snapshots, flows and current balance it combines agree.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+public class BalanceHistoryService {
+
+    static final int MAX_DAYS = 366;
+
+    private final AccountRepository accountRepository;
+    private final BalanceSnapshotStore store;
+    private final BalanceAsOfLookup lookup;
+    private final AccountBuckets buckets;
+
+    /**
+     * Balance at an instant, including transactions created exactly at it. One probe of the
+     * transaction indexes normally answers it: the balance after the last transaction at or
+     * before {@code asOf} or, without one, the balance before the first transaction after it.
+     * Only when that transaction recorded no balance, as bucketed credits do, is it rebuilt
+     * from the nearest snapshot.
+     */
+    public BalanceResponse balanceAt(Long accountId, Instant asOf) {
+
+        var account = accountRepository.findById(accountId).orElseThrow(NotFoundException::new);
+        // created_at is stored with microsecond precision
+        var at = asOf.truncatedTo(ChronoUnit.MICROS);
+        if (at.isBefore(account.getCreatedAt())) {
+            throw new BadRequestException("Account did not exist at " + asOf);
+        }
+
+        var last = lookup.lastAtOrBefore(accountId, at);
+        var recorded = last.isPresent() ? last : lookup.firstAfter(accountId, at);
+        var balance = recorded.map(BalanceAsOfLookup.Entry::balance)
+                .orElseGet(() -> replayTo(account, at.plus(1, ChronoUnit.MICROS)));
+
+        return new BalanceResponse(
+                accountId,
+                balance.toBigDecimal(),
+                account.getCurrency(),
+                last.map(BalanceAsOfLookup.Entry::createdAt).orElse(account.getCreatedAt())
+        );
+    }
+
+    public BalanceHistoryResponse history(Long accountId, LocalDate from, LocalDate to) {
+
+        if (from.isAfter(to)) {
+            throw new BadRequestException("'from' must not be after 'to'");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            throw new BadRequestException("At most " + MAX_DAYS + " days per request");
+        }
+
+        var account = accountRepository.findById(accountId).orElseThrow(NotFoundException::new);
+        var today = LocalDate.now(ZoneOffset.UTC);
+        var last = to.isAfter(today) ? today : to;
+        var opened = LocalDate.ofInstant(account.getCreatedAt(), ZoneOffset.UTC);
+
+        var snapshots = store.snapshots(accountId, from.minusDays(1), last);
+        var opening = closingBefore(account, from, opened, snapshots);
+
+        List<DailyBalance> days = new ArrayList<>();
+        var closing = opening;
+        for (var day = from; !day.isAfter(last); day = day.plusDays(1)) {
+            if (day.isBefore(opened)) {
+                closing = Money.ZERO;
+            } else if (snapshots.containsKey(day)) {
+                closing = snapshots.get(day);
+            } else if (day.equals(opened)) {
+                // the initial balance is not a transaction, so the opening day cannot be replayed
+                closing = fromCurrent(account, BalanceSnapshotStore.startOf(day.plusDays(1)));
+            } else {
+                closing = closing.plus(store.netFlow(accountId,
+                        BalanceSnapshotStore.startOf(day), BalanceSnapshotStore.startOf(day.plusDays(1))));
+            }
+            days.add(new DailyBalance(day, closing.toBigDecimal()));
+        }
+
+        return new BalanceHistoryResponse(
+                accountId,
+                account.getCurrency(),
+                from,
+                last,
+                opening.toBigDecimal(),
+                closing.toBigDecimal(),
+                days
+        );
+    }
+
+    /**
+     * Closing balance of the day before {@code from}.
+     */
+    private Money closingBefore(AccountEntity account, LocalDate from, LocalDate opened, Map<LocalDate, Money> snapshots) {
+
+        var day = from.minusDays(1);
+        if (day.isBefore(opened)) {
+            return Money.ZERO;
+        }
+        if (snapshots.containsKey(day)) {
+            return snapshots.get(day);
+        }
+        return store.snapshotBefore(account.getId(), from)
+                .map(snapshot -> snapshot.getValue().plus(store.netFlow(account.getId(),
+                        BalanceSnapshotStore.startOf(snapshot.getKey().plusDays(1)), BalanceSnapshotStore.startOf(from))))
+                .orElseGet(() -> fromCurrent(account, BalanceSnapshotStore.startOf(from)));
+    }
+
+    /**
+     * Balance just before {@code end}: the latest snapshot of an earlier day plus the flows
+     * after it.
+     */
+    private Money replayTo(AccountEntity account, Instant end) {
+        return store.snapshotBefore(account.getId(), LocalDate.ofInstant(end, ZoneOffset.UTC))
+                .map(snapshot -> snapshot.getValue().plus(store.netFlow(account.getId(),
+                        BalanceSnapshotStore.startOf(snapshot.getKey().plusDays(1)), end)))
+                .orElseGet(() -> fromCurrent(account, end));
+    }
+
+    /**
+     * Balance just before {@code instant}: the current balance minus everything since.
+     */
+    private Money fromCurrent(AccountEntity account, Instant instant) {
+        return buckets.total(account).minus(store.netFlow(account.getId(), instant, BalanceSnapshotStore.END_OF_TIME));
+    }
+}
@@ -0,0 +1,190 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.BalanceSnapshotProperties;
+import com.paybase.testtask.domain.Money;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes every account's closing balance for each finished UTC day to
+ * {@code balance_snapshots}.
+ *
+ * <p>Days are processed in order, since a day builds on the one before: an account's
+ * closing balance is its previous closing balance plus that day's net flow. An account
+ * without a previous snapshot (new, or the first day covered) is derived from its current
+ * balance minus everything after the day, read in one repeatable-read transaction so both
+ * come from the same snapshot. Within a day, accounts are split into id-range chunks that
+ * run in parallel, each in its own transaction.
+ *
+ * <p>A day is recorded in {@code balance_snapshot_days} once all its chunks are written. A
+ * restarted job continues after the last recorded day, and within an unfinished day skips
+ * accounts that already have a row, so no finished work is repeated.
+ *
+ * <p>Each shard keeps the snapshots and completed days of its own accounts, and is brought
+ * up to date in turn.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(BalanceSnapshotProperties.class)
+public class BalanceSnapshotJob implements DisposableBean {
+
+    private final BalanceSnapshotProperties props;
+    private final BalanceSnapshotStore store;
+    private final ShardRouter router;
+    private final TransactionTemplate chunkTransaction;
+    private final ExecutorService workers;
+    private final Timer dayDuration;
+
+    public BalanceSnapshotJob(
+            BalanceSnapshotProperties props,
+            BalanceSnapshotStore store,
+            ShardRouter router,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry registry
+    ) {
+        this.props = props;
+        this.store = store;
+        this.router = router;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        var threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(props.parallelism(), 1), task -> {
+            var thread = new Thread(task, "balance-snapshot-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dayDuration = Timer.builder("ledger.snapshots.day.duration")
+                .description("Time to snapshot all accounts for one day")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.snapshots.interval-ms:3600000}")
+    public void run() {
+        if (props.enabled()) {
+            snapshotPendingDays();
+        }
+    }
+
+    /**
+     * Snapshots, on every shard, every closed day after the shard's last completed one.
+     *
+     * @return number of days completed, summed over the shards
+     */
+    public int snapshotPendingDays() {
+
+        var lastClosed = LocalDate.ofInstant(Instant.now().minus(props.settleDelay()), ZoneOffset.UTC).minusDays(1);
+
+        int days = 0;
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            int target = shard;
+            days += router.on(shard, () -> snapshotPendingDays(target, lastClosed));
+        }
+        return days;
+    }
+
+    private int snapshotPendingDays(int shard, LocalDate lastClosed) {
+
+        var next = store.lastCompletedDay().map(day -> day.plusDays(1)).orElseGet(() -> store.firstAccountOpened()
+                .map(opened -> LocalDate.ofInstant(opened, ZoneOffset.UTC))
+                .map(opened -> latest(opened, lastClosed.minusDays(props.backfillDays() - 1L)))
+                .orElse(null));
+        if (next == null) {
+            return 0;
+        }
+
+        int days = 0;
+        for (var day = next; !day.isAfter(lastClosed); day = day.plusDays(1)) {
+            snapshotDay(shard, day);
+            days++;
+        }
+        return days;
+    }
+
+    private void snapshotDay(int shard, LocalDate day) {
+
+        long started = System.nanoTime();
+        var accounts = store.accountsOpenedBefore(BalanceSnapshotStore.startOf(day.plusDays(1)));
+
+        List<CompletableFuture<Integer>> chunks = new ArrayList<>();
+        for (int from = 0; from < accounts.size(); from += props.chunkSize()) {
+            var chunk = accounts.subList(from, Math.min(from + props.chunkSize(), accounts.size()));
+            chunks.add(CompletableFuture.supplyAsync(() -> router.on(shard,
+                    () -> Objects.requireNonNull(chunkTransaction.execute(status -> snapshotChunk(day, chunk)))),
+                    workers));
+        }
+        int written = chunks.stream().mapToInt(CompletableFuture::join).sum();
+
+        store.markCompleted(day, accounts.size());
+        dayDuration.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        log.info("Snapshotted {} for {} accounts ({} new rows)", day, accounts.size(), written);
+    }
+
+    private int snapshotChunk(LocalDate day, List<Long> ids) {
+
+        long firstId = ids.get(0);
+        long lastId = ids.get(ids.size() - 1);
+
+        var done = store.snapshotted(day, firstId, lastId);
+        var todo = ids.stream().filter(id -> !done.contains(id)).toList();
+        if (todo.isEmpty()) {
+            return 0;
+        }
+
+        var dayStart = BalanceSnapshotStore.startOf(day);
+        var dayEnd = BalanceSnapshotStore.startOf(day.plusDays(1));
+
+        var previous = store.snapshots(day.minusDays(1), firstId, lastId);
+        var dayNet = store.netFlows(firstId, lastId, dayStart, dayEnd);
+
+        Map<Long, Money> current = Map.of();
+        Map<Long, Money> netSince = Map.of();
+        if (!previous.keySet().containsAll(todo)) {
+            current = store.currentBalances(firstId, lastId);
+            netSince = store.netFlows(firstId, lastId, dayEnd, BalanceSnapshotStore.END_OF_TIME);
+        }
+
+        Map<Long, Money> closing = new HashMap<>();
+        for (Long id : todo) {
+            var before = previous.get(id);
+            if (before != null) {
+                closing.put(id, before.plus(dayNet.getOrDefault(id, Money.ZERO)));
+            } else if (current.containsKey(id)) {
+                closing.put(id, current.get(id).minus(netSince.getOrDefault(id, Money.ZERO)));
+            }
+        }
+        store.insert(day, closing);
+        return closing.size();
+    }
+
+    private static LocalDate latest(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdownNow();
+    }
+}
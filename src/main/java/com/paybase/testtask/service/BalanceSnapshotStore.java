@@ -0,0 +1,156 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.Money;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * SQL behind daily balance snapshots. Account sets are given as an id range so each query
+ * is one range scan; net flows read the two {@code (account, created_at)} indexes.
+ */
+@Component
+public class BalanceSnapshotStore {
+
+    static final Instant END_OF_TIME = Instant.parse("9999-12-31T00:00:00Z");
+
+    private static final String CREDITS = """
+            SELECT to_account_id AS account_id, SUM(amount) AS total FROM transactions
+            WHERE to_account_id BETWEEN ? AND ? AND created_at >= ? AND created_at < ?
+            GROUP BY to_account_id""";
+
+    private static final String DEBITS = """
+            SELECT from_account_id AS account_id, SUM(amount) AS total FROM transactions
+            WHERE from_account_id BETWEEN ? AND ? AND created_at >= ? AND created_at < ?
+            GROUP BY from_account_id""";
+
+    private static final String CURRENT = """
+            SELECT a.id AS account_id,
+                   a.balance + COALESCE((SELECT SUM(b.balance) FROM account_buckets b WHERE b.account_id = a.id), 0) AS total
+            FROM accounts a
+            WHERE a.id BETWEEN ? AND ?""";
+
+    private final JdbcTemplate jdbc;
+
+    public BalanceSnapshotStore(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    static Instant startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    /**
+     * Credits minus debits per account over {@code [from, to)}; accounts without movement
+     * are absent.
+     */
+    Map<Long, Money> netFlows(long firstId, long lastId, Instant from, Instant to) {
+
+        Map<Long, Money> net = new HashMap<>();
+        var range = new Object[]{firstId, lastId, Timestamp.from(from), Timestamp.from(to)};
+        jdbc.query(CREDITS, (RowCallbackHandler) rs ->
+                net.merge(rs.getLong("account_id"), Money.of(rs.getBigDecimal("total")), Money::plus), range);
+        jdbc.query(DEBITS, (RowCallbackHandler) rs ->
+                net.merge(rs.getLong("account_id"), Money.ZERO.minus(Money.of(rs.getBigDecimal("total"))), Money::plus), range);
+        return net;
+    }
+
+    Money netFlow(Long accountId, Instant from, Instant to) {
+        return netFlows(accountId, accountId, from, to).getOrDefault(accountId, Money.ZERO);
+    }
+
+    /**
+     * Account row plus buckets, per account in the range.
+     */
+    Map<Long, Money> currentBalances(long firstId, long lastId) {
+
+        Map<Long, Money> balances = new HashMap<>();
+        jdbc.query(CURRENT, (RowCallbackHandler) rs ->
+                balances.put(rs.getLong("account_id"), Money.of(rs.getBigDecimal("total"))), firstId, lastId);
+        return balances;
+    }
+
+    Map<Long, Money> snapshots(LocalDate day, long firstId, long lastId) {
+
+        Map<Long, Money> balances = new HashMap<>();
+        jdbc.query("SELECT account_id, balance FROM balance_snapshots WHERE snapshot_date = ? AND account_id BETWEEN ? AND ?",
+                (RowCallbackHandler) rs -> balances.put(rs.getLong("account_id"), Money.of(rs.getBigDecimal("balance"))),
+                Date.valueOf(day), firstId, lastId);
+        return balances;
+    }
+
+    Set<Long> snapshotted(LocalDate day, long firstId, long lastId) {
+        return new HashSet<>(jdbc.queryForList(
+                "SELECT account_id FROM balance_snapshots WHERE snapshot_date = ? AND account_id BETWEEN ? AND ?",
+                Long.class, Date.valueOf(day), firstId, lastId));
+    }
+
+    /**
+     * One account's snapshots between two days, both inclusive, in date order.
+     */
+    TreeMap<LocalDate, Money> snapshots(Long accountId, LocalDate from, LocalDate to) {
+
+        var balances = new TreeMap<LocalDate, Money>();
+        jdbc.query("""
+                        SELECT snapshot_date, balance FROM balance_snapshots
+                        WHERE account_id = ? AND snapshot_date BETWEEN ? AND ?""",
+                (RowCallbackHandler) rs -> balances.put(
+                        rs.getDate("snapshot_date").toLocalDate(), Money.of(rs.getBigDecimal("balance"))),
+                accountId, Date.valueOf(from), Date.valueOf(to));
+        return balances;
+    }
+
+    /**
+     * The account's latest snapshot taken before {@code day}.
+     */
+    Optional<Map.Entry<LocalDate, Money>> snapshotBefore(Long accountId, LocalDate day) {
+
+        var rows = jdbc.query("""
+                        SELECT snapshot_date, balance FROM balance_snapshots
+                        WHERE account_id = ? AND snapshot_date < ?
+                        ORDER BY snapshot_date DESC LIMIT 1""",
+                (rs, row) -> Map.entry(rs.getDate("snapshot_date").toLocalDate(), Money.of(rs.getBigDecimal("balance"))),
+                accountId, Date.valueOf(day));
+        return rows.stream().findFirst();
+    }
+
+    void insert(LocalDate day, Map<Long, Money> balances) {
+        jdbc.batchUpdate("INSERT INTO balance_snapshots (account_id, snapshot_date, balance) VALUES (?, ?, ?)",
+                balances.entrySet().stream()
+                        .map(e -> new Object[]{e.getKey(), Date.valueOf(day), e.getValue().toBigDecimal()})
+                        .toList());
+    }
+
+    List<Long> accountsOpenedBefore(Instant instant) {
+        return jdbc.queryForList("SELECT id FROM accounts WHERE created_at < ? ORDER BY id",
+                Long.class, Timestamp.from(instant));
+    }
+
+    Optional<Instant> firstAccountOpened() {
+        var first = jdbc.queryForObject("SELECT MIN(created_at) FROM accounts", Timestamp.class);
+        return Optional.ofNullable(first).map(Timestamp::toInstant);
+    }
+
+    Optional<LocalDate> lastCompletedDay() {
+        var last = jdbc.queryForObject("SELECT MAX(snapshot_date) FROM balance_snapshot_days", Date.class);
+        return Optional.ofNullable(last).map(Date::toLocalDate);
+    }
+
+    void markCompleted(LocalDate day, int accounts) {
+        jdbc.update("INSERT INTO balance_snapshot_days (snapshot_date, accounts, completed_at) VALUES (?, ?, ?)",
+                Date.valueOf(day), accounts, Timestamp.from(Instant.now()));
+    }
+}
@@ -0,0 +1,141 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.TransactionBatchProperties;
+import com.paybase.testtask.dto.BatchItemResult;
+import com.paybase.testtask.dto.BatchItemStatus;
+import com.paybase.testtask.dto.TransactionDetailsResponse;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.InsufficientFundsException;
+import com.paybase.testtask.exceptions.NotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Applies a settlement file in chunks. Each chunk is one database transaction with its
+ * accounts locked in id order and its rows inserted as a JDBC batch; a chunk that fails
+ * as a whole is replayed item by item so only the offending item is reported as failed.
+ *
+ * <p>With sharding, a chunk is split by the shard each request runs on and every part is
+ * applied on its own shard; cross-shard transfers go through {@link CrossShardTransfers}
+ * one by one. A key already used on another shard is answered from there, see
+ * {@link IdempotencyKeyOwners}. Results keep the order of the file.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@EnableConfigurationProperties(TransactionBatchProperties.class)
+public class BatchTransactionService {
+
+    private final LedgerBatchWriter writer;
+    private final LedgerJournal journal;
+    private final TransactionBatchProperties props;
+    private final ShardRouter router;
+    private final Optional<CrossShardTransfers> crossShard;
+    private final Optional<IdempotencyKeyOwners> keyOwners;
+
+    public List<BatchItemResult> submit(List<TransactionRequest> requests) {
+
+        List<BatchItemResult> results = new ArrayList<>(requests.size());
+
+        for (int start = 0; start < requests.size(); start += props.chunkSize()) {
+            var chunk = requests.subList(start, Math.min(start + props.chunkSize(), requests.size()));
+            var outcomes = router.enabled() ? applySharded(chunk) : applyChunk(chunk);
+            journal.awaitPending();
+            for (int i = 0; i < outcomes.size(); i++) {
+                results.add(toResult(start + i, outcomes.get(i)));
+            }
+        }
+        return results;
+    }
+
+    private List<LedgerOutcome> applySharded(List<TransactionRequest> chunk) {
+
+        var outcomes = new LedgerOutcome[chunk.size()];
+        var byShard = new TreeMap<Integer, List<Integer>>();
+        var settled = keyOwners.map(owners -> owners.claimAll(chunk)).orElse(Map.of());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            var r = chunk.get(i);
+            if (settled.containsKey(i)) {
+                outcomes[i] = settled.get(i);
+            } else if (router.isCrossShard(r) && crossShard.isPresent()) {
+                outcomes[i] = transfer(r);
+            } else {
+                byShard.computeIfAbsent(router.shardOf(r), shard -> new ArrayList<>()).add(i);
+            }
+        }
+
+        byShard.forEach((shard, indices) -> {
+            var part = indices.stream().map(chunk::get).toList();
+            var applied = router.on(shard, () -> applyChunk(part));
+            for (int i = 0; i < indices.size(); i++) {
+                outcomes[indices.get(i)] = applied.get(i);
+            }
+        });
+        return Arrays.asList(outcomes);
+    }
+
+    private LedgerOutcome transfer(TransactionRequest r) {
+        try {
+            return LedgerOutcome.created(r, crossShard.get().transfer(r));
+        } catch (RuntimeException ex) {
+            return LedgerOutcome.failed(r, ex);
+        }
+    }
+
+    private List<LedgerOutcome> applyChunk(List<TransactionRequest> chunk) {
+
+        try {
+            return writer.apply(chunk);
+        } catch (RuntimeException ex) {
+            log.warn("Chunk of {} failed, retrying individually", chunk.size(), ex);
+        }
+
+        List<LedgerOutcome> outcomes = new ArrayList<>(chunk.size());
+        for (TransactionRequest r : chunk) {
+            try {
+                outcomes.add(writer.apply(List.of(r)).get(0));
+            } catch (RuntimeException ex) {
+                outcomes.add(LedgerOutcome.failed(r, ex));
+            }
+        }
+        return outcomes;
+    }
+
+    private static BatchItemResult toResult(int index, LedgerOutcome outcome) {
+
+        var key = outcome.request().idempotencyKey();
+
+        if (outcome.error() != null) {
+            return new BatchItemResult(index, key, status(outcome.error()), null);
+        }
+
+        return new BatchItemResult(
+                index,
+                key,
+                outcome.duplicate() ? BatchItemStatus.DUPLICATE : BatchItemStatus.CREATED,
+                TransactionDetailsResponse.from(outcome.transaction())
+        );
+    }
+
+    private static BatchItemStatus status(RuntimeException error) {
+
+        if (error instanceof InsufficientFundsException) {
+            return BatchItemStatus.INSUFFICIENT_FUNDS;
+        }
+        if (error instanceof NoSuchElementException || error instanceof NotFoundException) {
+            return BatchItemStatus.NOT_FOUND;
+        }
+        return BatchItemStatus.FAILED;
+    }
+}
@@ -0,0 +1,85 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ConcurrencyProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides per account whether a writer takes a row lock or relies on the version check.
+ * In optimistic mode every conflict raises the account's moving-average conflict rate;
+ * once it crosses {@code fallback-conflict-rate} the account is locked pessimistically for
+ * {@code fallback-duration}. Only accounts that have seen a conflict are tracked.
+ */
+@Component
+@EnableConfigurationProperties(ConcurrencyProperties.class)
+public class ContentionTracker {
+
+    // weight of the newest sample in the moving average
+    private static final double ALPHA = 0.2;
+
+    private final ConcurrencyProperties props;
+    private final Map<Long, State> states = new ConcurrentHashMap<>();
+
+    private final Counter conflicts;
+    private final Counter fallbacks;
+
+    public ContentionTracker(ConcurrencyProperties props, MeterRegistry registry) {
+        this.props = props;
+        this.conflicts = Counter.builder("ledger.optimistic.conflicts")
+                .description("Optimistic version conflicts on account rows")
+                .register(registry);
+        this.fallbacks = Counter.builder("ledger.optimistic.fallbacks")
+                .description("Accounts switched to row locking because of their conflict rate")
+                .register(registry);
+    }
+
+    public boolean optimistic() {
+        return props.mode() == ConcurrencyProperties.Mode.OPTIMISTIC;
+    }
+
+    public boolean shouldLock(Long accountId) {
+
+        if (!optimistic()) {
+            return true;
+        }
+        var state = states.get(accountId);
+        return state != null && state.locked();
+    }
+
+    public void recordConflict(Collection<Long> accountIds) {
+        conflicts.increment();
+        accountIds.forEach(id -> states.compute(id, (key, state) -> {
+            var next = state == null ? new State(ALPHA, 0) : state.sample(1.0);
+            if (next.rate >= props.fallbackConflictRate() && !next.locked()) {
+                fallbacks.increment();
+                return new State(0, System.nanoTime() + props.fallbackDuration().toNanos());
+            }
+            return next;
+        }));
+    }
+
+    public void recordSuccess(Collection<Long> accountIds) {
+        accountIds.forEach(id -> states.computeIfPresent(id, (key, state) -> {
+            var next = state.sample(0.0);
+            // forget accounts that have cooled down, so the map only holds contended ones
+            return next.rate < 0.01 && !next.locked() ? null : next;
+        }));
+    }
+
+    private record State(double rate, long lockedUntilNanos) {
+
+        State sample(double value) {
+            return new State(rate + ALPHA * (value - rate), lockedUntilNanos);
+        }
+
+        boolean locked() {
+            return lockedUntilNanos - System.nanoTime() > 0;
+        }
+    }
+}
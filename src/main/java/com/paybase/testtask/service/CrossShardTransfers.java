@@ -0,0 +1,194 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ShardingProperties;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.NotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Transfers between accounts on different shards, run as a saga recorded in
+ * {@code transfer_sagas} on the debited account's shard.
+ *
+ * <ol>
+ *     <li>One transaction on the debit shard posts the debit and records the saga as
+ *     {@code DEBITED}.</li>
+ *     <li>One transaction on the credit shard posts the credit under {@code <key>:credit},
+ *     which makes it idempotent.</li>
+ *     <li>The saga is marked {@code COMPLETED}.</li>
+ * </ol>
+ *
+ * <p>If the credit cannot be posted because the credited account does not exist, the debit
+ * is refunded under {@code <key>:compensation} and the saga marked {@code COMPENSATED}, in
+ * one transaction. Any other failure leaves the saga {@code DEBITED}: a retry of the request
+ * with the same key, or the recovery scan, carries it on from step 2.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "ledger.sharding", name = "enabled", havingValue = "true")
+public class CrossShardTransfers {
+
+    static final String COMPENSATION = ":compensation";
+
+    private static final String INSERT = """
+            INSERT INTO transfer_sagas (idempotency_key, from_account_id, to_account_id, amount, currency, reference,
+                                        state, debit_transaction_id, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    private static final String SETTLE =
+            "UPDATE transfer_sagas SET state = ?, updated_at = ? WHERE idempotency_key = ? AND state = ?";
+
+    private static final String STALE = """
+            SELECT * FROM transfer_sagas WHERE state = ? AND updated_at < ?
+            ORDER BY updated_at LIMIT 100""";
+
+    enum State { DEBITED, COMPLETED, COMPENSATED }
+
+    record Saga(TransactionRequest request, State state, long debitTransactionId) {
+    }
+
+    private final ShardRouter router;
+    private final TransactionService transactions;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardingProperties props;
+    private final Counter completed;
+    private final Counter compensated;
+
+    public CrossShardTransfers(
+            ShardRouter router,
+            TransactionService transactions,
+            JdbcTemplate jdbc,
+            TransactionTemplate transactionTemplate,
+            ShardingProperties props,
+            MeterRegistry registry
+    ) {
+        this.router = router;
+        this.transactions = transactions;
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.props = props;
+        this.completed = Counter.builder("ledger.sharding.transfers")
+                .description("Cross-shard transfers by how they ended")
+                .tag("outcome", "completed")
+                .register(registry);
+        this.compensated = Counter.builder("ledger.sharding.transfers")
+                .description("Cross-shard transfers by how they ended")
+                .tag("outcome", "compensated")
+                .register(registry);
+    }
+
+    /**
+     * @return the debit side of the transfer
+     */
+    public TransactionEntity transfer(TransactionRequest r) {
+
+        var saga = router.on(ShardRouter.shardOf(r.fromAccountId()), () -> transactionTemplate.execute(status ->
+                find(r.idempotencyKey()).orElseGet(() -> begin(r))));
+
+        return switch (saga.state()) {
+            case DEBITED -> complete(saga);
+            case COMPLETED -> debitOf(saga);
+            case COMPENSATED -> throw new NotFoundException();
+        };
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.sharding.saga-recovery-interval-ms:5000}")
+    public void recover() {
+
+        var cutoff = Timestamp.from(Instant.now().minus(props.sagaRecoveryAge()));
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            var stale = router.on(shard, () -> jdbc.query(STALE, this::saga, State.DEBITED.name(), cutoff));
+            for (var saga : stale) {
+                try {
+                    complete(saga);
+                } catch (NotFoundException ex) {
+                    // compensated
+                } catch (RuntimeException ex) {
+                    log.warn("Transfer {} is still half done", saga.request().idempotencyKey(), ex);
+                }
+            }
+        }
+    }
+
+    private Saga begin(TransactionRequest r) {
+
+        var debit = transactions.debitLeg(r);
+        var now = Timestamp.from(Instant.now());
+        jdbc.update(INSERT, r.idempotencyKey(), r.fromAccountId(), r.toAccountId(), r.amount(), r.currency(),
+                r.reference(), State.DEBITED.name(), debit.getId(), now, now);
+        return new Saga(r, State.DEBITED, debit.getId());
+    }
+
+    private TransactionEntity complete(Saga saga) {
+
+        var r = saga.request();
+        int debitShard = ShardRouter.shardOf(r.fromAccountId());
+
+        try {
+            router.on(ShardRouter.shardOf(r.toAccountId()), () -> transactions.creditLeg(r));
+        } catch (NotFoundException | NoSuchElementException ex) {
+            router.on(debitShard, () -> transactionTemplate.execute(status -> compensate(r)));
+            throw new NotFoundException();
+        }
+
+        router.on(debitShard, () -> settle(r, State.COMPLETED));
+        completed.increment();
+        return debitOf(saga);
+    }
+
+    private Void compensate(TransactionRequest r) {
+
+        // only one caller gets to move the saga off DEBITED, so the refund is posted once
+        if (settle(r, State.COMPENSATED) == 0) {
+            return null;
+        }
+        transactions.create(new TransactionRequest(r.idempotencyKey() + COMPENSATION, TransactionType.REFUND,
+                null, r.fromAccountId(), r.amount(), r.currency(), r.reference()));
+        compensated.increment();
+        log.warn("Transfer {} refunded: account {} does not exist", r.idempotencyKey(), r.toAccountId());
+        return null;
+    }
+
+    private int settle(TransactionRequest r, State state) {
+        return jdbc.update(SETTLE, state.name(), Timestamp.from(Instant.now()), r.idempotencyKey(), State.DEBITED.name());
+    }
+
+    private TransactionEntity debitOf(Saga saga) {
+        return router.on(ShardRouter.shardOf(saga.request().fromAccountId()),
+                () -> transactions.get(saga.debitTransactionId()));
+    }
+
+    private Optional<Saga> find(String key) {
+        return jdbc.query("SELECT * FROM transfer_sagas WHERE idempotency_key = ?", this::saga, key)
+                .stream().findFirst();
+    }
+
+    private Saga saga(ResultSet rs, int row) throws SQLException {
+
+        var request = new TransactionRequest(
+                rs.getString("idempotency_key"),
+                TransactionType.TRANSFER,
+                rs.getLong("from_account_id"),
+                rs.getLong("to_account_id"),
+                rs.getBigDecimal("amount"),
+                rs.getString("currency"),
+                rs.getString("reference"));
+        return new Saga(request, State.valueOf(rs.getString("state")), rs.getLong("debit_transaction_id"));
+    }
+}
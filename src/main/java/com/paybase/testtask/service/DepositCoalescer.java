@@ -0,0 +1,163 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.DepositCoalescingProperties;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.TransactionRequest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Folds concurrent credits to one account into a single {@link LedgerBatchWriter} call.
+ * The first deposit or refund to an account opens a window and waits for it to close;
+ * credits that arrive in the meantime join the window and wait for its result. The
+ * opening caller then applies the whole window on its own thread: one row lock, one
+ * balance update and one batch insert, with each row's before/after balance following
+ * on from the previous one. No extra threads are involved.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "ledger.deposit-coalescing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(DepositCoalescingProperties.class)
+public class DepositCoalescer {
+
+    private final LedgerBatchWriter writer;
+    private final LedgerJournal journal;
+    private final DepositCoalescingProperties props;
+    private final Map<Long, Window> windows = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSize;
+
+    public DepositCoalescer(
+            LedgerBatchWriter writer,
+            LedgerJournal journal,
+            DepositCoalescingProperties props,
+            MeterRegistry registry
+    ) {
+        this.writer = writer;
+        this.journal = journal;
+        this.props = props;
+        this.batchSize = DistributionSummary.builder("ledger.deposit.coalesced")
+                .description("Credits applied together in one coalescing window")
+                .register(registry);
+    }
+
+    public static boolean accepts(TransactionRequest r) {
+        return (r.type() == TransactionType.DEPOSIT || r.type() == TransactionType.REFUND)
+                && r.toAccountId() != null;
+    }
+
+    public TransactionEntity submit(TransactionRequest r) {
+
+        var command = new Command(r, new CompletableFuture<>());
+        var window = join(r.toAccountId(), command);
+        if (window.leader == Thread.currentThread()) {
+            lead(window);
+        }
+
+        try {
+            return command.result.join().getOrThrow();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private Window join(Long accountId, Command command) {
+
+        while (true) {
+            var window = windows.computeIfAbsent(accountId, id -> new Window(id, Thread.currentThread()));
+            synchronized (window) {
+                if (window.closed) {
+                    // closed between lookup and join; the next lookup opens a fresh one
+                    continue;
+                }
+                window.commands.add(command);
+                if (window.commands.size() >= props.maxBatch()) {
+                    close(window);
+                    LockSupport.unpark(window.leader);
+                }
+                return window;
+            }
+        }
+    }
+
+    private void lead(Window window) {
+
+        long deadline = System.nanoTime() + props.window().toNanos();
+        long remaining;
+        while (!window.closed && (remaining = deadline - System.nanoTime()) > 0
+                && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(this, remaining);
+        }
+
+        List<Command> batch;
+        synchronized (window) {
+            close(window);
+            batch = List.copyOf(window.commands);
+        }
+        batchSize.record(batch.size());
+        apply(batch);
+    }
+
+    private void close(Window window) {
+        window.closed = true;
+        windows.remove(window.accountId, window);
+    }
+
+    private void apply(List<Command> batch) {
+
+        try {
+            var outcomes = writer.apply(batch.stream().map(Command::request).toList());
+            journal.awaitPending();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(outcomes.get(i));
+            }
+            return;
+        } catch (RuntimeException ex) {
+            // one bad request must not fail the others in its window
+            log.warn("Coalesced batch of {} failed, retrying individually", batch.size(), ex);
+        }
+
+        List<LedgerOutcome> outcomes = new ArrayList<>(batch.size());
+        for (Command command : batch) {
+            try {
+                outcomes.add(writer.apply(List.of(command.request())).get(0));
+            } catch (RuntimeException ex) {
+                outcomes.add(LedgerOutcome.failed(command.request(), ex));
+            }
+        }
+        journal.awaitPending();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(outcomes.get(i));
+        }
+    }
+
+    private record Command(TransactionRequest request, CompletableFuture<LedgerOutcome> result) {
+    }
+
+    private static final class Window {
+        private final Long accountId;
+        private final Thread leader;
+        private final List<Command> commands = new ArrayList<>();
+        private volatile boolean closed;
+
+        private Window(Long accountId, Thread leader) {
+            this.accountId = accountId;
+            this.leader = leader;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.dto.OutboxEvent;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends events to an NDJSON file, one line per event, and forces each batch to disk
+ * before the relay deletes it from the outbox.
+ */
+public class FileOutboxSink implements OutboxSink {
+
+    private final Path file;
+    private final JsonMapper jsonMapper;
+
+    public FileOutboxSink(Path file, JsonMapper jsonMapper) {
+        this.file = file;
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    public synchronized void publish(List<OutboxEvent> events) throws IOException {
+
+        try (var channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            var out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            for (OutboxEvent event : events) {
+                out.write(jsonMapper.writeValueAsBytes(event));
+                out.write('\n');
+            }
+            out.flush();
+            channel.force(false);
+        }
+    }
+}
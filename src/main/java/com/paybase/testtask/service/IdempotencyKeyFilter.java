@@ -0,0 +1,313 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.IdempotencyKeyFilterProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scalable Bloom filter over idempotency keys. A negative answer is definite, so
+ * {@link TransactionService} can skip the {@link IdempotencyStore} lookup for fresh keys; a
+ * positive answer only means the key has to be checked. The store's primary key stays the
+ * final guard for keys the filter has not seen, e.g. ones older than the warm-up window or
+ * written by another instance.
+ *
+ * <p>Memory is bounded twice over. The filter is rebuilt from the most recent keys on a
+ * schedule, so keys purged from the store, and the stages they filled, are let go. Between
+ * rebuilds it grows to at most {@code maxStages} stages; once the last one is full it answers
+ * every lookup with "possibly present", which falls back to the store, until the next
+ * rebuild. Keys added while a rebuild runs go into both filters.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(IdempotencyKeyFilterProperties.class)
+public class IdempotencyKeyFilter {
+
+    // each new stage gets a tighter rate so the compound rate converges to the target
+    private static final double TIGHTENING = 0.5;
+
+    private final IdempotencyKeyFilterProperties props;
+    private final IdempotencyStore keys;
+
+    private volatile Generation live;
+    private volatile Generation rebuilding;
+
+    private final Counter skipped;
+    private final Counter checked;
+    private final Counter falsePositives;
+
+    public IdempotencyKeyFilter(
+            IdempotencyKeyFilterProperties props,
+            IdempotencyStore keys,
+            MeterRegistry registry
+    ) {
+        this.props = props;
+        this.keys = keys;
+        this.live = new Generation();
+
+        this.skipped = lookups(registry, "skipped");
+        this.checked = lookups(registry, "checked");
+        this.falsePositives = lookups(registry, "false_positive");
+
+        Gauge.builder("ledger.idempotency.filter.expected_fpp", this, IdempotencyKeyFilter::expectedFalsePositiveRate)
+                .description("Expected false-positive rate of the idempotency key filter at its current fill")
+                .register(registry);
+        Gauge.builder("ledger.idempotency.filter.memory", this, IdempotencyKeyFilter::memoryBytes)
+                .description("Heap used by the idempotency key filter bit sets")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ledger.idempotency.filter.keys", this, IdempotencyKeyFilter::size)
+                .description("Keys added to the idempotency key filter")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void warmUp() {
+        if (!props.enabled() || props.warmupSize() <= 0) {
+            return;
+        }
+        var recent = keys.recentKeys(props.warmupSize());
+        recent.forEach(this::put);
+        log.info("Idempotency key filter warmed with {} keys", recent.size());
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.idempotency-filter.rebuild-interval-ms:86400000}",
+            initialDelayString = "${ledger.idempotency-filter.rebuild-interval-ms:86400000}")
+    public void run() {
+        if (props.enabled() && props.warmupSize() > 0) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Replaces the filter with one holding only the most recent keys. Lookups keep using the
+     * old filter until the new one is complete.
+     */
+    synchronized void rebuild() {
+
+        var next = new Generation();
+        rebuilding = next;
+        try {
+            var recent = keys.recentKeys(props.warmupSize());
+            for (String key : recent) {
+                long h1 = hash(key);
+                next.put(h1, mix(h1 ^ 0x9E3779B97F4A7C15L));
+            }
+            live = next;
+            log.info("Idempotency key filter rebuilt with {} keys", recent.size());
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    /**
+     * @return false only if the key was definitely never added
+     */
+    public boolean mightContain(String key) {
+
+        if (!props.enabled()) {
+            return true;
+        }
+
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        if (live.mightContain(h1, h2)) {
+            checked.increment();
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    public void put(String key) {
+
+        if (!props.enabled()) {
+            return;
+        }
+
+        long h1 = hash(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        live.put(h1, h2);
+        var next = rebuilding;
+        if (next != null) {
+            next.put(h1, h2);
+        }
+    }
+
+    /**
+     * Called when a key reported as possibly present turned out not to exist.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    double expectedFalsePositiveRate() {
+
+        var generation = live;
+        if (generation.saturated) {
+            return 1.0;
+        }
+        double miss = 1.0;
+        for (Stage stage : generation.stages) {
+            miss *= 1 - stage.expectedFalsePositiveRate();
+        }
+        return 1 - miss;
+    }
+
+    long memoryBytes() {
+        var next = rebuilding;
+        return live.memoryBytes() + (next != null ? next.memoryBytes() : 0);
+    }
+
+    long size() {
+        long count = 0;
+        for (Stage stage : live.stages) {
+            count += stage.count.get();
+        }
+        return count;
+    }
+
+    /**
+     * The stages filled since the last rebuild.
+     */
+    private final class Generation {
+
+        private volatile Stage[] stages =
+                {new Stage(props.initialCapacity(), props.falsePositiveRate() * (1 - TIGHTENING))};
+        private volatile boolean saturated;
+
+        private boolean mightContain(long h1, long h2) {
+            if (saturated) {
+                return true;
+            }
+            for (Stage stage : stages) {
+                if (stage.mightContain(h1, h2)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void put(long h1, long h2) {
+            var stage = current();
+            if (stage != null) {
+                stage.put(h1, h2);
+            }
+        }
+
+        private long memoryBytes() {
+            long bytes = 0;
+            for (Stage stage : stages) {
+                bytes += stage.bits.length() * (long) Long.BYTES;
+            }
+            return bytes;
+        }
+
+        /**
+         * @return the stage to add to, or {@code null} once every stage is full
+         */
+        private Stage current() {
+
+            Stage[] snapshot = stages;
+            Stage last = snapshot[snapshot.length - 1];
+            if (last.count.get() < last.capacity) {
+                return last;
+            }
+
+            synchronized (this) {
+                snapshot = stages;
+                last = snapshot[snapshot.length - 1];
+                if (last.count.get() < last.capacity) {
+                    return last;
+                }
+                if (snapshot.length >= Math.max(props.maxStages(), 1)) {
+                    if (!saturated) {
+                        saturated = true;
+                        log.warn("Idempotency key filter is full; every key is looked up until the next rebuild");
+                    }
+                    return null;
+                }
+                Stage next = new Stage(last.capacity * 2, last.falsePositiveRate * TIGHTENING);
+                Stage[] grown = new Stage[snapshot.length + 1];
+                System.arraycopy(snapshot, 0, grown, 0, snapshot.length);
+                grown[snapshot.length] = next;
+                stages = grown;
+                return next;
+            }
+        }
+    }
+
+    private static Counter lookups(MeterRegistry registry, String result) {
+        return Counter.builder("ledger.idempotency.filter.lookups")
+                .description("Idempotency key filter answers")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static long hash(String key) {
+        // FNV-1a over the UTF-16 chars, finished with a 64-bit mixer
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Stage {
+
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final long bitCount;
+        private final int hashes;
+        private final AtomicLongArray bits;
+        private final AtomicLong count = new AtomicLong();
+
+        private Stage(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) Math.max(1, (m + 63) / 64));
+            this.bitCount = bits.length() * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        private boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void put(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                long mask = 1L << bit;
+                bits.getAndAccumulate((int) (bit >>> 6), mask, (prev, m) -> prev | m);
+            }
+            count.incrementAndGet();
+        }
+
+        private double expectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-hashes * (double) count.get() / bitCount), hashes);
+        }
+    }
+}
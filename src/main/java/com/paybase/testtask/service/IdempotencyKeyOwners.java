@@ -0,0 +1,122 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ReadConsistency;
+import com.paybase.testtask.config.ShardingProperties;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.IdempotencyKeyInUseException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Keeps an idempotency key to one shard. A key is claimed on the shard its request runs on,
+ * so on its own that claim would only make the key unique per shard: the same key sent for
+ * accounts on another shard would post a second transaction.
+ *
+ * <p>Before a request runs, the shard its key hashes to records the request's shard as the
+ * key's owner, unless the key has one. A request on the owning shard runs as usual, and its
+ * claim there answers retries. A request on any other shard is answered with the transaction
+ * stored under the key on the owning shard. While there is none, the owner's request is taken
+ * to be in progress and the request is refused with {@link IdempotencyKeyInUseException};
+ * once the owner has stored nothing for {@code keyTakeoverAge}, e.g. because its request was
+ * rejected, another shard may take the key over.
+ *
+ * <p>The owner costs one more statement, on the key's shard, per request. Adding a shard moves
+ * most keys to another one, where keys used before the change have no owner.
+ */
+@Component
+@ConditionalOnProperty(prefix = "ledger.sharding", name = "enabled", havingValue = "true")
+public class IdempotencyKeyOwners {
+
+    private final ShardRouter router;
+    private final IdempotencyStore keys;
+    private final TransactionService transactions;
+    private final ShardingProperties props;
+
+    public IdempotencyKeyOwners(
+            ShardRouter router,
+            IdempotencyStore keys,
+            TransactionService transactions,
+            ShardingProperties props
+    ) {
+        this.router = router;
+        this.keys = keys;
+        this.transactions = transactions;
+        this.props = props;
+    }
+
+    /**
+     * @return the transaction the request's key was used for on another shard; empty when
+     * the request is to run on its own shard
+     * @throws IdempotencyKeyInUseException when the key's request on another shard has not
+     * stored its transaction yet
+     */
+    public Optional<TransactionEntity> claim(TransactionRequest r) {
+
+        var key = r.idempotencyKey();
+        int shard = router.shardOf(r);
+        var owner = router.on(router.shardOfKey(key), () -> keys.own(key, shard));
+        return resolve(key, shard, owner);
+    }
+
+    /**
+     * {@link #claim} for a batch, with one round trip to each shard the keys hash to.
+     *
+     * @return outcomes of the requests that are not to run, by position in {@code requests}
+     */
+    Map<Integer, LedgerOutcome> claimAll(List<TransactionRequest> requests) {
+
+        var byKeyShard = new TreeMap<Integer, Map<String, Integer>>();
+        for (var r : requests) {
+            byKeyShard.computeIfAbsent(router.shardOfKey(r.idempotencyKey()), shard -> new HashMap<>())
+                    .putIfAbsent(r.idempotencyKey(), router.shardOf(r));
+        }
+
+        Map<String, IdempotencyStore.Owner> owners = new HashMap<>();
+        byKeyShard.forEach((keyShard, shards) -> owners.putAll(router.on(keyShard, () -> keys.ownAll(shards))));
+
+        Map<Integer, LedgerOutcome> settled = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            var r = requests.get(i);
+            try {
+                var used = resolve(r.idempotencyKey(), router.shardOf(r), owners.get(r.idempotencyKey()));
+                if (used.isPresent()) {
+                    settled.put(i, LedgerOutcome.duplicate(r, used.get()));
+                }
+            } catch (RuntimeException ex) {
+                settled.put(i, LedgerOutcome.failed(r, ex));
+            }
+        }
+        return settled;
+    }
+
+    private Optional<TransactionEntity> resolve(String key, int shard, IdempotencyStore.Owner owner) {
+
+        while (owner.shard() != shard) {
+            var used = stored(key, owner.shard());
+            if (used.isPresent()) {
+                return used;
+            }
+            if (owner.since().isAfter(Instant.now().minus(props.keyTakeoverAge()))) {
+                throw new IdempotencyKeyInUseException();
+            }
+            var stale = owner;
+            owner = router.on(router.shardOfKey(key), () -> keys.takeOver(key, stale, shard));
+        }
+        return Optional.empty();
+    }
+
+    private Optional<TransactionEntity> stored(String key, int shard) {
+        // the owner's transaction may only just have been committed on the primary
+        try (var primary = ReadConsistency.readYourWrites()) {
+            return router.on(shard, () -> transactions.findByIdempotencyKey(key));
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.IdempotencyProperties;
+import com.paybase.testtask.domain.TransactionEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Idempotency keys, kept apart from {@code transactions} in {@code idempotency_keys} under
+ * the first 128 bits of their SHA-256, so the index stays fixed-width whatever the clients
+ * send. The key itself is stored next to its hash and compared on every lookup: a collision
+ * is treated as an unknown key, and its claim then fails, rather than being answered with
+ * another key's transaction.
+ *
+ * <p>A key is claimed in the database transaction that stores its transaction. The primary
+ * key makes a concurrent claim of the same key fail with a unique violation, which is what
+ * {@link TransactionProcessor} falls back on. Keys are remembered for {@code retention} and
+ * then purged in batches on every shard; a request retried after that is treated as new.
+ *
+ * <p>With sharding, {@code idempotency_key_owners} on the shard a key hashes to records which
+ * shard the key was first used on; {@link IdempotencyKeyOwners} keeps a key to that shard.
+ * Owners are purged with the keys.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(IdempotencyProperties.class)
+public class IdempotencyStore {
+
+    static final int HASH_BYTES = 16;
+
+    private static final String INSERT =
+            "INSERT INTO idempotency_keys (key_hash, idempotency_key, transaction_id, created_at) VALUES (?, ?, ?, ?)";
+
+    private static final String SELECT =
+            "SELECT idempotency_key, transaction_id, created_at FROM idempotency_keys WHERE key_hash ";
+
+    private static final RowMapper<StoredKey> STORED_KEY = (rs, rowNum) -> new StoredKey(
+            rs.getString("idempotency_key"),
+            new Claim(rs.getLong("transaction_id"), rs.getTimestamp("created_at").toInstant()));
+
+    private static final String PURGE = """
+            DELETE FROM idempotency_keys WHERE key_hash IN (
+                SELECT key_hash FROM idempotency_keys WHERE created_at < ? LIMIT ?)""";
+
+    private static final String INSERT_OWNER =
+            "INSERT INTO idempotency_key_owners (key_hash, shard, created_at) VALUES (?, ?, ?)";
+
+    private static final String SELECT_OWNER =
+            "SELECT key_hash, shard, created_at FROM idempotency_key_owners WHERE key_hash ";
+
+    private static final RowMapper<Owner> OWNER = (rs, rowNum) ->
+            new Owner(rs.getInt("shard"), rs.getTimestamp("created_at").toInstant());
+
+    private static final String PURGE_OWNERS = """
+            DELETE FROM idempotency_key_owners WHERE key_hash IN (
+                SELECT key_hash FROM idempotency_key_owners WHERE created_at < ? LIMIT ?)""";
+
+    private record StoredKey(String key, Claim claim) {
+    }
+
+    /**
+     * The transaction a key was claimed for. {@code createdAt} is the transaction's own, so
+     * the transaction can be read from the one partition that holds it.
+     */
+    public record Claim(long transactionId, Instant createdAt) {
+    }
+
+    /**
+     * The shard a key is used on, and since when.
+     */
+    public record Owner(int shard, Instant since) {
+    }
+
+    private final IdempotencyProperties props;
+    private final JdbcTemplate jdbc;
+    private final ShardRouter router;
+    private final Counter collisions;
+    private final Counter purged;
+
+    public IdempotencyStore(
+            IdempotencyProperties props,
+            JdbcTemplate jdbc,
+            ShardRouter router,
+            MeterRegistry registry
+    ) {
+        this.props = props;
+        this.jdbc = jdbc;
+        this.router = router;
+        this.collisions = Counter.builder("ledger.idempotency.collisions")
+                .description("Lookups whose key hash is stored for a different key")
+                .register(registry);
+        this.purged = Counter.builder("ledger.idempotency.purged")
+                .description("Idempotency keys deleted after their retention")
+                .register(registry);
+    }
+
+    static byte[] hash(String key) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return Arrays.copyOf(digest, HASH_BYTES);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the transaction stored under the key
+     */
+    public Optional<Claim> find(String key) {
+
+        for (var stored : jdbc.query(SELECT + "= ?", STORED_KEY, (Object) hash(key))) {
+            if (stored.key().equals(key)) {
+                return Optional.of(stored.claim());
+            }
+            collisions.increment();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return transactions by key, for the keys that are stored
+     */
+    Map<String, Claim> findAll(Collection<String> keys) {
+
+        var wanted = new HashSet<>(keys);
+        var placeholders = wanted.stream().map(key -> "?").collect(Collectors.joining(", "));
+
+        Map<String, Claim> found = new HashMap<>();
+        for (var stored : jdbc.query(SELECT + "IN (" + placeholders + ")", STORED_KEY,
+                wanted.stream().map(IdempotencyStore::hash).toArray())) {
+            if (wanted.contains(stored.key())) {
+                found.put(stored.key(), stored.claim());
+            } else {
+                collisions.increment();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Claims the transaction's key, in the caller's transaction.
+     */
+    void claim(TransactionEntity tx) {
+        jdbc.update(INSERT, hash(tx.getIdempotencyKey()), tx.getIdempotencyKey(), tx.getId(),
+                Timestamp.from(tx.getCreatedAt()));
+    }
+
+    void claimAll(List<TransactionEntity> txs) {
+        jdbc.batchUpdate(INSERT, txs.stream()
+                .map(tx -> new Object[]{hash(tx.getIdempotencyKey()), tx.getIdempotencyKey(), tx.getId(),
+                        Timestamp.from(tx.getCreatedAt())})
+                .toList());
+    }
+
+    /**
+     * Makes {@code shard} the key's owner unless it already has one, on the caller's shard.
+     *
+     * @return the key's owner
+     */
+    Owner own(String key, int shard) {
+
+        var hash = hash(key);
+        while (true) {
+            var owner = new Owner(shard, Instant.now().truncatedTo(ChronoUnit.MICROS));
+            try {
+                jdbc.update(INSERT_OWNER, hash, shard, Timestamp.from(owner.since()));
+                return owner;
+            } catch (DuplicateKeyException ex) {
+                // owned already, unless the owner was purged in between
+                var existing = jdbc.query(SELECT_OWNER + "= ?", OWNER, (Object) hash);
+                if (!existing.isEmpty()) {
+                    return existing.get(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link #own} for many keys in two statements, unless a concurrent request owns one of
+     * them first.
+     *
+     * @param shards shard each key is to be used on
+     * @return owner by key
+     */
+    Map<String, Owner> ownAll(Map<String, Integer> shards) {
+
+        var hex = HexFormat.of();
+        Map<String, String> keysByHash = new HashMap<>();
+        shards.keySet().forEach(key -> keysByHash.put(hex.formatHex(hash(key)), key));
+        var placeholders = shards.keySet().stream().map(key -> "?").collect(Collectors.joining(", "));
+
+        Map<String, Owner> owners = new HashMap<>();
+        jdbc.query(SELECT_OWNER + "IN (" + placeholders + ")", rs -> {
+            owners.put(keysByHash.get(hex.formatHex(rs.getBytes("key_hash"))), OWNER.mapRow(rs, 0));
+        }, shards.keySet().stream().map(IdempotencyStore::hash).toArray());
+
+        var since = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        var unowned = shards.keySet().stream().filter(key -> !owners.containsKey(key)).toList();
+        try {
+            jdbc.batchUpdate(INSERT_OWNER, unowned.stream()
+                    .map(key -> new Object[]{hash(key), shards.get(key), Timestamp.from(since)})
+                    .toList());
+            unowned.forEach(key -> owners.put(key, new Owner(shards.get(key), since)));
+        } catch (DuplicateKeyException ex) {
+            unowned.forEach(key -> owners.put(key, own(key, shards.get(key))));
+        }
+        return owners;
+    }
+
+    /**
+     * Moves the key to {@code shard}, provided {@code owner} still owns it.
+     *
+     * @return the key's owner afterwards
+     */
+    Owner takeOver(String key, Owner owner, int shard) {
+
+        var taken = new Owner(shard, Instant.now().truncatedTo(ChronoUnit.MICROS));
+        int updated = jdbc.update(
+                "UPDATE idempotency_key_owners SET shard = ?, created_at = ? WHERE key_hash = ? AND shard = ? AND created_at = ?",
+                shard, Timestamp.from(taken.since()), hash(key), owner.shard(), Timestamp.from(owner.since()));
+        return updated == 1 ? taken : own(key, shard);
+    }
+
+    /**
+     * When the transaction was created, as recorded with its key; empty once the key has
+     * been purged.
+     */
+    Optional<Instant> createdAt(long transactionId) {
+        return jdbc.queryForList("SELECT created_at FROM idempotency_keys WHERE transaction_id = ?",
+                        Timestamp.class, transactionId)
+                .stream()
+                .findFirst()
+                .map(Timestamp::toInstant);
+    }
+
+    /**
+     * Forgets a key whose transaction no longer exists, e.g. because its month was archived,
+     * so the key can be used again.
+     */
+    void release(String key, long transactionId) {
+        jdbc.update("DELETE FROM idempotency_keys WHERE key_hash = ? AND transaction_id = ?", hash(key), transactionId);
+    }
+
+    /**
+     * The most recently claimed keys of every shard, up to {@code limit} from each, newest
+     * first within a shard.
+     */
+    List<String> recentKeys(int limit) {
+
+        List<String> recent = new ArrayList<>();
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            recent.addAll(router.on(shard, () -> jdbc.queryForList(
+                    "SELECT idempotency_key FROM idempotency_keys ORDER BY created_at DESC LIMIT ?", String.class, limit)));
+        }
+        return recent;
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.idempotency.purge-interval-ms:600000}")
+    public void run() {
+        if (props.purgeEnabled()) {
+            purge(Instant.now().minus(props.retention()));
+        }
+    }
+
+    /**
+     * Deletes the keys claimed before {@code cutoff}, and the owners recorded before it, one
+     * batch per statement so no statement holds more than {@code purgeBatchSize} row locks.
+     *
+     * @return number of keys deleted
+     */
+    public long purge(Instant cutoff) {
+
+        var before = Timestamp.from(cutoff);
+        int batchSize = Math.max(props.purgeBatchSize(), 1);
+        long total = 0;
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            int deleted;
+            do {
+                deleted = router.on(shard, () -> jdbc.update(PURGE, before, batchSize));
+                total += deleted;
+                purged.increment(deleted);
+            } while (deleted == batchSize);
+            if (router.enabled()) {
+                do {
+                    deleted = router.on(shard, () -> jdbc.update(PURGE_OWNERS, before, batchSize));
+                } while (deleted == batchSize);
+            }
+        }
+        if (total > 0) {
+            log.info("Purged {} idempotency keys claimed before {}", total, cutoff);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,211 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.JournalEntry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary layout of journal segments.
+ *
+ * <p>A segment starts with a 16 byte header: a magic number and the segment's base
+ * offset. Entries follow back to back, each as {@code int length, int crc32c, payload}.
+ * A length of {@link #END_OF_SEGMENT} means the writer rolled over to the next segment;
+ * a zero length is unwritten space. Money is stored as minor units and a missing amount
+ * or account as a sentinel, so the payload is a fixed part and three short strings.
+ */
+final class JournalCodec {
+
+    static final long MAGIC = 0x4C4A524E4C303031L;
+    static final int SEGMENT_HEADER = 16;
+    static final int ENTRY_HEADER = 8;
+    static final int END_OF_SEGMENT = -1;
+
+    // fixed part plus the longest currency, key and reference the schema allows, in UTF-8
+    static final int MAX_PAYLOAD = 80 + (2 + 3 * 4) + (2 + 255 * 4) + (2 + 100 * 4);
+    static final int MAX_ENTRY = ENTRY_HEADER + MAX_PAYLOAD;
+
+    private static final long NO_ACCOUNT = 0;
+    private static final long NO_AMOUNT = Long.MIN_VALUE;
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    private JournalCodec() {
+    }
+
+    static Path segmentPath(Path directory, long base) {
+        return directory.resolve(PREFIX + String.format("%020d", base) + SUFFIX);
+    }
+
+    /**
+     * @return the segment files in the directory keyed by their base offset
+     */
+    static NavigableMap<Long, Path> segments(Path directory) throws IOException {
+
+        var segments = new TreeMap<Long, Path>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> {
+                var name = file.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                }
+            });
+        }
+        return segments;
+    }
+
+    /**
+     * Maps an existing segment and checks its header.
+     */
+    static MappedByteBuffer map(Path file, long base, FileChannel.MapMode mode) throws IOException {
+
+        MappedByteBuffer buffer;
+        try (var channel = mode == FileChannel.MapMode.READ_ONLY
+                ? FileChannel.open(file)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(mode, 0, channel.size());
+        }
+        if (buffer.capacity() < SEGMENT_HEADER || buffer.getLong(0) != MAGIC || buffer.getLong(8) != base) {
+            throw new IOException("Not a journal segment with base " + base + ": " + file);
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes a complete entry, header included, at the buffer's position.
+     */
+    static void encode(TransactionEntity tx, ByteBuffer out) {
+
+        int start = out.position();
+        out.position(start + ENTRY_HEADER);
+
+        out.putLong(tx.getId());
+        out.putLong(tx.getCreatedAt().getEpochSecond());
+        out.putInt(tx.getCreatedAt().getNano());
+        out.putInt(tx.getType().ordinal());
+        out.putLong(tx.getFromAccountId() != null ? tx.getFromAccountId() : NO_ACCOUNT);
+        out.putLong(tx.getToAccountId() != null ? tx.getToAccountId() : NO_ACCOUNT);
+        putMoney(out, tx.getAmount());
+        putMoney(out, tx.getFromBalanceBefore());
+        putMoney(out, tx.getFromBalanceAfter());
+        putMoney(out, tx.getToBalanceBefore());
+        putMoney(out, tx.getToBalanceAfter());
+        putString(out, tx.getCurrency());
+        putString(out, tx.getIdempotencyKey());
+        putString(out, tx.getReference());
+
+        int length = out.position() - start - ENTRY_HEADER;
+        out.putInt(start, length);
+        out.putInt(start + 4, checksum(out, start + ENTRY_HEADER, length));
+    }
+
+    /**
+     * Reads the payload of an entry whose header has already been validated.
+     */
+    static JournalEntry decode(ByteBuffer in, int payloadStart, long offset, long nextOffset) {
+
+        var buf = in.duplicate().position(payloadStart);
+
+        long id = buf.getLong();
+        var createdAt = Instant.ofEpochSecond(buf.getLong(), buf.getInt());
+        var type = TYPES[buf.getInt()];
+        long from = buf.getLong();
+        long to = buf.getLong();
+        var amount = getMoney(buf);
+        var fromBefore = getMoney(buf);
+        var fromAfter = getMoney(buf);
+        var toBefore = getMoney(buf);
+        var toAfter = getMoney(buf);
+        var currency = getString(buf);
+        var key = getString(buf);
+        var reference = getString(buf);
+
+        return new JournalEntry(
+                offset,
+                nextOffset,
+                id,
+                key,
+                type,
+                from != NO_ACCOUNT ? from : null,
+                to != NO_ACCOUNT ? to : null,
+                amount,
+                currency,
+                fromBefore,
+                fromAfter,
+                toBefore,
+                toAfter,
+                reference,
+                createdAt
+        );
+    }
+
+    /**
+     * @return the length of the valid entry at {@code position}, or -1 when there is none
+     */
+    static int validLength(ByteBuffer buf, int position) {
+
+        if (position + ENTRY_HEADER > buf.limit()) {
+            return -1;
+        }
+        int length = buf.getInt(position);
+        if (length <= 0 || length > MAX_PAYLOAD || position + ENTRY_HEADER + length > buf.limit()) {
+            return -1;
+        }
+        return checksum(buf, position + ENTRY_HEADER, length) == buf.getInt(position + 4) ? length : -1;
+    }
+
+    static int checksum(ByteBuffer buf, int start, int length) {
+        var crc = new CRC32C();
+        crc.update(buf.slice(start, length));
+        return (int) crc.getValue();
+    }
+
+    private static void putMoney(ByteBuffer out, Money value) {
+        out.putLong(value != null ? value.minorUnits() : NO_AMOUNT);
+    }
+
+    private static Money getMoney(ByteBuffer in) {
+        long units = in.getLong();
+        return units != NO_AMOUNT ? new Money(units) : null;
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+
+        if (value == null) {
+            out.putShort((short) -1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.dto.JournalEntry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Sequential reader over the journal's segment files. It maps each segment read-only and
+ * decodes entries straight from the mapping, so replay runs at the speed of the page cache.
+ *
+ * <p>{@link #next()} returns {@code null} once it has caught up; calling it again later
+ * picks up entries appended in the meantime, which is how the journal is tailed. A reader
+ * from {@link LedgerJournal#reader(long)} stops at the durable offset; one opened on a
+ * directory with {@link #open(Path, long)} stops at the first entry that fails its checksum.
+ * Offsets passed in must be entry boundaries, such as a previous {@link JournalEntry#nextOffset()}.
+ */
+public final class JournalReader {
+
+    private final Path directory;
+    private final LongSupplier limit;
+
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    private int position;
+    private long nextOffset;
+
+    JournalReader(Path directory, long fromOffset, LongSupplier limit) {
+        this.directory = directory;
+        this.limit = limit;
+        this.nextOffset = fromOffset;
+    }
+
+    public static JournalReader open(Path directory, long fromOffset) {
+        return new JournalReader(directory, fromOffset, () -> Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the offset the next entry will be read from
+     */
+    public long position() {
+        return nextOffset;
+    }
+
+    public JournalEntry next() {
+
+        while (nextOffset < limit.getAsLong()) {
+            if (segment == null && !seek(nextOffset)) {
+                return null;
+            }
+
+            if (position + JournalCodec.ENTRY_HEADER > segment.capacity()
+                    || segment.getInt(position) == JournalCodec.END_OF_SEGMENT) {
+                if (!openSegment(segmentBase + segment.capacity())) {
+                    return null;
+                }
+                continue;
+            }
+
+            int length = JournalCodec.validLength(segment, position);
+            if (length < 0) {
+                return null;
+            }
+
+            long offset = segmentBase + position;
+            int payload = position + JournalCodec.ENTRY_HEADER;
+            position = payload + length;
+            nextOffset = segmentBase + position;
+            return JournalCodec.decode(segment, payload, offset, nextOffset);
+        }
+        return null;
+    }
+
+    /**
+     * Hands every entry up to the current end of the journal to {@code consumer}.
+     *
+     * @return number of entries replayed
+     */
+    public long replay(Consumer<JournalEntry> consumer) {
+
+        long count = 0;
+        for (var entry = next(); entry != null; entry = next()) {
+            consumer.accept(entry);
+            count++;
+        }
+        return count;
+    }
+
+    private boolean seek(long offset) {
+
+        try {
+            var segments = JournalCodec.segments(directory);
+            var floor = segments.floorEntry(offset);
+            if (floor == null) {
+                floor = segments.firstEntry();
+            }
+            if (floor == null || !openSegment(floor.getKey())) {
+                return false;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        position = (int) Math.max(JournalCodec.SEGMENT_HEADER, offset - segmentBase);
+        nextOffset = segmentBase + position;
+        return true;
+    }
+
+    private boolean openSegment(long base) {
+
+        var file = JournalCodec.segmentPath(directory, base);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try {
+            segment = JournalCodec.map(file, base, FileChannel.MapMode.READ_ONLY);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        segmentBase = base;
+        position = JournalCodec.SEGMENT_HEADER;
+        nextOffset = base + position;
+        return true;
+    }
+}
@@ -0,0 +1,199 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.InsufficientFundsException;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Applies a group of requests in a single database transaction: every involved account
+ * is locked once, balances are moved in memory and all rows are inserted together.
+ * Per-request failures (duplicate key, insufficient funds, unknown account) are reported
+ * as outcomes and do not roll back the rest of the group.
+ *
+ * <p>A bucketed account is handled like {@link TransactionService} does: debits drain the
+ * row and its buckets under the row lock the group already holds, and credits go to the
+ * row without recording its figures, since the row is only one slot of the balance.
+ */
+@Service
+@RequiredArgsConstructor
+public class LedgerBatchWriter {
+
+    private final AccountRepository accountRepo;
+    private final TransactionRepository txRepo;
+    private final IdempotencyKeyFilter keyFilter;
+    private final IdempotencyStore keys;
+    private final BalanceCache balanceCache;
+    private final LedgerMetrics metrics;
+    private final OutboxWriter outbox;
+    private final LedgerJournal journal;
+    private final AccountBuckets buckets;
+
+    @Transactional
+    public List<LedgerOutcome> apply(List<TransactionRequest> requests) {
+
+        Map<String, TransactionEntity> known = new HashMap<>();
+        var candidates = requests.stream()
+                .map(TransactionRequest::idempotencyKey)
+                .filter(keyFilter::mightContain)
+                .toList();
+        if (!candidates.isEmpty()) {
+            var stored = keys.findAll(candidates);
+            var found = find(stored.values()).stream()
+                    .collect(Collectors.toMap(TransactionEntity::getId, Function.identity()));
+            stored.forEach((key, claim) -> {
+                if (found.containsKey(claim.transactionId())) {
+                    known.put(key, found.get(claim.transactionId()));
+                } else {
+                    keys.release(key, claim.transactionId());
+                }
+            });
+        }
+
+        Map<Long, AccountEntity> accounts = lock(requests);
+
+        List<LedgerOutcome> outcomes = new ArrayList<>(requests.size());
+        List<TransactionEntity> pending = new ArrayList<>(requests.size());
+
+        for (TransactionRequest r : requests) {
+            TransactionEntity existing = known.get(r.idempotencyKey());
+            if (existing != null) {
+                metrics.idempotencyHit();
+                outcomes.add(LedgerOutcome.duplicate(r, existing));
+                continue;
+            }
+            metrics.idempotencyMiss();
+            try {
+                TransactionEntity tx = execute(r, accounts);
+                known.put(r.idempotencyKey(), tx);
+                pending.add(tx);
+                outcomes.add(LedgerOutcome.created(r, tx));
+            } catch (InsufficientFundsException ex) {
+                metrics.insufficientFunds(r.type());
+                outcomes.add(LedgerOutcome.failed(r, ex));
+            } catch (NoSuchElementException ex) {
+                outcomes.add(LedgerOutcome.failed(r, ex));
+            }
+        }
+
+        txRepo.saveAll(pending);
+        keys.claimAll(pending);
+        outbox.appendAll(pending);
+        pending.forEach(tx -> {
+            keyFilter.put(tx.getIdempotencyKey());
+            journal.appendAfterCommit(tx);
+        });
+        accounts.values().forEach(balanceCache::publish);
+        return outcomes;
+    }
+
+    /**
+     * Reads only the months the claimed transactions were created in.
+     */
+    private List<TransactionEntity> find(Collection<IdempotencyStore.Claim> claims) {
+
+        if (claims.isEmpty()) {
+            return List.of();
+        }
+        var ids = claims.stream().map(IdempotencyStore.Claim::transactionId).toList();
+        var from = claims.stream().map(IdempotencyStore.Claim::createdAt).min(Comparator.naturalOrder()).orElseThrow();
+        var to = claims.stream().map(IdempotencyStore.Claim::createdAt).max(Comparator.naturalOrder()).orElseThrow();
+        return txRepo.findAllByIdInAndCreatedAtBetween(ids, from, to);
+    }
+
+    private Map<Long, AccountEntity> lock(List<TransactionRequest> requests) {
+
+        var ids = new TreeSet<Long>();
+        for (TransactionRequest r : requests) {
+            if (r.fromAccountId() != null) {
+                ids.add(r.fromAccountId());
+            }
+            if (r.toAccountId() != null) {
+                ids.add(r.toAccountId());
+            }
+        }
+
+        long started = System.nanoTime();
+        var locked = accountRepo.lockAllById(ids);
+        metrics.lockAcquired(started, locked);
+
+        Map<Long, AccountEntity> accounts = new HashMap<>();
+        locked.forEach(acc -> accounts.put(acc.getId(), acc));
+        return accounts;
+    }
+
+    private TransactionEntity execute(TransactionRequest r, Map<Long, AccountEntity> accounts) {
+
+        var amount = Money.of(r.amount());
+        return switch (r.type()) {
+            case DEPOSIT, REFUND -> {
+                var acc = account(accounts, r.toAccountId());
+                var before = creditBalance(acc);
+                acc.credit(amount);
+                yield TransactionService.newTransaction(r, amount, null, acc, null, null,
+                        before, before != null ? acc.getBalance() : null);
+            }
+            case WITHDRAWAL, FEE -> {
+                var acc = account(accounts, r.fromAccountId());
+                var before = debit(acc, amount);
+                yield TransactionService.newTransaction(r, amount, acc, null, before, before.minus(amount), null, null);
+            }
+            case TRANSFER -> {
+                var from = account(accounts, r.fromAccountId());
+                var to = account(accounts, r.toAccountId());
+                var fromBefore = debit(from, amount);
+                var toBefore = creditBalance(to);
+                to.credit(amount);
+                yield TransactionService.newTransaction(r, amount, from, to,
+                        fromBefore, fromBefore.minus(amount),
+                        toBefore, toBefore != null ? to.getBalance() : null);
+            }
+        };
+    }
+
+    /**
+     * @return the account's whole balance before the debit
+     */
+    private Money debit(AccountEntity acc, Money amount) {
+
+        if (acc.getBucketCount() > 0) {
+            return buckets.drain(acc, amount);
+        }
+        var before = acc.getBalance();
+        acc.debit(amount);
+        return before;
+    }
+
+    /**
+     * @return the balance a credit starts from, or {@code null} for a bucketed account, whose
+     * row is not its balance
+     */
+    private static Money creditBalance(AccountEntity acc) {
+        return acc.getBucketCount() > 0 ? null : acc.getBalance();
+    }
+
+    private static AccountEntity account(Map<Long, AccountEntity> accounts, Long id) {
+        var acc = accounts.get(id);
+        if (acc == null) {
+            throw new NoSuchElementException("No value present");
+        }
+        return acc;
+    }
+}
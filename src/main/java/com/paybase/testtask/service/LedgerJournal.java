@@ -0,0 +1,384 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.JournalProperties;
+import com.paybase.testtask.domain.TransactionEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only local copy of every committed transaction, written to memory-mapped segment
+ * files (see {@link JournalCodec} for the layout).
+ *
+ * <p>Appending is a copy into the mapping under a short lock; nothing is forced to disk
+ * on the caller's thread. A single flusher thread forces whatever has been appended since
+ * its last pass, so callers that arrive while a force is running share the next one
+ * (group commit). {@link #awaitPending()} blocks until the entries the current thread
+ * appended are durable.
+ *
+ * <p>Entries are appended after the database commit, so the database stays the source of
+ * truth: a crash in between loses the entry, and two transactions on one account that
+ * commit back to back may be journaled in either order. Their balance chain orders them.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(JournalProperties.class)
+public class LedgerJournal implements DisposableBean {
+
+    private static final long NONE = -1;
+
+    private final JournalProperties props;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    // guarded by lock
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    private int position;
+    private volatile long written;
+    private int unflushedEntries;
+    private final List<MappedByteBuffer> rolled = new ArrayList<>();
+
+    private volatile long durable;
+    private volatile boolean running;
+    private Thread flusher;
+
+    private final ThreadLocal<ByteBuffer> scratch =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(JournalCodec.MAX_ENTRY));
+    private final ThreadLocal<long[]> pending = ThreadLocal.withInitial(() -> new long[]{NONE});
+
+    private final Timer fsync;
+    private final DistributionSummary groupSize;
+    private final Counter failures;
+
+    public LedgerJournal(JournalProperties props, MeterRegistry registry) throws IOException {
+        this.props = props;
+        this.fsync = Timer.builder("ledger.journal.fsync")
+                .description("Time to force appended journal entries to disk")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.groupSize = DistributionSummary.builder("ledger.journal.group.size")
+                .description("Journal entries made durable by one fsync")
+                .register(registry);
+        this.failures = Counter.builder("ledger.journal.failures")
+                .description("Journal appends or flushes that failed")
+                .register(registry);
+
+        if (props.enabled()) {
+            open();
+        }
+    }
+
+    public boolean enabled() {
+        return props.enabled();
+    }
+
+    /**
+     * Appends the transaction once the surrounding database transaction commits, or
+     * immediately when there is none, and remembers its offset for {@link #awaitPending()}.
+     */
+    public void appendAfterCommit(TransactionEntity tx) {
+
+        if (!props.enabled()) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            remember(tryAppend(tx));
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember(tryAppend(tx));
+            }
+        });
+    }
+
+    /**
+     * Waits until everything this thread appended through {@link #appendAfterCommit} is on
+     * disk. Called by the code that answers the client, outside of any transaction.
+     */
+    public void awaitPending() {
+
+        if (!props.enabled()) {
+            return;
+        }
+
+        var slot = pending.get();
+        long offset = slot[0];
+        slot[0] = NONE;
+        if (offset != NONE && !awaitDurable(offset)) {
+            log.warn("Journal not durable up to offset {} after {}", offset, props.flushTimeout());
+        }
+    }
+
+    /**
+     * @return the offset just past the appended entry
+     */
+    public long append(TransactionEntity tx) {
+
+        var entry = scratch.get().clear();
+        JournalCodec.encode(tx, entry);
+        entry.flip();
+
+        lock.lock();
+        try {
+            if (segment.capacity() - position < entry.remaining()) {
+                roll();
+            }
+            segment.put(position, entry, 0, entry.remaining());
+            position += entry.remaining();
+            written = segmentBase + position;
+            unflushedEntries++;
+            appended.signal();
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the journal became durable up to {@code offset} within the flush timeout
+     */
+    public boolean awaitDurable(long offset) {
+
+        if (durable >= offset) {
+            return true;
+        }
+
+        long nanos = props.flushTimeout().toNanos();
+        lock.lock();
+        try {
+            while (durable < offset) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = flushed.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long durableOffset() {
+        return durable;
+    }
+
+    /**
+     * Opens a reader that follows the journal from {@code fromOffset} (0 for the start)
+     * and never reads past what has been made durable.
+     */
+    public JournalReader reader(long fromOffset) {
+
+        if (!props.enabled()) {
+            throw new IllegalStateException("Journal is disabled");
+        }
+        return new JournalReader(props.directory(), fromOffset, this::durableOffset);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        lock.lock();
+        try {
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join();
+    }
+
+    private long tryAppend(TransactionEntity tx) {
+        try {
+            return append(tx);
+        } catch (RuntimeException ex) {
+            // the transaction is already committed; losing its journal entry must not fail it
+            failures.increment();
+            log.error("Failed to journal transaction {}", tx.getId(), ex);
+            return NONE;
+        }
+    }
+
+    private void remember(long offset) {
+        var slot = pending.get();
+        slot[0] = Math.max(slot[0], offset);
+    }
+
+    private void open() throws IOException {
+
+        Files.createDirectories(props.directory());
+        var segments = JournalCodec.segments(props.directory());
+
+        if (segments.isEmpty()) {
+            create(0);
+        } else {
+            var last = segments.lastEntry();
+            segment = JournalCodec.map(last.getValue(), last.getKey(), FileChannel.MapMode.READ_WRITE);
+            segmentBase = last.getKey();
+            recover();
+        }
+
+        written = segmentBase + position;
+        durable = written;
+        running = true;
+        flusher = new Thread(this::flushLoop, "ledger-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Journal opened in {} at offset {}", props.directory(), written);
+    }
+
+    /**
+     * Finds the end of the last segment. Anything after the last entry with a valid
+     * checksum is a write torn by a crash and is zeroed so it is not mistaken for data.
+     */
+    private void recover() throws IOException {
+
+        position = JournalCodec.SEGMENT_HEADER;
+        while (true) {
+            if (position + 4 <= segment.capacity() && segment.getInt(position) == JournalCodec.END_OF_SEGMENT) {
+                roll();
+                return;
+            }
+            int length = JournalCodec.validLength(segment, position);
+            if (length < 0) {
+                break;
+            }
+            position += JournalCodec.ENTRY_HEADER + length;
+        }
+
+        if (position + 4 <= segment.capacity() && segment.getInt(position) != 0) {
+            log.warn("Truncating torn journal tail at offset {}", segmentBase + position);
+            var zeros = new byte[64 * 1024];
+            for (int at = position; at < segment.capacity(); at += zeros.length) {
+                segment.put(at, zeros, 0, Math.min(zeros.length, segment.capacity() - at));
+            }
+            segment.force();
+        }
+    }
+
+    private void roll() throws UncheckedIOException {
+
+        if (segment.capacity() - position >= 4) {
+            segment.putInt(position, JournalCodec.END_OF_SEGMENT);
+        }
+        rolled.add(segment);
+        try {
+            create(segmentBase + segment.capacity());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void create(long base) throws IOException {
+
+        var file = JournalCodec.segmentPath(props.directory(), base);
+        try (var channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, props.segmentSize().toBytes());
+        }
+        segment.putLong(0, JournalCodec.MAGIC);
+        segment.putLong(8, base);
+        segment.force();
+        segmentBase = base;
+        position = JournalCodec.SEGMENT_HEADER;
+    }
+
+    private void flushLoop() {
+
+        while (running || durable < written) {
+            long target;
+            int entries;
+            List<MappedByteBuffer> toForce = new ArrayList<>();
+
+            lock.lock();
+            try {
+                while (running && written == durable) {
+                    appended.awaitUninterruptibly();
+                }
+                target = written;
+                entries = unflushedEntries;
+                unflushedEntries = 0;
+                toForce.addAll(rolled);
+                rolled.clear();
+                toForce.add(segment);
+            } finally {
+                lock.unlock();
+            }
+
+            if (target == durable) {
+                continue;
+            }
+
+            long started = System.nanoTime();
+            try {
+                toForce.forEach(MappedByteBuffer::force);
+            } catch (UncheckedIOException ex) {
+                failures.increment();
+                log.error("Failed to flush journal up to offset {}", target, ex);
+                if (!running) {
+                    return;
+                }
+                requeue(toForce, entries);
+                continue;
+            }
+            fsync.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            groupSize.record(entries);
+
+            lock.lock();
+            try {
+                durable = target;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void requeue(List<MappedByteBuffer> buffers, int entries) {
+
+        lock.lock();
+        try {
+            buffers.stream().filter(b -> b != segment && !rolled.contains(b)).forEach(rolled::add);
+            unflushedEntries += entries;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.LedgerMetricsProperties;
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.TransactionType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters on the transaction hot path. Per-account series are folded into
+ * {@code ledger.metrics.shards} shards; slow row-lock waits are logged with the account and
+ * merchant ids so a lock convoy can be traced back to whoever causes it.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(LedgerMetricsProperties.class)
+public class LedgerMetrics {
+
+    private final LedgerMetricsProperties props;
+    private final MeterRegistry registry;
+
+    private final Timer[] lockWaits;
+    private final AtomicInteger[] inFlight;
+    private final Counter idempotencyHits;
+    private final Counter idempotencyMisses;
+
+    public LedgerMetrics(LedgerMetricsProperties props, MeterRegistry registry) {
+        this.props = props;
+        this.registry = registry;
+
+        int shards = Math.max(props.shards(), 1);
+        this.lockWaits = new Timer[shards];
+        this.inFlight = new AtomicInteger[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            lockWaits[shard] = Timer.builder("ledger.account.lock.wait")
+                    .description("Time spent waiting for account row locks")
+                    .tag("shard", String.valueOf(shard))
+                    .publishPercentileHistogram()
+                    .register(registry);
+            inFlight[shard] = new AtomicInteger();
+            Gauge.builder("ledger.transactions.in_flight", inFlight[shard], AtomicInteger::get)
+                    .description("Transactions being processed, by shard of the owning account")
+                    .tag("shard", String.valueOf(shard))
+                    .register(registry);
+        }
+
+        this.idempotencyHits = idempotency(registry, "hit");
+        this.idempotencyMisses = idempotency(registry, "miss");
+    }
+
+    public Timer.Sample startTransaction() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * @param outcome low-cardinality result, e.g. {@code completed} or {@code insufficient_funds}
+     */
+    public void transactionFinished(Timer.Sample sample, TransactionType type, String outcome) {
+        sample.stop(Timer.builder("ledger.transactions")
+                .description("Time to process a transaction request end to end")
+                .tag("type", type.name())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    /**
+     * Marks a transaction owned by {@code accountId} as in flight until the returned handle
+     * is closed.
+     */
+    public InFlight inFlight(Long accountId) {
+        var counter = inFlight[shard(accountId)];
+        counter.incrementAndGet();
+        return counter::decrementAndGet;
+    }
+
+    public void lockAcquired(long startedNanos, Collection<AccountEntity> accounts) {
+
+        if (accounts.isEmpty()) {
+            return;
+        }
+        long waited = System.nanoTime() - startedNanos;
+        var first = accounts.iterator().next();
+        lockWaits[shard(first.getId())].record(Duration.ofNanos(waited));
+
+        if (waited > props.slowLockThreshold().toNanos()) {
+            log.warn("Waited {} ms for row locks on accounts {} (merchants {})",
+                    waited / 1_000_000,
+                    accounts.stream().map(AccountEntity::getId).toList(),
+                    accounts.stream().map(AccountEntity::getMerchantId).distinct().toList());
+        }
+    }
+
+    public void idempotencyHit() {
+        idempotencyHits.increment();
+    }
+
+    public void idempotencyMiss() {
+        idempotencyMisses.increment();
+    }
+
+    public void insufficientFunds(TransactionType type) {
+        registry.counter("ledger.transactions.insufficient_funds", "type", type.name()).increment();
+    }
+
+    int shard(Long accountId) {
+        return accountId == null ? 0 : Math.floorMod(accountId.hashCode(), lockWaits.length);
+    }
+
+    private static Counter idempotency(MeterRegistry registry, String result) {
+        return Counter.builder("ledger.idempotency.requests")
+                .description("Transaction requests by whether their idempotency key was already stored")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    @FunctionalInterface
+    public interface InFlight extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
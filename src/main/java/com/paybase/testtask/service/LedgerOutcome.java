@@ -0,0 +1,35 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.TransactionRequest;
+
+/**
+ * Result of applying one request inside a batch: either the stored transaction
+ * (new or found by idempotency key) or the error the single-request path would have thrown.
+ */
+public record LedgerOutcome(
+        TransactionRequest request,
+        TransactionEntity transaction,
+        boolean duplicate,
+        RuntimeException error
+) {
+
+    static LedgerOutcome created(TransactionRequest request, TransactionEntity tx) {
+        return new LedgerOutcome(request, tx, false, null);
+    }
+
+    static LedgerOutcome duplicate(TransactionRequest request, TransactionEntity tx) {
+        return new LedgerOutcome(request, tx, true, null);
+    }
+
+    static LedgerOutcome failed(TransactionRequest request, RuntimeException error) {
+        return new LedgerOutcome(request, null, false, error);
+    }
+
+    public TransactionEntity getOrThrow() {
+        if (error != null) {
+            throw error;
+        }
+        return transaction;
+    }
+}
@@ -0,0 +1,336 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ReconciliationProperties;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.dto.MismatchKind;
+import com.paybase.testtask.dto.ReconciliationMismatch;
+import com.paybase.testtask.dto.ReconciliationReport;
+import com.paybase.testtask.dto.ReconciliationRun;
+import com.paybase.testtask.exceptions.BadRequestException;
+import com.paybase.testtask.exceptions.NotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks every account's balance against the audit chain of its transactions: each leg
+ * must start from the balance the previous leg left ({@link MismatchKind#BROKEN_CHAIN}),
+ * end at its start plus or minus its amount ({@link MismatchKind#WRONG_AMOUNT}), and the
+ * account must hold what its last leg left ({@link MismatchKind#BALANCE}). Legs without
+ * recorded figures, such as credits to a bucketed account, carry the running balance
+ * forward by their amount; an account is only checked once a recorded figure anchors it.
+ *
+ * <p>The sorted account ids are split recursively on a fork-join pool down to chunks of
+ * {@code chunk-size} accounts. A chunk reads its accounts' balances and streams their legs
+ * in {@code created_at} order within one repeatable-read transaction, so both come from
+ * the same snapshot and only one account's running state is held at a time. Memory stays
+ * at one id per account however many transactions there are.
+ *
+ * <p>Progress and mismatches are written to {@code reconciliation_runs} and
+ * {@code reconciliation_mismatches} as chunks finish. One run at a time per instance.
+ *
+ * <p>With sharding, the shards are reconciled one after another, each chunk reading from
+ * the shard its accounts live on, while the run and its mismatches are recorded on the
+ * default shard, where the reports are read from.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(ReconciliationProperties.class)
+public class LedgerReconciliation implements DisposableBean {
+
+    static final String COMPLETED = "COMPLETED";
+    static final String FAILED = "FAILED";
+
+    private static final int MAX_PAGE = 1000;
+
+    private final ReconciliationProperties props;
+    private final ReconciliationStore store;
+    private final BalanceSnapshotStore balances;
+    private final ShardRouter router;
+    private final TransactionTemplate chunkTransaction;
+    private final ForkJoinPool workers;
+    private final ExecutorService coordinator;
+    private final Timer runDuration;
+    private final Counter mismatchesFound;
+
+    private Long runningId;
+
+    public LedgerReconciliation(
+            ReconciliationProperties props,
+            ReconciliationStore store,
+            BalanceSnapshotStore balances,
+            ShardRouter router,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry registry
+    ) {
+        this.props = props;
+        this.store = store;
+        this.balances = balances;
+        this.router = router;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.chunkTransaction.setReadOnly(true);
+
+        this.workers = new ForkJoinPool(Math.max(props.parallelism(), 1));
+        this.coordinator = Executors.newSingleThreadExecutor(task -> {
+            var thread = new Thread(task, "ledger-reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.runDuration = Timer.builder("ledger.reconciliation.duration")
+                .description("Time to reconcile every account")
+                .register(registry);
+        this.mismatchesFound = Counter.builder("ledger.reconciliation.mismatches")
+                .description("Balances that disagree with the transaction chain")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.reconciliation.interval-ms:86400000}",
+            initialDelayString = "${ledger.reconciliation.interval-ms:86400000}")
+    public void run() {
+        if (props.enabled()) {
+            start();
+        }
+    }
+
+    /**
+     * Starts a run in the background, or returns the one already in progress.
+     */
+    public ReconciliationRun start() {
+
+        long runId;
+        synchronized (this) {
+            if (runningId != null) {
+                return store.run(runningId).orElseThrow();
+            }
+            runningId = runId = store.start();
+        }
+        coordinator.execute(() -> execute(runId));
+        return store.run(runId).orElseThrow();
+    }
+
+    /**
+     * Runs a reconciliation on the calling thread, unless one is already in progress.
+     *
+     * @return the finished run, or the one in progress
+     */
+    public ReconciliationRun reconcile() {
+
+        long runId;
+        synchronized (this) {
+            if (runningId != null) {
+                return store.run(runningId).orElseThrow();
+            }
+            runningId = runId = store.start();
+        }
+        execute(runId);
+        return store.run(runId).orElseThrow();
+    }
+
+    public ReconciliationReport report(long runId, int limit) {
+        return report(store.run(runId).orElseThrow(NotFoundException::new), limit);
+    }
+
+    public ReconciliationReport latest(int limit) {
+        return report(store.latest().orElseThrow(NotFoundException::new), limit);
+    }
+
+    private ReconciliationReport report(ReconciliationRun run, int limit) {
+
+        if (limit < 1 || limit > MAX_PAGE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_PAGE);
+        }
+        return new ReconciliationReport(run, store.mismatches(run.id(), limit));
+    }
+
+    private void execute(long runId) {
+
+        long started = System.nanoTime();
+        String status = FAILED;
+        try {
+            var stored = new AtomicInteger();
+            for (int shard = 0; shard < router.shardCount(); shard++) {
+                var ids = router.on(shard, store::accountIds);
+                workers.invoke(new Slice(runId, shard, ids, 0, ids.length, stored));
+            }
+            status = COMPLETED;
+        } catch (RuntimeException ex) {
+            log.error("Reconciliation run {} failed", runId, ex);
+        } finally {
+            store.finish(runId, status);
+            synchronized (this) {
+                runningId = null;
+            }
+            runDuration.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+        log.info("Reconciliation run {} {}", runId, status.toLowerCase());
+    }
+
+    private final class Slice extends RecursiveAction {
+
+        private final long runId;
+        private final int shard;
+        private final long[] ids;
+        private final int from;
+        private final int to;
+        private final AtomicInteger stored;
+
+        Slice(long runId, int shard, long[] ids, int from, int to, AtomicInteger stored) {
+            this.runId = runId;
+            this.shard = shard;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.stored = stored;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from <= Math.max(props.chunkSize(), 1)) {
+                if (to > from) {
+                    checkChunk(runId, shard, ids[from], ids[to - 1], to - from, stored);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Slice(runId, shard, ids, from, mid, stored), new Slice(runId, shard, ids, mid, to, stored));
+        }
+    }
+
+    private void checkChunk(long runId, int shard, long firstId, long lastId, int accounts, AtomicInteger stored) {
+
+        int room = Math.max(props.maxStoredMismatches() - stored.get(), 0);
+        var chain = router.on(shard, () -> Objects.requireNonNull(chunkTransaction.execute(status -> {
+            var checker = new ChainChecker(balances.currentBalances(firstId, lastId), room);
+            store.streamLegs(firstId, lastId, checker);
+            checker.finishAccount();
+            return checker;
+        })));
+
+        int keep = reserve(stored, chain.found.size());
+        if (keep > 0) {
+            store.insert(runId, chain.found.subList(0, keep));
+        }
+        store.progress(runId, accounts, chain.legs, chain.mismatches);
+        mismatchesFound.increment(chain.mismatches);
+    }
+
+    private int reserve(AtomicInteger stored, int wanted) {
+
+        while (true) {
+            int current = stored.get();
+            int granted = Math.min(wanted, props.maxStoredMismatches() - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (stored.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Follows the legs of a chunk, which arrive grouped by account, keeping only the
+     * current account's running balance.
+     */
+    private static final class ChainChecker implements RowCallbackHandler {
+
+        private final Map<Long, Money> balances;
+        private final int limit;
+        private final List<ReconciliationMismatch> found = new ArrayList<>();
+        private long legs;
+        private long mismatches;
+
+        private Long accountId;
+        private Money expected;
+
+        ChainChecker(Map<Long, Money> balances, int limit) {
+            this.balances = balances;
+            this.limit = limit;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+
+            long account = rs.getLong("account_id");
+            if (accountId == null || accountId != account) {
+                finishAccount();
+                accountId = account;
+                expected = null;
+            }
+            legs++;
+
+            long txId = rs.getLong("id");
+            var amount = Money.of(rs.getBigDecimal("amount"));
+            var delta = rs.getInt("sign") < 0 ? Money.ZERO.minus(amount) : amount;
+            var before = Money.ofNullable(rs.getBigDecimal("balance_before"));
+            var after = Money.ofNullable(rs.getBigDecimal("balance_after"));
+
+            if (before != null) {
+                if (expected != null && !before.equals(expected)) {
+                    report(txId, MismatchKind.BROKEN_CHAIN, expected, before);
+                }
+                // carry on from what was recorded, so one bad leg is reported once
+                expected = before;
+            }
+            var computed = expected != null ? expected.plus(delta) : null;
+            if (after != null) {
+                if (computed != null && !after.equals(computed)) {
+                    report(txId, MismatchKind.WRONG_AMOUNT, computed, after);
+                }
+                expected = after;
+            } else {
+                expected = computed;
+            }
+        }
+
+        void finishAccount() {
+
+            if (accountId == null || expected == null) {
+                return;
+            }
+            var actual = balances.get(accountId);
+            if (actual != null && !actual.equals(expected)) {
+                report(null, MismatchKind.BALANCE, expected, actual);
+            }
+        }
+
+        private void report(Long txId, MismatchKind kind, Money expected, Money actual) {
+
+            mismatches++;
+            if (found.size() < limit) {
+                found.add(new ReconciliationMismatch(
+                        accountId, txId, kind, expected.toBigDecimal(), actual.toBigDecimal()));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,123 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.OutboxProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Adds outbox events to the {@link MerchantRollups} without waiting for the
+ * {@link OutboxRelay}, so the rollups keep moving while the relay is disabled or its sink
+ * fails. Partitions are claimed like the relay claims them, on the same rows with
+ * {@code SKIP LOCKED}, so the two never work on one partition at once. An event added here
+ * is marked {@code rolled_up} and left for the relay, which only adds the events that are
+ * not marked.
+ *
+ * <p>It runs less often than the relay: while the relay keeps up, it finds most events
+ * already published and deleted, and marks few.
+ */
+@Slf4j
+@Component
+public class MerchantRollupFeed {
+
+    private final OutboxProperties props;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final MerchantRollups rollups;
+    private final ShardRouter router;
+
+    private volatile List<Integer> partitions;
+
+    public MerchantRollupFeed(
+            OutboxProperties props,
+            JdbcTemplate jdbc,
+            TransactionTemplate transactionTemplate,
+            MerchantRollups rollups,
+            ShardRouter router
+    ) {
+        this.props = props;
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.rollups = rollups;
+        this.router = router;
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.outbox.rollup-interval-ms:1000}",
+            initialDelayString = "${ledger.outbox.rollup-interval-ms:1000}")
+    public void poll() {
+        if (props.enabled()) {
+            feed();
+        }
+    }
+
+    /**
+     * Adds events until every partition of every shard this instance could claim has none
+     * left to add.
+     *
+     * @return number of events added
+     */
+    public int feed() {
+
+        int total = 0;
+        boolean more = true;
+        while (more) {
+            more = false;
+            for (int shard = 0; shard < router.shardCount(); shard++) {
+                for (int partition : partitions()) {
+                    int added = feedPartition(shard, partition);
+                    total += added;
+                    more |= added == props.batchSize();
+                }
+            }
+        }
+        return total;
+    }
+
+    private int feedPartition(int shard, int partition) {
+
+        try {
+            return router.on(shard,
+                    () -> Objects.requireNonNull(transactionTemplate.execute(status -> addBatch(partition))));
+        } catch (RuntimeException ex) {
+            log.warn("Rolling up outbox partition {} of shard {} failed, will retry", partition, shard, ex);
+            return 0;
+        }
+    }
+
+    private int addBatch(int partition) {
+
+        var claimed = jdbc.queryForList(
+                "SELECT id FROM outbox_partitions WHERE id = ? FOR UPDATE SKIP LOCKED", Integer.class, partition);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+
+        var events = jdbc.query(
+                "SELECT * FROM outbox_events WHERE partition_id = ? AND rolled_up = FALSE ORDER BY id LIMIT ?",
+                OutboxRelay.EVENT, partition, props.batchSize());
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        rollups.apply(events);
+        jdbc.batchUpdate("UPDATE outbox_events SET rolled_up = TRUE WHERE id = ?",
+                events.stream().map(event -> new Object[]{event.id()}).toList());
+        return events.size();
+    }
+
+    private List<Integer> partitions() {
+
+        var ids = partitions;
+        if (ids == null) {
+            // the same migrations created the same partitions on every shard
+            ids = partitions = router.on(0,
+                    () -> jdbc.queryForList("SELECT id FROM outbox_partitions ORDER BY id", Integer.class));
+        }
+        return ids;
+    }
+}
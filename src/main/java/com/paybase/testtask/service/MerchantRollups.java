@@ -0,0 +1,257 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.MerchantCurrencySummary;
+import com.paybase.testtask.dto.MerchantDailyVolume;
+import com.paybase.testtask.dto.MerchantSummaryResponse;
+import com.paybase.testtask.dto.OutboxEvent;
+import com.paybase.testtask.dto.TransactionDetailsResponse;
+import com.paybase.testtask.exceptions.BadRequestException;
+import com.paybase.testtask.exceptions.NotFoundException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Per merchant and currency rollups: total balance, accounts, and legs credited and debited
+ * per UTC day and transaction type.
+ *
+ * <p>They are fed from the outbox by {@link MerchantRollupFeed} and {@link OutboxRelay},
+ * each in the transaction that marks or deletes the events it adds, so every leg is counted
+ * exactly once and a posting never touches a row shared by all of a merchant's accounts.
+ * The rollups therefore trail the ledger by at most the feed's interval, whether the relay
+ * runs or not, and only stop moving while the outbox is disabled. Opening an account adds
+ * its initial balance directly, since that is not a transaction.
+ *
+ * <p>Rows are written in key order, so batches from different partitions of the same
+ * merchant queue on its rows instead of deadlocking. A missing row is created empty in a
+ * transaction of its own, where losing the race to another writer is harmless, and then
+ * added to like any other: H2 and PostgreSQL share no upsert syntax.
+ */
+@Component
+public class MerchantRollups {
+
+    static final int MAX_DAYS = 31;
+
+    private static final String INSERT_BALANCE = """
+            INSERT INTO merchant_balances (merchant_id, currency, balance, accounts, transactions, updated_at)
+            VALUES (?, ?, 0, 0, 0, ?)""";
+
+    private static final String ADD_BALANCE = """
+            UPDATE merchant_balances
+            SET balance = balance + ?, accounts = accounts + ?, transactions = transactions + ?, updated_at = ?
+            WHERE merchant_id = ? AND currency = ?""";
+
+    private static final String INSERT_VOLUME = """
+            INSERT INTO merchant_daily_volumes (merchant_id, currency, volume_date, type, credits, credit_volume, debits, debit_volume)
+            VALUES (?, ?, ?, ?, 0, 0, 0, 0)""";
+
+    private static final String ADD_VOLUME = """
+            UPDATE merchant_daily_volumes
+            SET credits = credits + ?, credit_volume = credit_volume + ?, debits = debits + ?, debit_volume = debit_volume + ?
+            WHERE merchant_id = ? AND currency = ? AND volume_date = ? AND type = ?""";
+
+    private static final Comparator<Holder> HOLDER_ORDER =
+            Comparator.comparing(Holder::merchantId).thenComparing(Holder::currency);
+
+    private static final Comparator<DayKey> DAY_ORDER = Comparator.comparing(DayKey::holder, HOLDER_ORDER)
+            .thenComparing(DayKey::day)
+            .thenComparing(DayKey::type);
+
+    private record Holder(String merchantId, String currency) {
+    }
+
+    private record DayKey(Holder holder, LocalDate day, TransactionType type) {
+    }
+
+    private static final class Totals {
+        Money balance = Money.ZERO;
+        long transactions;
+    }
+
+    private static final class Volume {
+        long credits;
+        Money creditVolume = Money.ZERO;
+        long debits;
+        Money debitVolume = Money.ZERO;
+    }
+
+    private final JdbcTemplate jdbc;
+    private final JsonMapper jsonMapper;
+    private final TransactionTemplate rowCreation;
+
+    public MerchantRollups(JdbcTemplate jdbc, JsonMapper jsonMapper, PlatformTransactionManager transactionManager) {
+        this.jdbc = jdbc;
+        this.jsonMapper = jsonMapper;
+        this.rowCreation = new TransactionTemplate(transactionManager);
+        this.rowCreation.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Adds a new account and its initial balance, in the caller's transaction.
+     */
+    public void accountOpened(AccountEntity account) {
+
+        var now = Timestamp.from(Instant.now());
+        add(ADD_BALANCE, List.<Object[]>of(new Object[]{account.getBalance().toBigDecimal(), 1, 0, now,
+                        account.getMerchantId(), account.getCurrency()}),
+                INSERT_BALANCE, List.<Object[]>of(new Object[]{account.getMerchantId(), account.getCurrency(), now}));
+    }
+
+    /**
+     * Adds the legs of a batch of outbox events, in the caller's transaction. Each event is
+     * one account's side of a transaction.
+     */
+    void apply(List<OutboxEvent> events) {
+
+        if (events.isEmpty()) {
+            return;
+        }
+        var holders = holders(events);
+        Map<Holder, Totals> totals = new TreeMap<>(HOLDER_ORDER);
+        Map<DayKey, Volume> volumes = new TreeMap<>(DAY_ORDER);
+
+        for (var event : events) {
+            var holder = holders.get(event.accountId());
+            if (holder == null) {
+                continue;
+            }
+            var tx = jsonMapper.readValue(event.payload(), TransactionDetailsResponse.class);
+            var amount = Money.of(tx.amount());
+            var day = LocalDate.ofInstant(tx.createdAt(), ZoneOffset.UTC);
+
+            var total = totals.computeIfAbsent(holder, h -> new Totals());
+            var volume = volumes.computeIfAbsent(new DayKey(holder, day, tx.type()), k -> new Volume());
+            total.transactions++;
+            // a transfer to the same account is one event and both legs
+            if (event.accountId().equals(tx.toAccountId())) {
+                total.balance = total.balance.plus(amount);
+                volume.credits++;
+                volume.creditVolume = volume.creditVolume.plus(amount);
+            }
+            if (event.accountId().equals(tx.fromAccountId())) {
+                total.balance = total.balance.minus(amount);
+                volume.debits++;
+                volume.debitVolume = volume.debitVolume.plus(amount);
+            }
+        }
+        if (totals.isEmpty()) {
+            return;
+        }
+
+        var now = Timestamp.from(Instant.now());
+        add(ADD_BALANCE, totals.entrySet().stream()
+                        .map(e -> new Object[]{e.getValue().balance.toBigDecimal(), 0, e.getValue().transactions, now,
+                                e.getKey().merchantId(), e.getKey().currency()})
+                        .toList(),
+                INSERT_BALANCE, totals.keySet().stream()
+                        .map(h -> new Object[]{h.merchantId(), h.currency(), now})
+                        .toList());
+
+        add(ADD_VOLUME, volumes.entrySet().stream()
+                        .map(e -> {
+                            var k = e.getKey();
+                            var v = e.getValue();
+                            return new Object[]{v.credits, v.creditVolume.toBigDecimal(), v.debits, v.debitVolume.toBigDecimal(),
+                                    k.holder().merchantId(), k.holder().currency(), Date.valueOf(k.day()), k.type().name()};
+                        })
+                        .toList(),
+                INSERT_VOLUME, volumes.keySet().stream()
+                        .map(k -> new Object[]{k.holder().merchantId(), k.holder().currency(), Date.valueOf(k.day()), k.type().name()})
+                        .toList());
+    }
+
+    /**
+     * Runs {@code update} for every row; a row it matched none of is created from the
+     * {@code create} arguments at the same position, and updated again.
+     */
+    private void add(String update, List<Object[]> updates, String create, List<Object[]> creates) {
+
+        int[] counts = jdbc.batchUpdate(update, updates);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                var args = creates.get(i);
+                try {
+                    rowCreation.executeWithoutResult(status -> jdbc.update(create, args));
+                } catch (DuplicateKeyException ex) {
+                    // another writer created it first
+                }
+                jdbc.update(update, updates.get(i));
+            }
+        }
+    }
+
+    /**
+     * The merchant's rollups with its volumes for the last {@code days} UTC days, today
+     * included. Reads one row per currency plus at most one per currency, day and type.
+     */
+    public MerchantSummaryResponse summary(String merchantId, int days) {
+
+        if (days < 1 || days > MAX_DAYS) {
+            throw new BadRequestException("days must be between 1 and " + MAX_DAYS);
+        }
+
+        Map<String, MerchantCurrencySummary> currencies = new LinkedHashMap<>();
+        jdbc.query("SELECT * FROM merchant_balances WHERE merchant_id = ? ORDER BY currency",
+                (RowCallbackHandler) rs -> currencies.put(rs.getString("currency"), new MerchantCurrencySummary(
+                        rs.getString("currency"),
+                        rs.getBigDecimal("balance"),
+                        rs.getInt("accounts"),
+                        rs.getLong("transactions"),
+                        new ArrayList<>())),
+                merchantId);
+        if (currencies.isEmpty()) {
+            throw new NotFoundException();
+        }
+
+        var today = LocalDate.now(ZoneOffset.UTC);
+        jdbc.query("""
+                        SELECT * FROM merchant_daily_volumes
+                        WHERE merchant_id = ? AND volume_date BETWEEN ? AND ?
+                        ORDER BY currency, volume_date DESC, type""",
+                (RowCallbackHandler) rs -> currencies.get(rs.getString("currency")).days().add(new MerchantDailyVolume(
+                        rs.getDate("volume_date").toLocalDate(),
+                        TransactionType.valueOf(rs.getString("type")),
+                        rs.getLong("credits"),
+                        rs.getBigDecimal("credit_volume"),
+                        rs.getLong("debits"),
+                        rs.getBigDecimal("debit_volume"))),
+                merchantId, Date.valueOf(today.minusDays(days - 1L)), Date.valueOf(today));
+
+        return new MerchantSummaryResponse(merchantId, List.copyOf(currencies.values()));
+    }
+
+    private Map<Long, Holder> holders(List<OutboxEvent> events) {
+
+        var ids = events.stream().map(OutboxEvent::accountId).distinct().toList();
+        var placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(", "));
+
+        Map<Long, Holder> holders = new HashMap<>();
+        jdbc.query("SELECT id, merchant_id, currency FROM accounts WHERE id IN (" + placeholders + ")",
+                (RowCallbackHandler) rs -> holders.put(rs.getLong("id"),
+                        new Holder(rs.getString("merchant_id"), rs.getString("currency"))),
+                ids.toArray());
+        return holders;
+    }
+}
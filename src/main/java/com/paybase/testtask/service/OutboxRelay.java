@@ -0,0 +1,179 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.OutboxProperties;
+import com.paybase.testtask.dto.OutboxEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Drains the outbox into the configured {@link OutboxSink}. Each partition is drained in
+ * its own transaction that first claims the partition row with {@code SKIP LOCKED}, so any
+ * number of instances can run the relay while every account is still published by one of
+ * them at a time, in id order ({@link OutboxSink} describes how that relates to commit
+ * order). Delivery is at least once: a batch is deleted only in the transaction that
+ * published it. The same transaction adds the events of the batch that
+ * {@link MerchantRollupFeed} has not to the merchant rollups, which therefore count every
+ * event exactly once.
+ *
+ * <p>Every shard has its own outbox, with the same partitions, and each is drained on its
+ * shard: an event and the account it belongs to live on the same shard.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    static final RowMapper<OutboxEvent> EVENT = (rs, row) -> new OutboxEvent(
+            rs.getLong("id"),
+            rs.getLong("account_id"),
+            rs.getLong("transaction_id"),
+            rs.getString("event_type"),
+            rs.getString("payload"),
+            rs.getTimestamp("created_at").toInstant()
+    );
+
+    private static final RowMapper<Row> ROW = (rs, row) -> new Row(EVENT.mapRow(rs, row), rs.getBoolean("rolled_up"));
+
+    private record Row(OutboxEvent event, boolean rolledUp) {
+    }
+
+    private final OutboxProperties props;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxSink sink;
+    private final MerchantRollups rollups;
+    private final ShardRouter router;
+
+    private final Timer lag;
+    private final DistributionSummary batchSize;
+    private final Counter failures;
+
+    private volatile List<Integer> partitions;
+
+    public OutboxRelay(
+            OutboxProperties props,
+            JdbcTemplate jdbc,
+            TransactionTemplate transactionTemplate,
+            OutboxSink sink,
+            MerchantRollups rollups,
+            ShardRouter router,
+            MeterRegistry registry
+    ) {
+        this.props = props;
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.sink = sink;
+        this.rollups = rollups;
+        this.router = router;
+        this.lag = Timer.builder("ledger.outbox.lag")
+                .description("Time from creation of a transaction to publication of its outbox event")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("ledger.outbox.batch.size")
+                .description("Events published per relay batch")
+                .register(registry);
+        this.failures = Counter.builder("ledger.outbox.publish.failures")
+                .description("Relay batches the sink rejected; they are retried on the next pass")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.outbox.poll-interval-ms:200}")
+    public void poll() {
+        if (props.enabled() && props.relayEnabled()) {
+            drain();
+        }
+    }
+
+    /**
+     * Publishes until every partition of every shard this instance could claim is empty.
+     *
+     * @return number of events published
+     */
+    public int drain() {
+
+        int total = 0;
+        boolean more = true;
+        while (more) {
+            more = false;
+            for (int shard = 0; shard < router.shardCount(); shard++) {
+                for (int partition : partitions()) {
+                    int published = drainPartition(shard, partition);
+                    total += published;
+                    more |= published == props.batchSize();
+                }
+            }
+        }
+        return total;
+    }
+
+    private int drainPartition(int shard, int partition) {
+
+        try {
+            return router.on(shard,
+                    () -> Objects.requireNonNull(transactionTemplate.execute(status -> publishBatch(partition))));
+        } catch (RuntimeException ex) {
+            failures.increment();
+            log.warn("Publishing outbox partition {} of shard {} failed, will retry", partition, shard, ex);
+            return 0;
+        }
+    }
+
+    private int publishBatch(int partition) {
+
+        var claimed = jdbc.queryForList(
+                "SELECT id FROM outbox_partitions WHERE id = ? FOR UPDATE SKIP LOCKED", Integer.class, partition);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+
+        var rows = jdbc.query(
+                "SELECT * FROM outbox_events WHERE partition_id = ? ORDER BY id LIMIT ?",
+                ROW, partition, props.batchSize());
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        var events = rows.stream().map(Row::event).toList();
+
+        try {
+            sink.publish(events);
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException("Outbox sink failed", ex);
+        }
+
+        rollups.apply(rows.stream().filter(row -> !row.rolledUp()).map(Row::event).toList());
+
+        // delete by id: rows with lower ids may still commit after the batch was read
+        jdbc.batchUpdate("DELETE FROM outbox_events WHERE id = ?",
+                events.stream().map(event -> new Object[]{event.id()}).toList());
+
+        var now = Instant.now();
+        events.forEach(event -> lag.record(Duration.between(event.createdAt(), now)));
+        batchSize.record(events.size());
+        return events.size();
+    }
+
+    private List<Integer> partitions() {
+
+        var ids = partitions;
+        if (ids == null) {
+            // the same migrations created the same partitions on every shard
+            ids = partitions = router.on(0,
+                    () -> jdbc.queryForList("SELECT id FROM outbox_partitions ORDER BY id", Integer.class));
+        }
+        return ids;
+    }
+}
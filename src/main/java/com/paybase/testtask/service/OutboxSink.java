@@ -0,0 +1,18 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.dto.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * Destination for outbox events. Events arrive in id order per account; a batch that
+ * throws is retried on the next relay pass, so sinks must tolerate redelivery.
+ *
+ * <p>Id order is commit order, except between the bucket-only postings of a bucketed
+ * account, see {@link OutboxWriter}. Those carry no balance figures; a consumer that needs
+ * them in a stable order sorts them by {@code createdAt} and {@code transactionId}.
+ */
+public interface OutboxSink {
+
+    void publish(List<OutboxEvent> events) throws Exception;
+}
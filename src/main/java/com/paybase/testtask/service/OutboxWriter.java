@@ -0,0 +1,105 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.OutboxProperties;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.TransactionDetailsResponse;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes outbox rows in the caller's database transaction, one per account a transaction
+ * touched. Rows are inserted right away rather than at flush, while the account rows are
+ * still locked, so ids increase in commit order for every account.
+ *
+ * <p>The exception is a bucketed account. A credit, or a debit covered by a single bucket,
+ * holds only that bucket, so two of them on different buckets may commit in the opposite
+ * order of their ids. Both record no balance figures, and in either order they leave the
+ * same balance. Anything that records figures holds the row and every bucket when it
+ * takes its id, so it is still ordered against every other event of the account.
+ */
+@Component
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxWriter {
+
+    static final String TRANSACTION_COMPLETED = "TransactionCompleted";
+
+    private static final String INSERT = """
+            INSERT INTO outbox_events (partition_id, account_id, transaction_id, event_type, payload, created_at)
+            VALUES (?, ?, ?, ?, ?, ?)""";
+
+    private final OutboxProperties props;
+    private final JdbcTemplate jdbc;
+    private final JsonMapper jsonMapper;
+
+    private volatile int partitions;
+
+    public OutboxWriter(OutboxProperties props, JdbcTemplate jdbc, JsonMapper jsonMapper) {
+        this.props = props;
+        this.jdbc = jdbc;
+        this.jsonMapper = jsonMapper;
+    }
+
+    public void append(TransactionEntity tx) {
+        appendAll(List.of(tx));
+    }
+
+    /**
+     * Event for one side of the transaction only: a cross-shard transfer is recorded on both
+     * shards, and each records the event of its own account.
+     */
+    public void append(TransactionEntity tx, Long accountId) {
+
+        if (!props.enabled()) {
+            return;
+        }
+        String payload = jsonMapper.writeValueAsString(TransactionDetailsResponse.from(tx));
+        jdbc.update(INSERT, row(accountId, tx, payload, Timestamp.from(tx.getCreatedAt())));
+    }
+
+    public void appendAll(Collection<TransactionEntity> transactions) {
+
+        if (!props.enabled() || transactions.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(transactions.size() * 2);
+        for (TransactionEntity tx : transactions) {
+            String payload = jsonMapper.writeValueAsString(TransactionDetailsResponse.from(tx));
+            var createdAt = Timestamp.from(tx.getCreatedAt());
+            if (tx.getFromAccountId() != null) {
+                rows.add(row(tx.getFromAccountId(), tx, payload, createdAt));
+            }
+            if (tx.getToAccountId() != null && !Objects.equals(tx.getToAccountId(), tx.getFromAccountId())) {
+                rows.add(row(tx.getToAccountId(), tx, payload, createdAt));
+            }
+        }
+        jdbc.batchUpdate(INSERT, rows);
+    }
+
+    private Object[] row(Long accountId, TransactionEntity tx, String payload, Timestamp createdAt) {
+        return new Object[]{partitionOf(accountId), accountId, tx.getId(), TRANSACTION_COMPLETED, payload, createdAt};
+    }
+
+    int partitionOf(Long accountId) {
+        return Math.floorMod(accountId.hashCode(), partitions());
+    }
+
+    private int partitions() {
+
+        int count = partitions;
+        if (count == 0) {
+            // seeded by the migration as 0..n-1
+            Integer rows = jdbc.queryForObject("SELECT count(*) FROM outbox_partitions", Integer.class);
+            count = partitions = Objects.requireNonNull(rows);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,137 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ReconciliationProperties;
+import com.paybase.testtask.dto.MismatchKind;
+import com.paybase.testtask.dto.ReconciliationMismatch;
+import com.paybase.testtask.dto.ReconciliationRun;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+/**
+ * SQL behind ledger reconciliation: the run and mismatch tables, and the streaming read of
+ * every transaction leg of an account range.
+ */
+@Component
+public class ReconciliationStore {
+
+    /**
+     * Each transaction once per account it moved, with that account's side of it: a debit
+     * has sign -1, a credit +1. Ordered the way the balances were chained.
+     */
+    private static final String LEGS = """
+            SELECT from_account_id AS account_id, id, created_at, amount, -1 AS sign,
+                   from_balance_before AS balance_before, from_balance_after AS balance_after
+            FROM transactions WHERE from_account_id BETWEEN ? AND ?
+            UNION ALL
+            SELECT to_account_id AS account_id, id, created_at, amount, 1 AS sign,
+                   to_balance_before AS balance_before, to_balance_after AS balance_after
+            FROM transactions WHERE to_account_id BETWEEN ? AND ?
+            ORDER BY account_id, created_at, id""";
+
+    private final JdbcTemplate jdbc;
+    private final JdbcTemplate streaming;
+
+    public ReconciliationStore(JdbcTemplate jdbc, ReconciliationProperties props) {
+        this.jdbc = jdbc;
+        this.streaming = new JdbcTemplate(Objects.requireNonNull(jdbc.getDataSource()));
+        this.streaming.setFetchSize(props.fetchSize());
+    }
+
+    /**
+     * Every account id in order, read as a stream into a primitive array.
+     */
+    long[] accountIds() {
+
+        var ids = LongStream.builder();
+        streaming.query("SELECT id FROM accounts ORDER BY id", (RowCallbackHandler) rs -> ids.add(rs.getLong("id")));
+        return ids.build().toArray();
+    }
+
+    /**
+     * Hands the legs of the account range to {@code handler} one row at a time. Within a
+     * transaction the driver fetches them in batches rather than all at once.
+     */
+    void streamLegs(long firstId, long lastId, RowCallbackHandler handler) {
+        streaming.query(LEGS, handler, firstId, lastId, firstId, lastId);
+    }
+
+    long start() {
+
+        var keys = new GeneratedKeyHolder();
+        jdbc.update(con -> {
+            var st = con.prepareStatement(
+                    "INSERT INTO reconciliation_runs (status, started_at) VALUES ('RUNNING', ?)", new String[]{"id"});
+            st.setTimestamp(1, Timestamp.from(Instant.now()));
+            return st;
+        }, keys);
+        return Objects.requireNonNull(keys.getKey()).longValue();
+    }
+
+    void progress(long runId, int accounts, long transactions, long mismatches) {
+        jdbc.update("""
+                        UPDATE reconciliation_runs
+                        SET accounts = accounts + ?, transactions = transactions + ?, mismatches = mismatches + ?
+                        WHERE id = ?""",
+                accounts, transactions, mismatches, runId);
+    }
+
+    void insert(long runId, List<ReconciliationMismatch> mismatches) {
+        jdbc.batchUpdate("""
+                        INSERT INTO reconciliation_mismatches (run_id, account_id, transaction_id, kind, expected, actual)
+                        VALUES (?, ?, ?, ?, ?, ?)""",
+                mismatches.stream().map(m -> new Object[]{
+                        runId, m.accountId(), m.transactionId(), m.kind().name(), m.expected(), m.actual()}).toList());
+    }
+
+    void finish(long runId, String status) {
+        jdbc.update("UPDATE reconciliation_runs SET status = ?, finished_at = ? WHERE id = ?",
+                status, Timestamp.from(Instant.now()), runId);
+    }
+
+    Optional<ReconciliationRun> run(long runId) {
+        return jdbc.query("SELECT * FROM reconciliation_runs WHERE id = ?", ReconciliationStore::run, runId)
+                .stream().findFirst();
+    }
+
+    Optional<ReconciliationRun> latest() {
+        return jdbc.query("SELECT * FROM reconciliation_runs ORDER BY id DESC LIMIT 1", ReconciliationStore::run)
+                .stream().findFirst();
+    }
+
+    List<ReconciliationMismatch> mismatches(long runId, int limit) {
+        return jdbc.query("""
+                        SELECT * FROM reconciliation_mismatches WHERE run_id = ?
+                        ORDER BY account_id, transaction_id NULLS LAST LIMIT ?""",
+                (rs, row) -> new ReconciliationMismatch(
+                        rs.getLong("account_id"),
+                        rs.getObject("transaction_id", Long.class),
+                        MismatchKind.valueOf(rs.getString("kind")),
+                        rs.getBigDecimal("expected"),
+                        rs.getBigDecimal("actual")),
+                runId, limit);
+    }
+
+    private static ReconciliationRun run(ResultSet rs, int row) throws SQLException {
+
+        var finished = rs.getTimestamp("finished_at");
+        return new ReconciliationRun(
+                rs.getLong("id"),
+                rs.getString("status"),
+                rs.getTimestamp("started_at").toInstant(),
+                finished != null ? finished.toInstant() : null,
+                rs.getLong("accounts"),
+                rs.getLong("transactions"),
+                rs.getLong("mismatches"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ShardContext;
+import com.paybase.testtask.config.ShardingProperties;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.NotFoundException;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The shard function. Every shard hands out account and transaction ids from its own range
+ * of 2^48 ids, so the owning shard is read straight off an id and an account never moves
+ * when shards are added. New accounts go to the shard their merchant hashes to, which keeps
+ * a merchant's accounts together.
+ *
+ * <p>Without sharding there is a single shard and routing does nothing.
+ */
+@Component
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardRouter {
+
+    static final int ID_BITS = 48;
+
+    private static final ShardContext.Scope UNROUTED = () -> { };
+
+    private final boolean enabled;
+    private final int shards;
+
+    public ShardRouter(ShardingProperties props) {
+        this.enabled = props.enabled();
+        this.shards = enabled ? props.databases().size() : 1;
+    }
+
+    public static int shardOf(long id) {
+        return (int) (id >>> ID_BITS);
+    }
+
+    /**
+     * First id of the shard's range.
+     */
+    public static long firstId(int shard) {
+        return (long) shard << ID_BITS;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public int shardCount() {
+        return shards;
+    }
+
+    public int shardOfMerchant(String merchantId) {
+        return Math.floorMod(Objects.hashCode(merchantId), shards);
+    }
+
+    /**
+     * Shard that keeps the record of which shard an idempotency key was used on.
+     */
+    public int shardOfKey(String idempotencyKey) {
+        return Math.floorMod(Objects.hashCode(idempotencyKey), shards);
+    }
+
+    /**
+     * Shard a request runs on: its debited account's, or its credited account's when nothing
+     * is debited. A cross-shard transfer is coordinated from the debited account's shard.
+     */
+    public int shardOf(TransactionRequest r) {
+        var accountId = r.fromAccountId() != null ? r.fromAccountId() : r.toAccountId();
+        return accountId != null ? shardOf(accountId) : 0;
+    }
+
+    public boolean isCrossShard(TransactionRequest r) {
+        return enabled
+                && r.fromAccountId() != null
+                && r.toAccountId() != null
+                && shardOf(r.fromAccountId()) != shardOf(r.toAccountId());
+    }
+
+    /**
+     * Routes the thread's database work to {@code shard} until the scope is closed. An id
+     * outside every shard's range cannot exist, so it is reported as not found.
+     */
+    public ShardContext.Scope enter(int shard) {
+
+        if (!enabled) {
+            return UNROUTED;
+        }
+        if (shard < 0 || shard >= shards) {
+            throw new NotFoundException();
+        }
+        return ShardContext.enter(shard);
+    }
+
+    public <T> T on(int shard, Supplier<T> work) {
+        try (var scope = enter(shard)) {
+            return work.get();
+        }
+    }
+
+    public void run(int shard, Runnable work) {
+        try (var scope = enter(shard)) {
+            work.run();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.SingleWriterProperties;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.TransactionRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Gives every account a single owner thread. Requests are hashed by account id onto a
+ * shard queue; the shard thread drains whatever is queued and hands it to
+ * {@link LedgerBatchWriter} as one database transaction, so a hot account takes its row
+ * lock once per batch instead of once per request. The shard thread also waits for the
+ * batch's journal entries, so the whole batch shares one journal flush.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "ledger.single-writer", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(SingleWriterProperties.class)
+public class SingleWriterLedger implements DisposableBean {
+
+    private final LedgerBatchWriter writer;
+    private final LedgerJournal journal;
+    private final int batchSize;
+    private final List<Shard> shards = new ArrayList<>();
+
+    public SingleWriterLedger(LedgerBatchWriter writer, LedgerJournal journal, SingleWriterProperties props) {
+        this.writer = writer;
+        this.journal = journal;
+        this.batchSize = props.batchSize();
+
+        for (int i = 0; i < props.shards(); i++) {
+            var shard = new Shard(new ArrayBlockingQueue<>(props.queueCapacity()));
+            var thread = new Thread(() -> run(shard), "ledger-writer-" + i);
+            thread.setDaemon(true);
+            shard.thread = thread;
+            shards.add(shard);
+            thread.start();
+        }
+    }
+
+    public TransactionEntity submit(TransactionRequest r) {
+
+        var command = new Command(r, new CompletableFuture<>());
+        try {
+            shardOf(owner(r)).queue.put(command);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing transaction", ex);
+        }
+
+        try {
+            return command.result.join().getOrThrow();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        shards.forEach(shard -> shard.thread.interrupt());
+    }
+
+    private static Long owner(TransactionRequest r) {
+        return r.fromAccountId() != null ? r.fromAccountId() : r.toAccountId();
+    }
+
+    private Shard shardOf(Long accountId) {
+        int hash = accountId == null ? 0 : Long.hashCode(accountId);
+        return shards.get(Math.floorMod(hash, shards.size()));
+    }
+
+    private void run(Shard shard) {
+
+        List<Command> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(shard.queue.take());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            shard.queue.drainTo(batch, batchSize - 1);
+            process(batch);
+            batch.clear();
+        }
+
+        // fail anything still queued so callers are not left waiting on shutdown
+        List<Command> rest = new ArrayList<>();
+        shard.queue.drainTo(rest);
+        rest.forEach(c -> c.result.completeExceptionally(new IllegalStateException("Ledger writer stopped")));
+    }
+
+    private void process(List<Command> batch) {
+
+        List<LedgerOutcome> outcomes;
+        try {
+            outcomes = writer.apply(batch.stream().map(Command::request).toList());
+        } catch (RuntimeException ex) {
+            // one bad request must not fail its neighbours: replay them one transaction each
+            log.warn("Batch of {} failed, retrying individually", batch.size(), ex);
+            batch.forEach(this::processSingle);
+            journal.awaitPending();
+            return;
+        }
+        journal.awaitPending();
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(outcomes.get(i));
+        }
+    }
+
+    private void processSingle(Command command) {
+        try {
+            command.result.complete(writer.apply(List.of(command.request())).get(0));
+        } catch (RuntimeException ex) {
+            command.result.completeExceptionally(ex);
+        }
+    }
+
+    private record Command(TransactionRequest request, CompletableFuture<LedgerOutcome> result) {
+    }
+
+    private static final class Shard {
+        private final BlockingQueue<Command> queue;
+        private Thread thread;
+
+        private Shard(BlockingQueue<Command> queue) {
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.StatementFormat;
+import com.paybase.testtask.dto.TransactionDetailsResponse;
+import com.paybase.testtask.exceptions.NotFoundException;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Streams an account's full history to an output stream. Debits and credits are read as
+ * two ordered database cursors and merged on the fly; each row is detached from the
+ * persistence context once written, so heap use does not depend on the history length.
+ */
+@Slf4j
+@Service
+@Transactional(readOnly = true)
+public class StatementExportService {
+
+    private static final String CSV_HEADER = "transactionId,idempotencyKey,type,fromAccountId,toAccountId,"
+            + "amount,currency,status,fromBalanceBefore,fromBalanceAfter,toBalanceBefore,toBalanceAfter,"
+            + "reference,createdAt\n";
+
+    private static final Comparator<TransactionEntity> ORDER = Comparator
+            .comparing(TransactionEntity::getCreatedAt)
+            .thenComparing(TransactionEntity::getId);
+
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final EntityManager entityManager;
+    private final JsonMapper jsonMapper;
+    private final DistributionSummary throughput;
+
+    public StatementExportService(
+            AccountRepository accountRepository,
+            TransactionRepository transactionRepository,
+            EntityManager entityManager,
+            JsonMapper jsonMapper,
+            MeterRegistry registry
+    ) {
+        this.accountRepository = accountRepository;
+        this.transactionRepository = transactionRepository;
+        this.entityManager = entityManager;
+        this.jsonMapper = jsonMapper;
+        this.throughput = DistributionSummary.builder("ledger.statement.export.throughput")
+                .description("Rows per second written by statement exports")
+                .baseUnit("rows/s")
+                .register(registry);
+    }
+
+    public void checkExists(Long accountId) {
+        if (!accountRepository.existsById(accountId)) {
+            throw new NotFoundException();
+        }
+    }
+
+    /**
+     * @return number of rows written
+     */
+    public long export(Long accountId, StatementFormat format, OutputStream target) throws IOException {
+
+        long started = System.nanoTime();
+        long rows = 0;
+
+        var out = new BufferedOutputStream(target, 64 * 1024);
+        if (format == StatementFormat.CSV) {
+            out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (var debits = transactionRepository.streamDebits(accountId);
+             var credits = transactionRepository.streamCredits(accountId)) {
+
+            var merged = new MergingIterator(debits.iterator(), credits.iterator());
+            while (merged.hasNext()) {
+                var tx = merged.next();
+                write(format, TransactionDetailsResponse.from(tx), out);
+                entityManager.detach(tx);
+                rows++;
+            }
+        }
+        out.flush();
+
+        double seconds = Math.max(System.nanoTime() - started, 1) / 1e9;
+        throughput.record(rows / seconds);
+        log.info("Exported {} rows for account {} as {} in {} ms ({} rows/s)",
+                rows, accountId, format, Math.round(seconds * 1000), Math.round(rows / seconds));
+        return rows;
+    }
+
+    private void write(StatementFormat format, TransactionDetailsResponse row, OutputStream out) throws IOException {
+
+        if (format == StatementFormat.NDJSON) {
+            out.write(jsonMapper.writeValueAsBytes(row));
+            out.write('\n');
+            return;
+        }
+
+        var line = new StringBuilder(256);
+        appendCsv(line, row.transactionId()).append(',');
+        appendCsv(line, row.idempotencyKey()).append(',');
+        appendCsv(line, row.type()).append(',');
+        appendCsv(line, row.fromAccountId()).append(',');
+        appendCsv(line, row.toAccountId()).append(',');
+        appendCsv(line, row.amount() != null ? row.amount().toPlainString() : null).append(',');
+        appendCsv(line, row.currency()).append(',');
+        appendCsv(line, row.status()).append(',');
+        appendCsv(line, row.fromBalanceBefore() != null ? row.fromBalanceBefore().toPlainString() : null).append(',');
+        appendCsv(line, row.fromBalanceAfter() != null ? row.fromBalanceAfter().toPlainString() : null).append(',');
+        appendCsv(line, row.toBalanceBefore() != null ? row.toBalanceBefore().toPlainString() : null).append(',');
+        appendCsv(line, row.toBalanceAfter() != null ? row.toBalanceAfter().toPlainString() : null).append(',');
+        appendCsv(line, row.reference()).append(',');
+        appendCsv(line, row.createdAt()).append('\n');
+        out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static StringBuilder appendCsv(StringBuilder line, Object value) {
+
+        if (value == null) {
+            return line;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0
+                && text.indexOf('\r') < 0) {
+            return line.append(text);
+        }
+        return line.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Merges two iterators already sorted by {@code (createdAt, id)}. A transfer from an
+     * account to itself appears in both and is emitted once.
+     */
+    private static final class MergingIterator implements Iterator<TransactionEntity> {
+
+        private final Iterator<TransactionEntity> left;
+        private final Iterator<TransactionEntity> right;
+        private TransactionEntity leftHead;
+        private TransactionEntity rightHead;
+
+        private MergingIterator(Iterator<TransactionEntity> left, Iterator<TransactionEntity> right) {
+            this.left = left;
+            this.right = right;
+            this.leftHead = left.hasNext() ? left.next() : null;
+            this.rightHead = right.hasNext() ? right.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return leftHead != null || rightHead != null;
+        }
+
+        @Override
+        public TransactionEntity next() {
+
+            TransactionEntity result;
+            if (rightHead == null || (leftHead != null && ORDER.compare(leftHead, rightHead) <= 0)) {
+                result = leftHead;
+                leftHead = left.hasNext() ? left.next() : null;
+            } else {
+                result = rightHead;
+                rightHead = right.hasNext() ? right.next() : null;
+            }
+
+            if (rightHead != null && Objects.equals(rightHead.getId(), result.getId())) {
+                rightHead = right.hasNext() ? right.next() : null;
+            }
+            if (leftHead != null && Objects.equals(leftHead.getId(), result.getId())) {
+                leftHead = left.hasNext() ? left.next() : null;
+            }
+            return Objects.requireNonNull(result);
+        }
+    }
+}
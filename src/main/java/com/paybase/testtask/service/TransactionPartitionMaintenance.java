@@ -0,0 +1,145 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.TransactionPartitionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the monthly partitions of {@code transactions} in shape: the current month and the
+ * next {@code monthsAhead} always have a partition before the first insert needs one, and
+ * months older than the retention are detached and moved to the archive schema, where they
+ * can be dumped and dropped without touching the live table.
+ *
+ * <p>Does nothing unless {@code transactions} is a partitioned PostgreSQL table, which only
+ * the {@code V10} migration makes it. Every shard's table is maintained in turn.
+ */
+@Slf4j
+@Component
+@EnableConfigurationProperties(TransactionPartitionProperties.class)
+public class TransactionPartitionMaintenance {
+
+    private static final Pattern PARTITION = Pattern.compile("transactions_p(\\d{4})_(\\d{2})");
+
+    private static final String ATTACHED = """
+            SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'transactions'::regclass""";
+
+    private final TransactionPartitionProperties props;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter router;
+    private final Counter archived;
+
+    private volatile Boolean partitioned;
+
+    public TransactionPartitionMaintenance(
+            TransactionPartitionProperties props,
+            JdbcTemplate jdbc,
+            TransactionTemplate transactionTemplate,
+            ShardRouter router,
+            MeterRegistry registry
+    ) {
+        this.props = props;
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.router = router;
+        this.archived = Counter.builder("ledger.partitions.archived")
+                .description("Transaction partitions detached into the archive schema")
+                .register(registry);
+    }
+
+    static String partitionName(YearMonth month) {
+        return "transactions_p%d_%02d".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    @Scheduled(fixedDelayString = "${ledger.partitions.interval-ms:3600000}")
+    public void run() {
+        if (!props.enabled()) {
+            return;
+        }
+        var current = YearMonth.now(ZoneOffset.UTC);
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            try {
+                // the same migrations ran on every shard, so the first one answers for all
+                router.run(shard, () -> {
+                    if (isPartitioned()) {
+                        maintain(current);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                log.warn("Maintaining transaction partitions of shard {} failed", shard, ex);
+            }
+        }
+    }
+
+    void maintain(YearMonth current) {
+
+        var attached = attached();
+
+        for (int i = 0; i <= props.monthsAhead(); i++) {
+            var month = current.plusMonths(i);
+            if (!attached.contains(month)) {
+                jdbc.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF transactions FOR VALUES FROM ('%s') TO ('%s')"
+                        .formatted(partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1)));
+                log.info("Created transaction partition {}", partitionName(month));
+            }
+        }
+
+        if (props.retainMonths() <= 0) {
+            return;
+        }
+        var oldestKept = current.minusMonths(props.retainMonths());
+        var expired = attached.headSet(oldestKept);
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        jdbc.execute("CREATE SCHEMA IF NOT EXISTS " + props.archiveSchema());
+        for (var month : expired) {
+            var name = partitionName(month);
+            // detach and move together, so an interrupted run never leaves a detached month behind
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbc.execute("ALTER TABLE transactions DETACH PARTITION " + name);
+                jdbc.execute("ALTER TABLE " + name + " SET SCHEMA " + props.archiveSchema());
+            });
+            archived.increment();
+            log.info("Archived transaction partition {} to schema {}", name, props.archiveSchema());
+        }
+    }
+
+    private TreeSet<YearMonth> attached() {
+
+        var months = new TreeSet<YearMonth>();
+        for (String name : jdbc.queryForList(ATTACHED, String.class)) {
+            var matcher = PARTITION.matcher(name);
+            if (matcher.matches()) {
+                months.add(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+            }
+        }
+        return months;
+    }
+
+    private boolean isPartitioned() {
+
+        if (partitioned == null) {
+            partitioned = Boolean.TRUE.equals(jdbc.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())))
+                    && Boolean.TRUE.equals(jdbc.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'transactions'::regclass)",
+                    Boolean.class));
+        }
+        return partitioned;
+    }
+}
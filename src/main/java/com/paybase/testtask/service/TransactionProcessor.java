@@ -0,0 +1,189 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ConcurrencyProperties;
+import com.paybase.testtask.config.ReadConsistency;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.IdempotencyKeyInUseException;
+import com.paybase.testtask.exceptions.InsufficientFundsException;
+import com.paybase.testtask.exceptions.NotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.retry.RetryException;
+import org.springframework.core.retry.RetryListener;
+import org.springframework.core.retry.RetryPolicy;
+import org.springframework.core.retry.RetryTemplate;
+import org.springframework.core.retry.Retryable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Entry point for posting transactions. Chooses the execution path and runs it outside of
+ * any surrounding database transaction, so paths that hand work to other threads or retry
+ * do not hold a pooled connection while they wait.
+ */
+@Service
+public class TransactionProcessor {
+
+    private final TransactionService transactionService;
+    private final ShardRouter router;
+    private final Optional<CrossShardTransfers> crossShard;
+    private final Optional<IdempotencyKeyOwners> keyOwners;
+    private final Optional<SingleWriterLedger> singleWriter;
+    private final Optional<DepositCoalescer> depositCoalescer;
+    private final ContentionTracker contention;
+    private final LedgerMetrics metrics;
+    private final LedgerJournal journal;
+    private final RetryTemplate optimisticRetry;
+
+    public TransactionProcessor(
+            TransactionService transactionService,
+            ShardRouter router,
+            Optional<CrossShardTransfers> crossShard,
+            Optional<IdempotencyKeyOwners> keyOwners,
+            Optional<SingleWriterLedger> singleWriter,
+            Optional<DepositCoalescer> depositCoalescer,
+            ContentionTracker contention,
+            LedgerMetrics metrics,
+            LedgerJournal journal,
+            ConcurrencyProperties props,
+            MeterRegistry registry
+    ) {
+        this.transactionService = transactionService;
+        this.router = router;
+        this.crossShard = crossShard;
+        this.keyOwners = keyOwners;
+        this.singleWriter = singleWriter;
+        this.depositCoalescer = depositCoalescer;
+        this.contention = contention;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.optimisticRetry = optimisticRetry(props, registry);
+    }
+
+    public TransactionEntity create(TransactionRequest r) {
+
+        var sample = metrics.startTransaction();
+        String outcome = "error";
+        try (var ignored = metrics.inFlight(r.fromAccountId() != null ? r.fromAccountId() : r.toAccountId())) {
+            // with sharding, a key already used on another shard is answered from there
+            var used = keyOwners.flatMap(owners -> owners.claim(r));
+            var tx = used.isPresent() ? used.get() : router.on(router.shardOf(r), () -> route(r));
+            // the single writer already waited on its shard thread; nothing is pending here then
+            journal.awaitPending();
+            outcome = "completed";
+            return tx;
+        } catch (InsufficientFundsException ex) {
+            outcome = "insufficient_funds";
+            throw ex;
+        } catch (NoSuchElementException | NotFoundException ex) {
+            outcome = "not_found";
+            throw ex;
+        } catch (OptimisticLockingFailureException | IdempotencyKeyInUseException ex) {
+            outcome = "conflict";
+            throw ex;
+        } finally {
+            metrics.transactionFinished(sample, r.type(), outcome);
+        }
+    }
+
+    private TransactionEntity route(TransactionRequest r) {
+
+        try {
+            if (crossShard.isPresent() && router.isCrossShard(r)) {
+                return crossShard.get().transfer(r);
+            }
+            if (singleWriter.isPresent()) {
+                return singleWriter.get().submit(r);
+            }
+            // a window holds credits to one account, applied on its leader's thread, so it never
+            // leaves the shard this request was routed to
+            if (depositCoalescer.isPresent() && DepositCoalescer.accepts(r)) {
+                return depositCoalescer.get().submit(r);
+            }
+            return contention.optimistic() ? createOptimistically(r) : transactionService.create(r);
+        } catch (DataIntegrityViolationException ex) {
+            // the idempotency_keys primary key is the final guard: a concurrent request, or a key
+            // the filter has not seen, ends up here and gets the stored transaction. It was only
+            // just committed on the primary, which a lagging replica may not have replayed yet
+            try (var primary = ReadConsistency.readYourWrites()) {
+                return transactionService.findByIdempotencyKey(r.idempotencyKey()).orElseThrow(() -> ex);
+            }
+        }
+    }
+
+    /**
+     * Runs the request without row locks and retries it, each time in a fresh transaction,
+     * when another writer changed one of its accounts first.
+     */
+    private TransactionEntity createOptimistically(TransactionRequest r) {
+
+        var accountIds = Stream.of(r.fromAccountId(), r.toAccountId())
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+
+        try {
+            return optimisticRetry.execute(() -> attempt(r, accountIds));
+        } catch (RetryException ex) {
+            if (ex.getLastException() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getLastException());
+        }
+    }
+
+    private TransactionEntity attempt(TransactionRequest r, List<Long> accountIds) {
+
+        try {
+            var tx = transactionService.create(r);
+            contention.recordSuccess(accountIds);
+            return tx;
+        } catch (OptimisticLockingFailureException ex) {
+            contention.recordConflict(accountIds);
+            throw ex;
+        }
+    }
+
+    private static RetryTemplate optimisticRetry(ConcurrencyProperties props, MeterRegistry registry) {
+
+        var policy = RetryPolicy.builder()
+                .includes(OptimisticLockingFailureException.class)
+                .maxRetries(Math.max(props.maxAttempts() - 1, 0))
+                .delay(props.backoffDelay())
+                .jitter(props.backoffJitter())
+                .multiplier(2)
+                .maxDelay(props.backoffMaxDelay())
+                .build();
+
+        var retries = Counter.builder("ledger.optimistic.retries")
+                .description("Optimistic attempts repeated after a version conflict")
+                .register(registry);
+        var exhausted = Counter.builder("ledger.optimistic.exhausted")
+                .description("Requests rejected after using up all optimistic attempts")
+                .register(registry);
+
+        var template = new RetryTemplate(policy);
+        template.setRetryListener(new RetryListener() {
+            @Override
+            public void beforeRetry(RetryPolicy retryPolicy, Retryable<?> retryable) {
+                retries.increment();
+            }
+
+            @Override
+            public void onRetryPolicyExhaustion(RetryPolicy retryPolicy, Retryable<?> retryable, RetryException ex) {
+                if (ex.getLastException() instanceof OptimisticLockingFailureException) {
+                    exhausted.increment();
+                }
+            }
+        });
+        return template;
+    }
+}
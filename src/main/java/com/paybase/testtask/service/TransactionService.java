@@ -1,8 +1,10 @@
 package com.paybase.testtask.service;
 
 import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.dto.TransactionRequest;
 import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.exceptions.InsufficientFundsException;
 import com.paybase.testtask.exceptions.NotFoundException;
 import com.paybase.testtask.repository.AccountRepository;
 import com.paybase.testtask.repository.TransactionRepository;
@@ -10,91 +12,308 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class TransactionService {
 
+    static final String CREDIT_LEG = ":credit";
+
     private final AccountRepository accountRepo;
     private final TransactionRepository txRepo;
+    private final IdempotencyKeyFilter keyFilter;
+    private final IdempotencyStore keys;
+    private final BalanceCache balanceCache;
+    private final ContentionTracker contention;
+    private final LedgerMetrics metrics;
+    private final OutboxWriter outbox;
+    private final LedgerJournal journal;
+    private final AccountBuckets buckets;
 
     @Transactional
     public TransactionEntity create(TransactionRequest r) {
 
-        return txRepo.findByIdempotencyKey(r.idempotencyKey())
+        return findExisting(r.idempotencyKey())
                 .orElseGet(() -> execute(r));
     }
 
+    /**
+     * Debit side of a transfer whose credited account lives on another shard. Stored under
+     * the transfer's own idempotency key with both account ids, but only this side's balances.
+     */
+    @Transactional
+    public TransactionEntity debitLeg(TransactionRequest r) {
+
+        return findExisting(r.idempotencyKey()).orElseGet(() -> {
+            var amount = Money.of(r.amount());
+            var from = load(r.fromAccountId()).orElseThrow();
+
+            Money before;
+            if (buckets.isBucketed(from.getId())) {
+                before = buckets.drain(from, amount);
+            } else {
+                before = from.getBalance();
+                from.debit(amount);
+                balanceCache.publish(from);
+            }
+
+            var tx = newTransaction(r, amount, from, null, before, before.minus(amount), null, null);
+            tx.setToAccountId(r.toAccountId());
+            return saveLeg(tx, from.getId());
+        });
+    }
+
+    /**
+     * Credit side of a transfer whose debited account lives on another shard, stored under
+     * {@code <key>:credit} so it is applied at most once however often it is retried.
+     */
+    @Transactional
+    public TransactionEntity creditLeg(TransactionRequest r) {
+
+        var leg = new TransactionRequest(r.idempotencyKey() + CREDIT_LEG, r.type(), r.fromAccountId(),
+                r.toAccountId(), r.amount(), r.currency(), r.reference());
+
+        return findExisting(leg.idempotencyKey()).orElseGet(() -> {
+            var amount = Money.of(leg.amount());
+            var to = load(leg.toAccountId()).orElseThrow();
+
+            boolean bucketed = buckets.isBucketed(to.getId());
+            var before = bucketed ? null : to.getBalance();
+            to.credit(amount);
+            balanceCache.publish(to);
+
+            var tx = newTransaction(leg, amount, null, to, null, null, before, bucketed ? null : to.getBalance());
+            tx.setFromAccountId(leg.fromAccountId());
+            return saveLeg(tx, to.getId());
+        });
+    }
+
+    /**
+     * Reads the transaction from its month's partition while its idempotency key is still
+     * stored, and from all of them after the key was purged.
+     */
     @Transactional(readOnly = true)
     public TransactionEntity get(Long id) {
-        return txRepo.findById(id).orElseThrow(NotFoundException::new);
+        return keys.createdAt(id)
+                .map(createdAt -> txRepo.findByIdAndCreatedAt(id, createdAt))
+                .orElseGet(() -> txRepo.findById(id))
+                .orElseThrow(NotFoundException::new);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<TransactionEntity> findByIdempotencyKey(String key) {
+        return keys.find(key).flatMap(this::find);
+    }
+
+    private Optional<TransactionEntity> find(IdempotencyStore.Claim claim) {
+        return txRepo.findByIdAndCreatedAt(claim.transactionId(), claim.createdAt());
+    }
+
+    private Optional<TransactionEntity> findExisting(String key) {
+
+        if (!keyFilter.mightContain(key)) {
+            metrics.idempotencyMiss();
+            return Optional.empty();
+        }
+
+        var claim = keys.find(key);
+        var existing = claim.flatMap(this::find);
+        if (claim.isPresent() && existing.isEmpty()) {
+            keys.release(key, claim.get().transactionId());
+        }
+        if (existing.isEmpty()) {
+            keyFilter.recordFalsePositive();
+            metrics.idempotencyMiss();
+        } else {
+            metrics.idempotencyHit();
+        }
+        return existing;
     }
 
     private TransactionEntity execute(TransactionRequest r) {
 
-        return switch (r.type()) {
-            case DEPOSIT, REFUND -> deposit(r);
-            case WITHDRAWAL, FEE -> withdraw(r);
-            case TRANSFER -> transfer(r);
-        };
+        try {
+            return switch (r.type()) {
+                case DEPOSIT, REFUND -> deposit(r);
+                case WITHDRAWAL, FEE -> withdraw(r);
+                case TRANSFER -> transfer(r);
+            };
+        } catch (InsufficientFundsException ex) {
+            metrics.insufficientFunds(r.type());
+            throw ex;
+        }
     }
 
     private TransactionEntity deposit(TransactionRequest r) {
 
-        var acc = accountRepo.lockById(r.toAccountId()).orElseThrow();
+        var amount = Money.of(r.amount());
+        if (buckets.isBucketed(r.toAccountId()) && buckets.credit(r.toAccountId(), amount)) {
+            // the account row is neither read nor locked, so there is no running balance to record
+            return saveTx(r, amount, null, accountRepo.getReferenceById(r.toAccountId()), null, null, null, null);
+        }
+
+        var acc = load(r.toAccountId()).orElseThrow();
 
         var before = acc.getBalance();
-        acc.credit(r.amount());
+        acc.credit(amount);
+        balanceCache.publish(acc);
 
-        return saveTx(r, null, acc, null, null, before, acc.getBalance());
+        return saveTx(r, amount, null, acc, null, null, before, acc.getBalance());
     }
 
     private TransactionEntity withdraw(TransactionRequest r) {
 
-        var acc = accountRepo.lockById(r.fromAccountId()).orElseThrow();
+        var amount = Money.of(r.amount());
+        if (buckets.isBucketed(r.fromAccountId())) {
+            return withdrawFromBuckets(r, amount);
+        }
+
+        var acc = load(r.fromAccountId()).orElseThrow();
 
         var before = acc.getBalance();
-        acc.debit(r.amount());
+        acc.debit(amount);
+        balanceCache.publish(acc);
 
-        return saveTx(r, acc, null, before, acc.getBalance());
+        return saveTx(r, amount, acc, null, before, acc.getBalance());
+    }
+
+    private TransactionEntity withdrawFromBuckets(TransactionRequest r, Money amount) {
+
+        if (buckets.tryDebit(r.fromAccountId(), amount)) {
+            return saveTx(r, amount, accountRepo.getReferenceById(r.fromAccountId()), null, null, null);
+        }
+
+        // no single bucket covers it: lock the row, then every bucket, and drain them
+        long started = System.nanoTime();
+        var acc = accountRepo.lockById(r.fromAccountId()).orElseThrow();
+        metrics.lockAcquired(started, List.of(acc));
+
+        var before = buckets.drain(acc, amount);
+        return saveTx(r, amount, acc, null, before, before.minus(amount));
     }
 
     private TransactionEntity transfer(TransactionRequest r) {
 
-        var from = accountRepo.lockById(r.fromAccountId()).orElseThrow();
-        var to = accountRepo.lockById(r.toAccountId()).orElseThrow();
+        var loaded = loadAll(r.fromAccountId(), r.toAccountId());
+
+        var from = Optional.ofNullable(loaded.get(r.fromAccountId())).orElseThrow();
+        var to = Optional.ofNullable(loaded.get(r.toAccountId())).orElseThrow();
+
+        var amount = Money.of(r.amount());
+
+        Money fromBefore;
+        Money fromAfter;
+        if (buckets.isBucketed(from.getId())) {
+            fromBefore = buckets.drain(from, amount);
+            fromAfter = fromBefore.minus(amount);
+        } else {
+            fromBefore = from.getBalance();
+            from.debit(amount);
+            fromAfter = from.getBalance();
+        }
+
+        // a bucketed account's row is only one slot of its balance, so its figures are not recorded
+        boolean toBucketed = buckets.isBucketed(to.getId());
+        var toBefore = toBucketed ? null : to.getBalance();
+        to.credit(amount);
+        balanceCache.publish(from);
+        balanceCache.publish(to);
+
+        return saveTx(r, amount, from, to,
+                fromBefore, fromAfter,
+                toBefore, toBucketed ? null : to.getBalance());
+    }
+
+    /**
+     * Row-locks the account unless it is running optimistically, in which case the
+     * {@code version} check at flush detects concurrent writers instead.
+     */
+    private Optional<AccountEntity> load(Long id) {
 
-        var fromBefore = from.getBalance();
-        var toBefore = to.getBalance();
+        if (!contention.shouldLock(id)) {
+            return accountRepo.findById(id);
+        }
 
-        from.debit(r.amount());
-        to.credit(r.amount());
+        long started = System.nanoTime();
+        var account = accountRepo.lockById(id);
+        account.ifPresent(acc -> metrics.lockAcquired(started, List.of(acc)));
+        return account;
+    }
+
+    private Map<Long, AccountEntity> loadAll(Long... ids) {
+
+        var distinct = Stream.of(ids).filter(Objects::nonNull).distinct().toList();
+
+        List<AccountEntity> accounts;
+        if (distinct.stream().anyMatch(contention::shouldLock)) {
+            long started = System.nanoTime();
+            accounts = accountRepo.lockAllById(distinct);
+            metrics.lockAcquired(started, accounts);
+        } else {
+            accounts = accountRepo.findAllById(distinct);
+        }
 
-        return saveTx(r, from, to,
-                fromBefore, from.getBalance(),
-                toBefore, to.getBalance());
+        return accounts.stream()
+                .collect(Collectors.toMap(AccountEntity::getId, Function.identity()));
     }
 
     private TransactionEntity saveTx(
             TransactionRequest r,
+            Money amount,
             AccountEntity from,
             AccountEntity to,
-            BigDecimal fromBefore,
-            BigDecimal fromAfter
+            Money fromBefore,
+            Money fromAfter
     ) {
-        return saveTx(r, from, to, fromBefore, fromAfter, null, null);
+        return saveTx(r, amount, from, to, fromBefore, fromAfter, null, null);
     }
 
     private TransactionEntity saveTx(
             TransactionRequest r,
+            Money amount,
+            AccountEntity from,
+            AccountEntity to,
+            Money fromBefore,
+            Money fromAfter,
+            Money toBefore,
+            Money toAfter
+    ) {
+        var tx = txRepo.save(newTransaction(r, amount, from, to, fromBefore, fromAfter, toBefore, toAfter));
+        keys.claim(tx);
+        keyFilter.put(tx.getIdempotencyKey());
+        outbox.append(tx);
+        journal.appendAfterCommit(tx);
+        return tx;
+    }
+
+    private TransactionEntity saveLeg(TransactionEntity leg, Long accountId) {
+
+        var tx = txRepo.save(leg);
+        keys.claim(tx);
+        keyFilter.put(tx.getIdempotencyKey());
+        outbox.append(tx, accountId);
+        journal.appendAfterCommit(tx);
+        return tx;
+    }
+
+    static TransactionEntity newTransaction(
+            TransactionRequest r,
+            Money amount,
             AccountEntity from,
             AccountEntity to,
-            BigDecimal fromBefore,
-            BigDecimal fromAfter,
-            BigDecimal toBefore,
-            BigDecimal toAfter
+            Money fromBefore,
+            Money fromAfter,
+            Money toBefore,
+            Money toAfter
     ) {
         TransactionEntity tx = new TransactionEntity();
 
@@ -102,7 +321,7 @@ public class TransactionService {
         tx.setType(r.type());
         tx.setFromAccountId(from != null ? from.getId() : null);
         tx.setToAccountId(to != null ? to.getId() : null);
-        tx.setAmount(r.amount());
+        tx.setAmount(amount);
         tx.setCurrency(r.currency());
         tx.setStatus("COMPLETED");
 
@@ -113,9 +332,10 @@ public class TransactionService {
         tx.setToBalanceAfter(toAfter);
 
         tx.setReference(r.reference());
-        tx.setCreatedAt(Instant.now());
+        // the column keeps microseconds; idempotency_keys must hold the exact same value
+        tx.setCreatedAt(Instant.now().truncatedTo(ChronoUnit.MICROS));
 
-        return txRepo.save(tx);
+        return tx;
     }
 
 }
@@ -0,0 +1,114 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+/**
+ * Turns {@code transactions} into a table range-partitioned by month on {@code created_at},
+ * so vacuum and index maintenance work on one month at a time and old months can be detached.
+ *
+ * <p>PostgreSQL only: on any other database (H2 in tests) the table stays as it is. Done in
+ * Java because the partitions to create depend on the data already in the table.
+ *
+ * <p>A unique index on a partitioned table must include the partition key, so idempotency
+ * keys move to {@code transaction_keys}, kept in step by triggers. A duplicate key still
+ * fails the insert with a unique violation. Partitions for upcoming months are created by
+ * {@code TransactionPartitionMaintenance}.
+ */
+public class V10__Partition_transactions extends BaseJavaMigration {
+
+    private static final int MONTHS_AHEAD = 3;
+
+    @Override
+    public void migrate(Context context) throws Exception {
+
+        var connection = context.getConnection();
+        if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+            return;
+        }
+
+        try (Statement st = connection.createStatement()) {
+
+            st.execute("ALTER TABLE transactions RENAME TO transactions_unpartitioned");
+            st.execute("""
+                    CREATE TABLE transactions (
+                        id BIGINT NOT NULL,
+                        idempotency_key VARCHAR(255) NOT NULL,
+                        type VARCHAR(20) NOT NULL,
+                        from_account_id BIGINT,
+                        to_account_id BIGINT,
+                        amount NUMERIC(19,4) NOT NULL,
+                        currency VARCHAR(3) NOT NULL,
+                        status VARCHAR(20) NOT NULL,
+                        from_balance_before NUMERIC(19,4),
+                        from_balance_after NUMERIC(19,4),
+                        to_balance_before NUMERIC(19,4),
+                        to_balance_after NUMERIC(19,4),
+                        reference VARCHAR(100),
+                        created_at TIMESTAMP NOT NULL,
+                        PRIMARY KEY (id, created_at)
+                    ) PARTITION BY RANGE (created_at)""");
+
+            var first = YearMonth.now(ZoneOffset.UTC);
+            try (ResultSet rs = st.executeQuery("SELECT MIN(created_at) FROM transactions_unpartitioned")) {
+                rs.next();
+                Timestamp oldest = rs.getTimestamp(1);
+                if (oldest != null) {
+                    var month = YearMonth.from(oldest.toInstant().atOffset(ZoneOffset.UTC));
+                    first = month.isBefore(first) ? month : first;
+                }
+            }
+            var last = YearMonth.now(ZoneOffset.UTC).plusMonths(MONTHS_AHEAD);
+            for (var month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+                st.execute("CREATE TABLE transactions_p%d_%02d PARTITION OF transactions FOR VALUES FROM ('%s') TO ('%s')"
+                        .formatted(month.getYear(), month.getMonthValue(), month.atDay(1), month.plusMonths(1).atDay(1)));
+            }
+
+            st.execute("INSERT INTO transactions SELECT * FROM transactions_unpartitioned");
+            st.execute("DROP TABLE transactions_unpartitioned");
+
+            // indexes are built after the copy; created on the parent, they cascade to every partition
+            st.execute("""
+                    CREATE INDEX idx_transactions_from_account_created
+                        ON transactions (from_account_id, created_at, id, from_balance_after, from_balance_before)""");
+            st.execute("""
+                    CREATE INDEX idx_transactions_to_account_created
+                        ON transactions (to_account_id, created_at, id, to_balance_after, to_balance_before)""");
+            st.execute("CREATE INDEX idx_transactions_idempotency_key ON transactions (idempotency_key)");
+
+            st.execute("""
+                    CREATE TABLE transaction_keys (
+                        idempotency_key VARCHAR(255) PRIMARY KEY,
+                        transaction_id BIGINT NOT NULL,
+                        created_at TIMESTAMP NOT NULL
+                    )""");
+            st.execute("INSERT INTO transaction_keys SELECT idempotency_key, id, created_at FROM transactions");
+
+            st.execute("""
+                    CREATE FUNCTION transactions_claim_key() RETURNS trigger LANGUAGE plpgsql AS $$
+                    BEGIN
+                        INSERT INTO transaction_keys (idempotency_key, transaction_id, created_at)
+                        VALUES (NEW.idempotency_key, NEW.id, NEW.created_at);
+                        RETURN NULL;
+                    END $$""");
+            st.execute("""
+                    CREATE FUNCTION transactions_release_key() RETURNS trigger LANGUAGE plpgsql AS $$
+                    BEGIN
+                        DELETE FROM transaction_keys WHERE idempotency_key = OLD.idempotency_key;
+                        RETURN NULL;
+                    END $$""");
+            st.execute("""
+                    CREATE TRIGGER transactions_claim_key AFTER INSERT ON transactions
+                        FOR EACH ROW EXECUTE FUNCTION transactions_claim_key()""");
+            st.execute("""
+                    CREATE TRIGGER transactions_release_key AFTER DELETE ON transactions
+                        FOR EACH ROW EXECUTE FUNCTION transactions_release_key()""");
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Moves idempotency keys out of {@code transactions} into {@code idempotency_keys}, keyed by
+ * the first 128 bits of the key's SHA-256 (see {@code IdempotencyStore}), and drops the
+ * unique index on {@code transactions.idempotency_key}; on a partitioned table that is
+ * {@code transaction_keys} and its triggers.
+ *
+ * <p>Done in Java because the hash is computed here while copying the existing keys, and
+ * because the unique constraint's name is generated on H2. The information schema is
+ * queried in upper case, which H2 needs and PostgreSQL folds.
+ */
+public class V14__Idempotency_keys extends BaseJavaMigration {
+
+    private static final int BATCH = 1000;
+
+    @Override
+    public void migrate(Context context) throws Exception {
+
+        var connection = context.getConnection();
+        boolean postgres = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+
+        try (Statement st = connection.createStatement()) {
+
+            st.execute("""
+                    CREATE TABLE idempotency_keys (
+                        key_hash %s PRIMARY KEY,
+                        idempotency_key VARCHAR(255) NOT NULL,
+                        transaction_id BIGINT NOT NULL,
+                        created_at TIMESTAMP NOT NULL
+                    )""".formatted(postgres ? "BYTEA" : "BINARY(16)"));
+
+            copyKeys(connection);
+            st.execute("CREATE INDEX idx_idempotency_keys_created ON idempotency_keys (created_at)");
+
+            if (partitioned(connection)) {
+                st.execute("DROP TRIGGER transactions_claim_key ON transactions");
+                st.execute("DROP TRIGGER transactions_release_key ON transactions");
+                st.execute("DROP FUNCTION transactions_claim_key()");
+                st.execute("DROP FUNCTION transactions_release_key()");
+                st.execute("DROP TABLE transaction_keys");
+                st.execute("DROP INDEX idx_transactions_idempotency_key");
+                return;
+            }
+            for (String constraint : uniqueConstraints(connection)) {
+                st.execute("ALTER TABLE transactions DROP CONSTRAINT \"" + constraint + "\"");
+            }
+        }
+    }
+
+    private static void copyKeys(Connection connection) throws Exception {
+
+        var sha256 = MessageDigest.getInstance("SHA-256");
+        try (Statement read = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO idempotency_keys (key_hash, idempotency_key, transaction_id, created_at) VALUES (?, ?, ?, ?)")) {
+
+            read.setFetchSize(BATCH);
+            try (ResultSet rs = read.executeQuery("SELECT idempotency_key, id, created_at FROM transactions")) {
+                int pending = 0;
+                while (rs.next()) {
+                    var key = rs.getString("idempotency_key");
+                    insert.setBytes(1, Arrays.copyOf(sha256.digest(key.getBytes(StandardCharsets.UTF_8)), 16));
+                    insert.setString(2, key);
+                    insert.setLong(3, rs.getLong("id"));
+                    insert.setTimestamp(4, rs.getTimestamp("created_at"));
+                    insert.addBatch();
+                    if (++pending == BATCH) {
+                        insert.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    insert.executeBatch();
+                }
+            }
+        }
+    }
+
+    private static boolean partitioned(Connection connection) throws Exception {
+
+        try (ResultSet rs = connection.getMetaData().getTables(null, null, "transaction_keys", null)) {
+            return rs.next();
+        }
+    }
+
+    private static List<String> uniqueConstraints(Connection connection) throws Exception {
+
+        List<String> names = new ArrayList<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("""
+                     SELECT TC.CONSTRAINT_NAME
+                     FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS TC
+                              JOIN INFORMATION_SCHEMA.CONSTRAINT_COLUMN_USAGE CU
+                                   ON CU.CONSTRAINT_SCHEMA = TC.CONSTRAINT_SCHEMA
+                                       AND CU.CONSTRAINT_NAME = TC.CONSTRAINT_NAME
+                     WHERE LOWER(TC.TABLE_NAME) = 'transactions'
+                       AND TC.TABLE_SCHEMA = CURRENT_SCHEMA
+                       AND TC.CONSTRAINT_TYPE = 'UNIQUE'
+                       AND LOWER(CU.COLUMN_NAME) = 'idempotency_key'""")) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,32 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.Statement;
+
+/**
+ * With sharding, the shard each idempotency key was first used on, stored on the shard the
+ * key hashes to (see {@code IdempotencyKeyOwners}). Keyed by the same 128-bit hash as
+ * {@code idempotency_keys}; in Java for the same reason as {@link V14__Idempotency_keys},
+ * the hash column's type.
+ */
+public class V16__Idempotency_key_owners extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+
+        var connection = context.getConnection();
+        boolean postgres = "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+
+        try (Statement st = connection.createStatement()) {
+            st.execute("""
+                    CREATE TABLE idempotency_key_owners (
+                        key_hash %s PRIMARY KEY,
+                        shard INT NOT NULL,
+                        created_at TIMESTAMP NOT NULL
+                    )""".formatted(postgres ? "BYTEA" : "BINARY(16)"));
+            st.execute("CREATE INDEX idx_idempotency_key_owners_created ON idempotency_key_owners (created_at)");
+        }
+    }
+}
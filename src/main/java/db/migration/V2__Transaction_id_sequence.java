@@ -0,0 +1,30 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Adds a pooled sequence for transaction ids so Hibernate can assign ids without an
+ * insert round trip and batch the inserts. The sequence starts after the highest
+ * existing id; done in Java because H2 and PostgreSQL share no syntax for that.
+ */
+public class V2__Transaction_id_sequence extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+
+        try (Statement st = context.getConnection().createStatement()) {
+
+            long start;
+            try (ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM transactions")) {
+                rs.next();
+                start = rs.getLong(1);
+            }
+
+            st.execute("CREATE SEQUENCE transactions_seq START WITH " + start + " INCREMENT BY 50");
+        }
+    }
+}
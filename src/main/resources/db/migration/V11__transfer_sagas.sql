@@ -0,0 +1,17 @@
+-- a transfer between accounts on different shards, kept on the debited account's shard.
+-- DEBITED: the debit is posted, the credit may not be; COMPLETED: both are posted;
+-- COMPENSATED: the credit was impossible and the debit was refunded
+CREATE TABLE transfer_sagas (
+                                idempotency_key VARCHAR(255) PRIMARY KEY,
+                                from_account_id BIGINT NOT NULL,
+                                to_account_id BIGINT NOT NULL,
+                                amount NUMERIC(19,4) NOT NULL,
+                                currency VARCHAR(3) NOT NULL,
+                                reference VARCHAR(100),
+                                state VARCHAR(20) NOT NULL,
+                                debit_transaction_id BIGINT NOT NULL,
+                                created_at TIMESTAMP NOT NULL,
+                                updated_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_transfer_sagas_state ON transfer_sagas (state, updated_at);
@@ -0,0 +1,22 @@
+-- one row per reconciliation pass; the counters grow as chunks finish
+CREATE TABLE reconciliation_runs (
+                                     id BIGSERIAL PRIMARY KEY,
+                                     status VARCHAR(16) NOT NULL,
+                                     started_at TIMESTAMP NOT NULL,
+                                     finished_at TIMESTAMP,
+                                     accounts BIGINT NOT NULL DEFAULT 0,
+                                     transactions BIGINT NOT NULL DEFAULT 0,
+                                     mismatches BIGINT NOT NULL DEFAULT 0
+);
+
+-- where an account's recorded balances disagree with its transactions
+CREATE TABLE reconciliation_mismatches (
+                                           run_id BIGINT NOT NULL,
+                                           account_id BIGINT NOT NULL,
+                                           transaction_id BIGINT,
+                                           kind VARCHAR(32) NOT NULL,
+                                           expected NUMERIC(19,4),
+                                           actual NUMERIC(19,4)
+);
+
+CREATE INDEX idx_reconciliation_mismatches_run ON reconciliation_mismatches (run_id, account_id);
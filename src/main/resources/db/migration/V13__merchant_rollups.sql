@@ -0,0 +1,53 @@
+-- per merchant and currency: total balance of its accounts and transaction legs ever posted;
+-- kept up to date by the outbox relay
+CREATE TABLE merchant_balances (
+                                   merchant_id VARCHAR(100) NOT NULL,
+                                   currency VARCHAR(3) NOT NULL,
+                                   balance NUMERIC(19,4) NOT NULL,
+                                   accounts INT NOT NULL,
+                                   transactions BIGINT NOT NULL,
+                                   updated_at TIMESTAMP NOT NULL,
+                                   PRIMARY KEY (merchant_id, currency)
+);
+
+-- legs credited to and debited from the merchant's accounts per UTC day and transaction type
+CREATE TABLE merchant_daily_volumes (
+                                        merchant_id VARCHAR(100) NOT NULL,
+                                        currency VARCHAR(3) NOT NULL,
+                                        volume_date DATE NOT NULL,
+                                        type VARCHAR(20) NOT NULL,
+                                        credits BIGINT NOT NULL,
+                                        credit_volume NUMERIC(19,4) NOT NULL,
+                                        debits BIGINT NOT NULL,
+                                        debit_volume NUMERIC(19,4) NOT NULL,
+                                        PRIMARY KEY (merchant_id, currency, volume_date, type)
+);
+
+-- Backfill from the ledger. Legs whose outbox event is still pending are left out: the relay
+-- adds them when it publishes the event.
+INSERT INTO merchant_daily_volumes (merchant_id, currency, volume_date, type, credits, credit_volume, debits, debit_volume)
+SELECT a.merchant_id, a.currency, CAST(t.created_at AS DATE), t.type,
+       SUM(CASE WHEN t.to_account_id = a.id THEN 1 ELSE 0 END),
+       SUM(CASE WHEN t.to_account_id = a.id THEN t.amount ELSE 0 END),
+       SUM(CASE WHEN t.from_account_id = a.id THEN 1 ELSE 0 END),
+       SUM(CASE WHEN t.from_account_id = a.id THEN t.amount ELSE 0 END)
+FROM accounts a
+         JOIN transactions t ON t.from_account_id = a.id OR t.to_account_id = a.id
+WHERE NOT EXISTS (SELECT 1 FROM outbox_events e WHERE e.transaction_id = t.id AND e.account_id = a.id)
+GROUP BY a.merchant_id, a.currency, CAST(t.created_at AS DATE), t.type;
+
+INSERT INTO merchant_balances (merchant_id, currency, balance, accounts, transactions, updated_at)
+SELECT m.merchant_id, m.currency, SUM(m.balance), COUNT(*),
+       COALESCE((SELECT SUM(v.credits + v.debits) FROM merchant_daily_volumes v
+                 WHERE v.merchant_id = m.merchant_id AND v.currency = m.currency), 0),
+       CURRENT_TIMESTAMP
+FROM (SELECT a.merchant_id, a.currency,
+             a.balance
+                 + COALESCE((SELECT SUM(b.balance) FROM account_buckets b WHERE b.account_id = a.id), 0)
+                 - COALESCE((SELECT SUM(CASE WHEN t.to_account_id = a.id THEN t.amount ELSE 0 END)
+                                        - SUM(CASE WHEN t.from_account_id = a.id THEN t.amount ELSE 0 END)
+                             FROM outbox_events e
+                                      JOIN transactions t ON t.id = e.transaction_id
+                             WHERE e.account_id = a.id), 0) AS balance
+      FROM accounts a) m
+GROUP BY m.merchant_id, m.currency;
@@ -0,0 +1,3 @@
+-- looking a transaction up by id alone probes every monthly partition; this gives the month
+-- to read from, answered from the index alone, for as long as the transaction's key is kept
+CREATE INDEX idx_idempotency_keys_transaction ON idempotency_keys (transaction_id, created_at);
@@ -0,0 +1,5 @@
+-- set once the event is in the merchant rollups; the rollup feed adds events without waiting
+-- for the relay, which then only adds the events that are not set
+ALTER TABLE outbox_events ADD COLUMN rolled_up BOOLEAN NOT NULL DEFAULT FALSE;
+
+CREATE INDEX idx_outbox_events_rollup ON outbox_events (partition_id, rolled_up, id);
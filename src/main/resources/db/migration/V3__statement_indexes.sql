@@ -0,0 +1,5 @@
+CREATE INDEX idx_transactions_from_account_created
+    ON transactions (from_account_id, created_at, id);
+
+CREATE INDEX idx_transactions_to_account_created
+    ON transactions (to_account_id, created_at, id);
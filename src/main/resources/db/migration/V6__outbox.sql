@@ -0,0 +1,22 @@
+-- one row per account touched by a transaction; ids are assigned while the account row
+-- is locked, so per-account id order is commit order
+CREATE TABLE outbox_events (
+                               id BIGSERIAL PRIMARY KEY,
+                               partition_id INT NOT NULL,
+                               account_id BIGINT NOT NULL,
+                               transaction_id BIGINT NOT NULL,
+                               event_type VARCHAR(40) NOT NULL,
+                               payload TEXT NOT NULL,
+                               created_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_outbox_events_partition ON outbox_events (partition_id, id);
+
+-- a relay drains a partition only while holding its row lock, which keeps every account
+-- (always mapped to the same partition) on one relay at a time
+CREATE TABLE outbox_partitions (
+                                   id INT PRIMARY KEY
+);
+
+INSERT INTO outbox_partitions (id)
+VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15);
@@ -0,0 +1,10 @@
+ALTER TABLE accounts ADD COLUMN bucket_count INT NOT NULL DEFAULT 0;
+
+-- extra balance slots of a hot account: its balance is accounts.balance plus the sum of
+-- its buckets, and every slot stays non-negative on its own
+CREATE TABLE account_buckets (
+                                 account_id BIGINT NOT NULL,
+                                 bucket INT NOT NULL,
+                                 balance NUMERIC(19,4) NOT NULL CHECK (balance >= 0),
+                                 PRIMARY KEY (account_id, bucket)
+);
@@ -0,0 +1,14 @@
+-- closing balance of every account at the end of each UTC day
+CREATE TABLE balance_snapshots (
+                                   account_id BIGINT NOT NULL,
+                                   snapshot_date DATE NOT NULL,
+                                   balance NUMERIC(19,4) NOT NULL,
+                                   PRIMARY KEY (account_id, snapshot_date)
+);
+
+-- days snapshotted for every account; the job resumes after the latest one
+CREATE TABLE balance_snapshot_days (
+                                       snapshot_date DATE PRIMARY KEY,
+                                       accounts INT NOT NULL,
+                                       completed_at TIMESTAMP NOT NULL
+);
@@ -0,0 +1,11 @@
+-- the statement indexes gain the balance columns so a point-in-time balance is answered
+-- from the index alone: the last entry at or before T, or the first one after it. They
+-- are trailing key columns rather than INCLUDE so the script also runs on H2.
+DROP INDEX idx_transactions_from_account_created;
+DROP INDEX idx_transactions_to_account_created;
+
+CREATE INDEX idx_transactions_from_account_created
+    ON transactions (from_account_id, created_at, id, from_balance_after, from_balance_before);
+
+CREATE INDEX idx_transactions_to_account_created
+    ON transactions (to_account_id, created_at, id, to_balance_after, to_balance_before);
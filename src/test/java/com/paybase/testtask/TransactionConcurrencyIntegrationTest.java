@@ -1,6 +1,7 @@
 package com.paybase.testtask.integration;
 
 import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 import com.paybase.testtask.dto.CreateAccountRequest;
@@ -118,14 +119,14 @@ class TransactionConcurrencyIntegrationTest {
 
         assertThat(success).isEqualTo(5);
         assertThat(failures).isEqualTo(5);
-        assertThat(reloaded.getBalance()).isEqualByComparingTo("0.00");
+        assertThat(reloaded.getBalance()).isEqualTo(Money.of("0.00"));
         assertThat(transactions).hasSize(5);
         assertThat(transactions).allSatisfy(tx -> {
             assertThat(tx.getFromBalanceBefore()).isNotNull();
             assertThat(tx.getFromBalanceAfter()).isNotNull();
             assertThat(tx.getFromBalanceAfter())
-                    .isGreaterThanOrEqualTo(BigDecimal.ZERO);
-            assertThat(tx.getAmount()).isEqualByComparingTo("200.00");
+                    .isGreaterThanOrEqualTo(Money.ZERO);
+            assertThat(tx.getAmount()).isEqualTo(Money.of("200.00"));
         });
     }
 }
@@ -0,0 +1,86 @@
+package com.paybase.testtask.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deposits posted over HTTP by concurrent clients, each going round the accounts from its own
+ * starting point, and what they measured. Latencies are sorted.
+ */
+record DepositLoad(double seconds, long[] latencies, int failures) {
+
+    static DepositLoad run(int port, List<Long> accountIds, String keyPrefix, int clients, int requestsPerClient)
+            throws Exception {
+
+        HttpClient http = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(16)).build();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger slot = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < requestsPerClient; i++) {
+                    long accountId = accountIds.get((client + i) % accountIds.size());
+                    String body = """
+                            {"idempotencyKey":"%s-%d-%d","type":"DEPOSIT","toAccountId":%d,\
+                            "amount":1.00,"currency":"USD","reference":"bench"}"""
+                            .formatted(keyPrefix, client, i, accountId);
+
+                    long begin = System.nanoTime();
+                    HttpResponse<Void> response = http.send(HttpRequest.newBuilder()
+                                    .uri(URI.create("http://localhost:" + port + "/api/transactions"))
+                                    .header("Content-Type", "application/json")
+                                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                                    .build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    latencies[slot.getAndIncrement()] = System.nanoTime() - begin;
+                    if (response.statusCode() >= 300) {
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        Arrays.sort(latencies);
+        return new DepositLoad(seconds, latencies, failures.get());
+    }
+
+    double throughput() {
+        return latencies.length / seconds;
+    }
+
+    void print(String label) {
+        System.out.printf("[%s] %d requests in %.2f s: %.0f req/s, p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                label, latencies.length, seconds, throughput(),
+                percentile(0.50), percentile(0.99), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private double percentile(double p) {
+        int index = (int) Math.ceil(p * latencies.length) - 1;
+        return latencies[Math.max(index, 0)] / 1e6;
+    }
+}
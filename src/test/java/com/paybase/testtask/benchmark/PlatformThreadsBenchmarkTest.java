@@ -0,0 +1,12 @@
+package com.paybase.testtask.benchmark;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class PlatformThreadsBenchmarkTest extends RequestThroughputBenchmark {
+
+    @Override
+    protected String label() {
+        return "platform";
+    }
+}
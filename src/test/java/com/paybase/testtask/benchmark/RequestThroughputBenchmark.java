@@ -0,0 +1,76 @@
+package com.paybase.testtask.benchmark;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Posts deposits over HTTP from many concurrent clients and prints throughput and latency
+ * percentiles. Requests block on Postgres row locks and JDBC round trips, which is where the
+ * thread models differ, so this needs docker. Subclasses pick the request thread model; run
+ * with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+abstract class RequestThroughputBenchmark {
+
+    private static final int CLIENTS = 256;
+    private static final int REQUESTS_PER_CLIENT = 40;
+    private static final int ACCOUNTS = 32;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    private final List<Long> accountIds = new ArrayList<>();
+
+    @BeforeEach
+    void seedAccounts() {
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            AccountEntity account = accountService.create(new CreateAccountRequest(
+                    "bench-" + i, "USD", BigDecimal.ZERO));
+            accountIds.add(account.getId());
+        }
+    }
+
+    @Test
+    void depositThroughput() throws Exception {
+        var load = DepositLoad.run(port, accountIds, label(), CLIENTS, REQUESTS_PER_CLIENT);
+        load.print(label());
+
+        assertThat(load.failures()).isZero();
+    }
+
+    protected abstract String label();
+}
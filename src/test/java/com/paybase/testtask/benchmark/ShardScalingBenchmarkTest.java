@@ -0,0 +1,126 @@
+package com.paybase.testtask.benchmark;
+
+import com.paybase.testtask.TestTaskApplication;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.ShardRouter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.lifecycle.Startables;
+
+import java.math.BigDecimal;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Posts the same deposits over HTTP to a ledger sharded over one Postgres container and to one
+ * sharded over {@code benchmark.shards} of them (2 by default), and checks that throughput
+ * grows close to linearly with the shards. Every container is held to one CPU, so the
+ * database is the bottleneck the shards divide, not the host they share. Each run gets fresh
+ * databases. Needs docker; run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+class ShardScalingBenchmarkTest {
+
+    private static final int SHARDS = Integer.getInteger("benchmark.shards", 2);
+    private static final int CLIENTS = 128;
+    private static final int REQUESTS_PER_CLIENT = 80;
+    private static final int ACCOUNTS_PER_SHARD = 32;
+    // throughput on every shard over SHARDS times the throughput on one
+    private static final double MIN_EFFICIENCY = 0.8;
+
+    private static final List<PostgreSQLContainer<?>> containers = IntStream.range(0, SHARDS)
+            .<PostgreSQLContainer<?>>mapToObj(shard -> new PostgreSQLContainer<>("postgres:16-alpine")
+                    .withCreateContainerCmdModifier(cmd -> cmd.getHostConfig().withNanoCPUs(1_000_000_000L)))
+            .toList();
+
+    @BeforeAll
+    static void startContainers() {
+        Startables.deepStart(containers).join();
+    }
+
+    @AfterAll
+    static void stopContainers() {
+        containers.forEach(PostgreSQLContainer::stop);
+    }
+
+    @Test
+    void throughputScalesWithShards() throws Exception {
+        var single = measure(1);
+        var sharded = measure(SHARDS);
+
+        double efficiency = sharded.throughput() / (SHARDS * single.throughput());
+        System.out.printf("[shards] %d shards take %.2fx the throughput of one (%.0f%% of linear)%n",
+                SHARDS, sharded.throughput() / single.throughput(), efficiency * 100);
+
+        assertThat(single.failures()).isZero();
+        assertThat(sharded.failures()).isZero();
+        assertThat(efficiency).isGreaterThanOrEqualTo(MIN_EFFICIENCY);
+    }
+
+    private static DepositLoad measure(int shards) throws Exception {
+
+        try (var context = start(shards)) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            var accountIds = seedAccounts(context, shards);
+
+            DepositLoad.run(port, accountIds, "warmup-" + shards, CLIENTS, REQUESTS_PER_CLIENT / 4);
+            var load = DepositLoad.run(port, accountIds, "shards-" + shards, CLIENTS, REQUESTS_PER_CLIENT);
+            load.print(shards + " shard" + (shards == 1 ? "" : "s"));
+            return load;
+        }
+    }
+
+    private static ConfigurableApplicationContext start(int shards) throws Exception {
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("ledger.sharding.enabled", true);
+        for (int shard = 0; shard < shards; shard++) {
+            var container = containers.get(shard);
+            var database = "ledger_" + shards;
+            try (var connection = DriverManager.getConnection(
+                    container.getJdbcUrl(), container.getUsername(), container.getPassword());
+                 var st = connection.createStatement()) {
+                st.execute("CREATE DATABASE " + database);
+            }
+            var prefix = "ledger.sharding.databases[" + shard + "].";
+            properties.put(prefix + "url", "jdbc:postgresql://%s:%d/%s".formatted(
+                    container.getHost(), container.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT), database));
+            properties.put(prefix + "username", container.getUsername());
+            properties.put(prefix + "password", container.getPassword());
+        }
+        return new SpringApplicationBuilder(TestTaskApplication.class).properties(properties).run();
+    }
+
+    private static List<Long> seedAccounts(ConfigurableApplicationContext context, int shards) {
+
+        var router = context.getBean(ShardRouter.class);
+        var accounts = context.getBean(AccountService.class);
+        int[] perShard = new int[shards];
+        List<Long> accountIds = new ArrayList<>();
+        for (int i = 0; accountIds.size() < shards * ACCOUNTS_PER_SHARD; i++) {
+            var merchantId = "bench-" + i;
+            int shard = router.shardOfMerchant(merchantId);
+            if (perShard[shard] < ACCOUNTS_PER_SHARD) {
+                perShard[shard]++;
+                accountIds.add(accounts.create(new CreateAccountRequest(merchantId, "USD", BigDecimal.ZERO)).getId());
+            }
+        }
+        return accountIds;
+    }
+}
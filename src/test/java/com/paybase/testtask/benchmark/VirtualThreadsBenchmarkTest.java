@@ -0,0 +1,17 @@
+package com.paybase.testtask.benchmark;
+
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@EnabledForJreRange(min = JRE.JAVA_21)
+@ActiveProfiles("virtual")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class VirtualThreadsBenchmarkTest extends RequestThroughputBenchmark {
+
+    @Override
+    protected String label() {
+        return "virtual";
+    }
+}
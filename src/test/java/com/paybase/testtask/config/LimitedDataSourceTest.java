@@ -0,0 +1,51 @@
+package com.paybase.testtask.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LimitedDataSourceTest {
+
+    @Test
+    void closingConnectionReturnsPermit() throws Exception {
+        DataSource target = mock(DataSource.class);
+        Connection raw = mock(Connection.class);
+        when(target.getConnection()).thenReturn(raw);
+
+        var limited = new LimitedDataSource(target, 2, Duration.ofMillis(50));
+
+        Connection first = limited.getConnection();
+        limited.getConnection();
+
+        assertThatThrownBy(limited::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+
+        first.close();
+        first.close();
+        limited.getConnection();
+
+        assertThatThrownBy(limited::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        verify(raw, times(1)).close();
+    }
+
+    @Test
+    void failedPoolCheckoutDoesNotLeakPermit() throws Exception {
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection())
+                .thenThrow(new SQLTransientConnectionException("pool exhausted"))
+                .thenReturn(mock(Connection.class));
+
+        var limited = new LimitedDataSource(target, 1, Duration.ofMillis(50));
+
+        assertThatThrownBy(limited::getConnection).hasMessage("pool exhausted");
+        limited.getConnection();
+    }
+}
@@ -4,6 +4,7 @@ package com.paybase.testtask.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.paybase.testtask.domain.AccountEntity;
 import com.paybase.testtask.domain.AccountStatus;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 import com.paybase.testtask.dto.CreateAccountRequest;
@@ -16,15 +17,21 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -73,7 +80,7 @@ class AccountControllerTest {
         AccountEntity account = new AccountEntity();
         account.setMerchantId("merchant-balance");
         account.setCurrency("EUR");
-        account.setBalance(new BigDecimal("99.99"));
+        account.setBalance(Money.of("99.99"));
         account.setStatus(AccountStatus.ACTIVE);
         account.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
         account = accountRepository.save(account);
@@ -86,12 +93,52 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$.lastUpdated", notNullValue()));
     }
 
+    @Test
+    void balanceEndpointReturnsBalanceAsOfInstant() throws Exception {
+        AccountEntity account = new AccountEntity();
+        account.setMerchantId("merchant-as-of");
+        account.setCurrency("USD");
+        account.setBalance(Money.of("150.00"));
+        account.setStatus(AccountStatus.ACTIVE);
+        account.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        account = accountRepository.save(account);
+
+        TransactionEntity deposit = new TransactionEntity();
+        deposit.setIdempotencyKey("as-of-1");
+        deposit.setType(TransactionType.DEPOSIT);
+        deposit.setToAccountId(account.getId());
+        deposit.setAmount(Money.of("50.00"));
+        deposit.setCurrency("USD");
+        deposit.setStatus("COMPLETED");
+        deposit.setToBalanceBefore(Money.of("100.00"));
+        deposit.setToBalanceAfter(Money.of("150.00"));
+        deposit.setCreatedAt(Instant.parse("2024-01-02T10:00:00Z"));
+        transactionRepository.save(deposit);
+
+        mockMvc.perform(get("/api/accounts/{id}/balance", account.getId())
+                        .param("asOf", "2024-01-02T09:59:59Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance").value(100.00))
+                .andExpect(jsonPath("$.lastUpdated").value("2024-01-01T00:00:00Z"));
+
+        mockMvc.perform(get("/api/accounts/{id}/balance", account.getId())
+                        .param("asOf", "2024-01-02T10:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance").value(150.00))
+                .andExpect(jsonPath("$.currency").value("USD"))
+                .andExpect(jsonPath("$.lastUpdated").value("2024-01-02T10:00:00Z"));
+
+        mockMvc.perform(get("/api/accounts/{id}/balance", account.getId())
+                        .param("asOf", "2023-12-31T00:00:00Z"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void statementEndpointReturnsTransactionsForAccount() throws Exception {
         AccountEntity account = new AccountEntity();
         account.setMerchantId("merchant-statement");
         account.setCurrency("USD");
-        account.setBalance(new BigDecimal("1000.00"));
+        account.setBalance(Money.of("1000.00"));
         account.setStatus(AccountStatus.ACTIVE);
         account.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
         account = accountRepository.save(account);
@@ -100,7 +147,7 @@ class AccountControllerTest {
         first.setIdempotencyKey("tx-1");
         first.setType(TransactionType.DEPOSIT);
         first.setToAccountId(account.getId());
-        first.setAmount(new BigDecimal("50.00"));
+        first.setAmount(Money.of("50.00"));
         first.setCurrency("USD");
         first.setStatus("COMPLETED");
         first.setCreatedAt(Instant.parse("2024-01-02T10:00:00Z"));
@@ -110,7 +157,7 @@ class AccountControllerTest {
         second.setIdempotencyKey("tx-2");
         second.setType(TransactionType.WITHDRAWAL);
         second.setFromAccountId(account.getId());
-        second.setAmount(new BigDecimal("25.00"));
+        second.setAmount(Money.of("25.00"));
         second.setCurrency("USD");
         second.setStatus("COMPLETED");
         second.setCreatedAt(Instant.parse("2024-01-03T10:00:00Z"));
@@ -122,4 +169,130 @@ class AccountControllerTest {
                 .andExpect(jsonPath("$[0].idempotencyKey").value("tx-1"))
                 .andExpect(jsonPath("$[1].idempotencyKey").value("tx-2"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void statementEndpointPagesWithCursorAndDateRange() throws Exception {
+        AccountEntity account = new AccountEntity();
+        account.setMerchantId("merchant-paged");
+        account.setCurrency("USD");
+        account.setBalance(Money.of("1000.00"));
+        account.setStatus(AccountStatus.ACTIVE);
+        account.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        account = accountRepository.save(account);
+
+        for (int day = 1; day <= 3; day++) {
+            TransactionEntity tx = new TransactionEntity();
+            tx.setIdempotencyKey("page-" + day);
+            tx.setType(TransactionType.DEPOSIT);
+            tx.setToAccountId(account.getId());
+            tx.setAmount(Money.of("10.00"));
+            tx.setCurrency("USD");
+            tx.setStatus("COMPLETED");
+            tx.setCreatedAt(Instant.parse("2024-02-0" + day + "T10:00:00Z"));
+            transactionRepository.save(tx);
+        }
+
+        String cursor = mockMvc.perform(get("/api/accounts/{id}/statement", account.getId())
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].idempotencyKey").value("page-1"))
+                .andExpect(header().exists("X-Next-Cursor"))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(get("/api/accounts/{id}/statement", account.getId())
+                        .param("limit", "2")
+                        .param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].idempotencyKey").value("page-3"))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        mockMvc.perform(get("/api/accounts/{id}/statement", account.getId())
+                        .param("from", "2024-02-02T00:00:00Z")
+                        .param("to", "2024-02-03T00:00:00Z"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].idempotencyKey").value("page-2"));
+    }
+
+    @Test
+    void statementEndpointRejectsMalformedCursor() throws Exception {
+        AccountEntity account = new AccountEntity();
+        account.setMerchantId("merchant-cursor");
+        account.setCurrency("USD");
+        account.setBalance(Money.of("0.00"));
+        account.setStatus(AccountStatus.ACTIVE);
+        account.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        account = accountRepository.save(account);
+
+        mockMvc.perform(get("/api/accounts/{id}/statement", account.getId())
+                        .param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportStreamsStatementAsNdjsonAndCsv() throws Exception {
+        AccountEntity account = new AccountEntity();
+        account.setMerchantId("merchant-export");
+        account.setCurrency("USD");
+        account.setBalance(Money.of("100.00"));
+        account.setStatus(AccountStatus.ACTIVE);
+        account.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        account = accountRepository.save(account);
+
+        TransactionEntity credit = new TransactionEntity();
+        credit.setIdempotencyKey("exp-1");
+        credit.setType(TransactionType.DEPOSIT);
+        credit.setToAccountId(account.getId());
+        credit.setAmount(Money.of("50.00"));
+        credit.setCurrency("USD");
+        credit.setStatus("COMPLETED");
+        credit.setReference("salary, march");
+        credit.setCreatedAt(Instant.parse("2024-01-02T10:00:00Z"));
+        transactionRepository.save(credit);
+
+        TransactionEntity debit = new TransactionEntity();
+        debit.setIdempotencyKey("exp-2");
+        debit.setType(TransactionType.WITHDRAWAL);
+        debit.setFromAccountId(account.getId());
+        debit.setAmount(Money.of("25.00"));
+        debit.setCurrency("USD");
+        debit.setStatus("COMPLETED");
+        debit.setReference("refund\rpartial");
+        debit.setCreatedAt(Instant.parse("2024-01-03T10:00:00Z"));
+        transactionRepository.save(debit);
+
+        MvcResult ndjson = mockMvc.perform(get("/api/accounts/{id}/statement/export", account.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(body.lines()).hasSize(2);
+        assertThat(body.lines().findFirst().orElseThrow()).contains("\"idempotencyKey\":\"exp-1\"");
+
+        MvcResult csv = mockMvc.perform(get("/api/accounts/{id}/statement/export", account.getId())
+                        .param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String csvBody = mockMvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        String[] rows = csvBody.split("\n");
+        assertThat(rows).hasSize(3);
+        assertThat(rows[1]).contains("\"salary, march\"");
+        assertThat(rows[2]).contains("\"refund\rpartial\"");
+    }
+
+    @Test
+    void exportReturnsNotFoundForUnknownAccount() throws Exception {
+        mockMvc.perform(get("/api/accounts/{id}/statement/export", -1L))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -3,6 +3,8 @@ package com.paybase.testtask.controller;
 import com.paybase.testtask.exceptions.ApiExceptionHandler;
 import com.paybase.testtask.exceptions.InsufficientFundsException;
 import com.paybase.testtask.exceptions.NotFoundException;
+import com.paybase.testtask.service.BatchTransactionService;
+import com.paybase.testtask.service.TransactionProcessor;
 import com.paybase.testtask.service.TransactionService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +30,12 @@ class TransactionControllerTest {
     @MockitoBean
     private TransactionService transactionService;
 
+    @MockitoBean
+    private TransactionProcessor transactionProcessor;
+
+    @MockitoBean
+    private BatchTransactionService batchTransactionService;
+
     @Test
     void createReturnsValidationErrorForNegativeAmount() throws Exception {
         String body = """
@@ -49,7 +57,7 @@ class TransactionControllerTest {
 
     @Test
     void createReturnsConflictOnInsufficientFunds() throws Exception {
-        when(transactionService.create(org.mockito.ArgumentMatchers.any()))
+        when(transactionProcessor.create(org.mockito.ArgumentMatchers.any()))
                 .thenThrow(new InsufficientFundsException());
 
         String body = """
@@ -79,4 +87,31 @@ class TransactionControllerTest {
                 .andExpect(status().isNotFound())
                 .andExpect(content().string("Not found"));
     }
+
+    @Test
+    void createBatchReturnsValidationErrorForInvalidItem() throws Exception {
+        String body = """
+                [
+                  {
+                    "idempotencyKey": "batch-ok",
+                    "type": "DEPOSIT",
+                    "toAccountId": 1,
+                    "amount": 10.00,
+                    "currency": "USD"
+                  },
+                  {
+                    "idempotencyKey": "batch-bad",
+                    "type": "DEPOSIT",
+                    "toAccountId": 1,
+                    "amount": 0,
+                    "currency": "USD"
+                  }
+                ]
+                """;
+
+        mockMvc.perform(post("/api/transactions/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isBadRequest());
+    }
 }
@@ -0,0 +1,46 @@
+package com.paybase.testtask.domain;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTest {
+
+    @Test
+    void convertsExactlyAtScaleFour() {
+        assertThat(Money.of("12.5").minorUnits()).isEqualTo(125_000L);
+        assertThat(Money.of("0.0001").minorUnits()).isEqualTo(1L);
+        assertThat(Money.of("12.5").toBigDecimal()).isEqualTo(new BigDecimal("12.5000"));
+        assertThat(Money.of("12.5000")).isEqualTo(Money.of("12.50"));
+    }
+
+    @Test
+    void rejectsValuesThatDoNotFit() {
+        assertThatThrownBy(() -> Money.of("0.00001")).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.of("1000000000000000")).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> new Money(Long.MAX_VALUE).plus(Money.of("0.0001")))
+                .isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void arithmeticAndOrdering() {
+        Money balance = Money.of("10.00");
+
+        assertThat(balance.plus(Money.of("0.0001"))).isEqualTo(Money.of("10.0001"));
+        assertThat(balance.minus(Money.of("10.0001")).isNegative()).isTrue();
+        assertThat(balance.isLessThan(Money.of("10.0001"))).isTrue();
+        assertThat(balance.isLessThan(Money.of("10"))).isFalse();
+    }
+
+    @Test
+    void serializesAsDecimalNumber() {
+        JsonMapper mapper = JsonMapper.builder().build();
+
+        assertThat(mapper.writeValueAsString(Money.of("25.5"))).isEqualTo("25.5000");
+        assertThat(mapper.readValue("25.5", Money.class)).isEqualTo(Money.of("25.5"));
+    }
+}
@@ -0,0 +1,172 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.BatchItemResult;
+import com.paybase.testtask.dto.BatchItemStatus;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.InsufficientFundsException;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountBuckets;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.BatchTransactionService;
+import com.paybase.testtask.service.LedgerReconciliation;
+import com.paybase.testtask.service.TransactionProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = "ledger.buckets.rebalance-interval-ms=3600000")
+class AccountBucketsIntegrationTest {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionProcessor transactionProcessor;
+
+    @Autowired
+    private AccountBuckets accountBuckets;
+
+    @Autowired
+    private BatchTransactionService batchService;
+
+    @Autowired
+    private LedgerReconciliation reconciliation;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(20);
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbcTemplate.update("DELETE FROM account_buckets");
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void creditsSpreadOverBucketsAndDebitsNeverOverdraw() throws Exception {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-hot",
+                "USD",
+                new BigDecimal("100.00")
+        ));
+        accountService.enableBuckets(account.getId(), 4);
+
+        run(40, i -> request("bucket-dep-" + i, TransactionType.DEPOSIT, null, account.getId(), "1.00"));
+
+        assertThat(accountService.balance(account.getId()).balance()).isEqualByComparingTo("140.00");
+        assertThat(accountRepository.findById(account.getId()).orElseThrow().getBalance())
+                .isEqualTo(Money.of("100.00"));
+
+        int withdrawn = run(20, i -> request("bucket-wd-" + i, TransactionType.WITHDRAWAL, account.getId(), null, "10.00"));
+
+        assertThat(withdrawn).isEqualTo(14);
+        assertThat(accountService.balance(account.getId()).balance()).isEqualByComparingTo("0.00");
+        assertThat(bucketBalances(account.getId())).allSatisfy(b -> assertThat(b).isEqualByComparingTo("0"));
+        assertThat(transactionRepository.findAll()).hasSize(54);
+    }
+
+    @Test
+    void rebalanceSpreadsBalanceEvenly() {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-rebalance",
+                "USD",
+                new BigDecimal("100.0003")
+        ));
+        accountService.enableBuckets(account.getId(), 4);
+
+        accountBuckets.maintain();
+
+        assertThat(accountRepository.findById(account.getId()).orElseThrow().getBalance()).isEqualTo(Money.ZERO);
+        assertThat(bucketBalances(account.getId()))
+                .containsExactly(new BigDecimal("25.0003"), new BigDecimal("25.0000"),
+                        new BigDecimal("25.0000"), new BigDecimal("25.0000"));
+
+        transactionProcessor.create(request("rebalanced-wd", TransactionType.WITHDRAWAL, account.getId(), null, "20.00"));
+        assertThat(accountService.balance(account.getId()).balance()).isEqualByComparingTo("80.0003");
+    }
+
+    @Test
+    void batchPostsToBucketsAndKeepsTheChainIntact() {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-batch-hot",
+                "USD",
+                new BigDecimal("100.00")
+        ));
+        accountService.enableBuckets(account.getId(), 4);
+        accountBuckets.maintain();
+
+        var results = batchService.submit(List.of(
+                request("batch-hot-dep", TransactionType.DEPOSIT, null, account.getId(), "10.00"),
+                request("batch-hot-wd", TransactionType.WITHDRAWAL, account.getId(), null, "60.00")));
+
+        assertThat(results).extracting(BatchItemResult::status)
+                .containsExactly(BatchItemStatus.CREATED, BatchItemStatus.CREATED);
+        assertThat(results.get(0).transaction().toBalanceBefore()).isNull();
+        assertThat(results.get(0).transaction().toBalanceAfter()).isNull();
+        assertThat(results.get(1).transaction().fromBalanceBefore()).isEqualByComparingTo("110.00");
+        assertThat(results.get(1).transaction().fromBalanceAfter()).isEqualByComparingTo("50.00");
+        assertThat(accountService.balance(account.getId()).balance()).isEqualByComparingTo("50.00");
+        assertThat(reconciliation.reconcile().mismatches()).isZero();
+    }
+
+    private int run(int count, java.util.function.IntFunction<TransactionRequest> requests) throws Exception {
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            var request = requests.apply(i);
+            futures.add(executorService.submit(() -> {
+                try {
+                    transactionProcessor.create(request);
+                    return true;
+                } catch (InsufficientFundsException ex) {
+                    return false;
+                }
+            }));
+        }
+        int success = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(10, TimeUnit.SECONDS)) {
+                success++;
+            }
+        }
+        return success;
+    }
+
+    private List<BigDecimal> bucketBalances(Long accountId) {
+        return jdbcTemplate.queryForList(
+                "SELECT balance FROM account_buckets WHERE account_id = ? ORDER BY bucket", BigDecimal.class, accountId);
+    }
+
+    private static TransactionRequest request(String key, TransactionType type, Long from, Long to, String amount) {
+        return new TransactionRequest(key, type, from, to, new BigDecimal(amount), "USD", "hot account");
+    }
+}
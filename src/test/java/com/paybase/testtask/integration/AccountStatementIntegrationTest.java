@@ -1,6 +1,7 @@
 package com.paybase.testtask.integration;
 
 import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 import com.paybase.testtask.dto.CreateAccountRequest;
@@ -72,15 +73,17 @@ class AccountStatementIntegrationTest {
                 "withdraw"
         ));
 
-        List<TransactionEntity> statement = accountService.statement(account.getId());
+        List<TransactionEntity> statement = accountService
+                .statement(account.getId(), null, null, null, 100)
+                .items();
 
         assertThat(statement).hasSize(2);
         TransactionEntity deposit = statement.get(0);
         TransactionEntity withdrawal = statement.get(1);
 
-        assertThat(deposit.getToBalanceBefore()).isEqualByComparingTo("0.00");
-        assertThat(deposit.getToBalanceAfter()).isEqualByComparingTo("100.00");
-        assertThat(withdrawal.getFromBalanceBefore()).isEqualByComparingTo("100.00");
-        assertThat(withdrawal.getFromBalanceAfter()).isEqualByComparingTo("60.00");
+        assertThat(deposit.getToBalanceBefore()).isEqualTo(Money.of("0.00"));
+        assertThat(deposit.getToBalanceAfter()).isEqualTo(Money.of("100.00"));
+        assertThat(withdrawal.getFromBalanceBefore()).isEqualTo(Money.of("100.00"));
+        assertThat(withdrawal.getFromBalanceAfter()).isEqualTo(Money.of("60.00"));
     }
 }
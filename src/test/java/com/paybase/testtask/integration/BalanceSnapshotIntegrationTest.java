@@ -0,0 +1,212 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.AccountStatus;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.BalanceHistoryResponse;
+import com.paybase.testtask.dto.DailyBalance;
+import com.paybase.testtask.exceptions.BadRequestException;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.BalanceHistoryService;
+import com.paybase.testtask.service.BalanceSnapshotJob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"ledger.snapshots.settle-delay=0s", "ledger.snapshots.chunk-size=1"})
+class BalanceSnapshotIntegrationTest {
+
+    @Autowired
+    private BalanceSnapshotJob snapshotJob;
+
+    @Autowired
+    private BalanceHistoryService historyService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbcTemplate.update("DELETE FROM balance_snapshots");
+        jdbcTemplate.update("DELETE FROM balance_snapshot_days");
+        jdbcTemplate.update("DELETE FROM account_buckets");
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @Test
+    void snapshotsEveryClosedDayOnceAndResumesAfterInterruption() {
+        // opened five days ago with 100, then +10, -4 and +1 today: 100 100 110 106 106 | 107
+        var account = account("merchant-snap", "107.00", today.minusDays(5));
+        var other = account("merchant-other", "50.00", today.minusDays(3));
+        transaction("snap-1", TransactionType.DEPOSIT, null, account.getId(), "10.00", today.minusDays(3));
+        transaction("snap-2", TransactionType.WITHDRAWAL, account.getId(), null, "4.00", today.minusDays(2));
+        transaction("snap-3", TransactionType.DEPOSIT, null, account.getId(), "1.00", today);
+        transaction("snap-4", TransactionType.TRANSFER, other.getId(), account.getId(), "0.00", today.minusDays(1));
+
+        assertThat(snapshotJob.snapshotPendingDays()).isEqualTo(5);
+        assertThat(snapshot(account, today.minusDays(5))).isEqualByComparingTo("100.00");
+        assertThat(snapshot(account, today.minusDays(3))).isEqualByComparingTo("110.00");
+        assertThat(snapshot(account, today.minusDays(1))).isEqualByComparingTo("106.00");
+        assertThat(snapshot(other, today.minusDays(3))).isEqualByComparingTo("50.00");
+        assertThat(snapshot(other, today.minusDays(4))).isNull();
+
+        assertThat(snapshotJob.snapshotPendingDays()).isZero();
+
+        // interrupted while writing the day before yesterday: one account done, the next days missing
+        jdbcTemplate.update("DELETE FROM balance_snapshot_days WHERE snapshot_date >= ?", Date.valueOf(today.minusDays(2)));
+        jdbcTemplate.update("DELETE FROM balance_snapshots WHERE snapshot_date = ?", Date.valueOf(today.minusDays(1)));
+        jdbcTemplate.update("DELETE FROM balance_snapshots WHERE snapshot_date = ? AND account_id = ?",
+                Date.valueOf(today.minusDays(2)), other.getId());
+
+        assertThat(snapshotJob.snapshotPendingDays()).isEqualTo(2);
+        assertThat(snapshot(account, today.minusDays(2))).isEqualByComparingTo("106.00");
+        assertThat(snapshot(account, today.minusDays(1))).isEqualByComparingTo("106.00");
+        assertThat(snapshot(other, today.minusDays(2))).isEqualByComparingTo("50.00");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM balance_snapshots", Integer.class)).isEqualTo(8);
+    }
+
+    @Test
+    void historyIsTheSameWithAndWithoutSnapshots() {
+        var account = account("merchant-history", "107.00", today.minusDays(5));
+        transaction("hist-1", TransactionType.DEPOSIT, null, account.getId(), "10.00", today.minusDays(3));
+        transaction("hist-2", TransactionType.WITHDRAWAL, account.getId(), null, "4.00", today.minusDays(2));
+        transaction("hist-3", TransactionType.DEPOSIT, null, account.getId(), "1.00", today);
+
+        var replayed = historyService.history(account.getId(), today.minusDays(6), today.plusDays(3));
+        assertHistory(replayed);
+
+        snapshotJob.snapshotPendingDays();
+        assertHistory(historyService.history(account.getId(), today.minusDays(6), today.plusDays(3)));
+
+        // only the later snapshots left: days before them replay from the current balance
+        jdbcTemplate.update("DELETE FROM balance_snapshots WHERE snapshot_date < ?", Date.valueOf(today.minusDays(2)));
+        assertHistory(historyService.history(account.getId(), today.minusDays(6), today.plusDays(3)));
+
+        var window = historyService.history(account.getId(), today.minusDays(2), today.minusDays(2));
+        assertThat(window.openingBalance()).isEqualByComparingTo("110.00");
+        assertThat(window.closingBalance()).isEqualByComparingTo("106.00");
+    }
+
+    @Test
+    void balanceAtReadsRecordedBalancesAndReplaysUnrecordedOnes() {
+        var account = account("merchant-as-of", "107.00", today.minusDays(5));
+        var deposit = transaction("as-of-1", TransactionType.DEPOSIT, null, account.getId(), "10.00", today.minusDays(3));
+        deposit.setToBalanceBefore(Money.of("100.00"));
+        deposit.setToBalanceAfter(Money.of("110.00"));
+        transactionRepository.save(deposit);
+        var withdrawal = transaction("as-of-2", TransactionType.WITHDRAWAL, account.getId(), null, "4.00", today.minusDays(2));
+        withdrawal.setFromBalanceBefore(Money.of("110.00"));
+        withdrawal.setFromBalanceAfter(Money.of("106.00"));
+        transactionRepository.save(withdrawal);
+        // a bucketed credit records no balances
+        transaction("as-of-3", TransactionType.DEPOSIT, null, account.getId(), "1.00", today);
+
+        var beforeFirst = historyService.balanceAt(account.getId(), noon(today.minusDays(4)));
+        assertThat(beforeFirst.balance()).isEqualByComparingTo("100.00");
+        assertThat(beforeFirst.lastUpdated()).isEqualTo(account.getCreatedAt());
+
+        assertThat(historyService.balanceAt(account.getId(), noon(today.minusDays(3))).balance())
+                .isEqualByComparingTo("110.00");
+        assertThat(historyService.balanceAt(account.getId(), noon(today.minusDays(2)).minusMillis(1)).balance())
+                .isEqualByComparingTo("110.00");
+
+        var afterWithdrawal = historyService.balanceAt(account.getId(), noon(today.minusDays(1)));
+        assertThat(afterWithdrawal.balance()).isEqualByComparingTo("106.00");
+        assertThat(afterWithdrawal.lastUpdated()).isEqualTo(noon(today.minusDays(2)));
+
+        assertThat(historyService.balanceAt(account.getId(), Instant.now().plusSeconds(60)).balance())
+                .isEqualByComparingTo("107.00");
+        snapshotJob.snapshotPendingDays();
+        assertThat(historyService.balanceAt(account.getId(), Instant.now().plusSeconds(60)).balance())
+                .isEqualByComparingTo("107.00");
+
+        assertThatThrownBy(() -> historyService.balanceAt(account.getId(), noon(today.minusDays(6))))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    void historyRejectsInvalidPeriods() {
+        var account = account("merchant-invalid", "1.00", today);
+
+        assertThatThrownBy(() -> historyService.history(account.getId(), today, today.minusDays(1)))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> historyService.history(account.getId(), today.minusDays(366), today))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    private static void assertHistory(BalanceHistoryResponse history) {
+        assertThat(history.openingBalance()).isEqualByComparingTo("0");
+        assertThat(history.closingBalance()).isEqualByComparingTo("107.00");
+        assertThat(history.days()).extracting(DailyBalance::closingBalance)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(
+                        new BigDecimal("0"),
+                        new BigDecimal("100.00"),
+                        new BigDecimal("100.00"),
+                        new BigDecimal("110.00"),
+                        new BigDecimal("106.00"),
+                        new BigDecimal("106.00"),
+                        new BigDecimal("107.00"));
+    }
+
+    /**
+     * The transactions are inserted as history, so {@code balance} is the account's balance after all of them.
+     */
+    private AccountEntity account(String merchantId, String balance, LocalDate opened) {
+        AccountEntity account = new AccountEntity();
+        account.setMerchantId(merchantId);
+        account.setCurrency("USD");
+        account.setBalance(Money.of(balance));
+        account.setStatus(AccountStatus.ACTIVE);
+        account.setCreatedAt(noon(opened).minus(Duration.ofHours(1)));
+        return accountRepository.save(account);
+    }
+
+    private TransactionEntity transaction(String key, TransactionType type, Long from, Long to, String amount, LocalDate day) {
+        TransactionEntity tx = new TransactionEntity();
+        tx.setIdempotencyKey(key);
+        tx.setType(type);
+        tx.setFromAccountId(from);
+        tx.setToAccountId(to);
+        tx.setAmount(Money.of(amount));
+        tx.setCurrency("USD");
+        tx.setStatus("COMPLETED");
+        tx.setCreatedAt(day.equals(today) ? Instant.now() : noon(day));
+        return transactionRepository.save(tx);
+    }
+
+    private BigDecimal snapshot(AccountEntity account, LocalDate day) {
+        return jdbcTemplate.query("SELECT balance FROM balance_snapshots WHERE account_id = ? AND snapshot_date = ?",
+                rs -> rs.next() ? rs.getBigDecimal("balance") : null, account.getId(), Date.valueOf(day));
+    }
+
+    private static Instant noon(LocalDate day) {
+        return day.atTime(12, 0).toInstant(ZoneOffset.UTC);
+    }
+}
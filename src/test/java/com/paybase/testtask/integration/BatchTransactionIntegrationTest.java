@@ -0,0 +1,83 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.BatchItemResult;
+import com.paybase.testtask.dto.BatchItemStatus;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.BatchTransactionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = "ledger.batch.chunk-size=2")
+class BatchTransactionIntegrationTest {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private BatchTransactionService batchTransactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @BeforeEach
+    void cleanDatabase() {
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @Test
+    void batchReportsOutcomePerItemAcrossChunks() {
+        AccountEntity a = accountService.create(new CreateAccountRequest(
+                "merchant-batch-a", "USD", new BigDecimal("100.00")));
+        AccountEntity b = accountService.create(new CreateAccountRequest(
+                "merchant-batch-b", "USD", new BigDecimal("0.00")));
+
+        List<BatchItemResult> results = batchTransactionService.submit(List.of(
+                request("b-1", TransactionType.TRANSFER, a.getId(), b.getId(), "60.00"),
+                request("b-2", TransactionType.WITHDRAWAL, a.getId(), null, "50.00"),
+                request("b-1", TransactionType.TRANSFER, a.getId(), b.getId(), "60.00"),
+                request("b-3", TransactionType.DEPOSIT, null, -1L, "5.00"),
+                request("b-4", TransactionType.WITHDRAWAL, b.getId(), null, "60.00")
+        ));
+
+        assertThat(results).extracting(BatchItemResult::status).containsExactly(
+                BatchItemStatus.CREATED,
+                BatchItemStatus.INSUFFICIENT_FUNDS,
+                BatchItemStatus.DUPLICATE,
+                BatchItemStatus.NOT_FOUND,
+                BatchItemStatus.CREATED
+        );
+        assertThat(results.get(2).transaction().transactionId())
+                .isEqualTo(results.get(0).transaction().transactionId());
+
+        assertThat(accountRepository.findById(a.getId()).orElseThrow().getBalance())
+                .isEqualTo(Money.of("40.00"));
+        assertThat(accountRepository.findById(b.getId()).orElseThrow().getBalance())
+                .isEqualTo(Money.of("0.00"));
+        assertThat(transactionRepository.count()).isEqualTo(2);
+    }
+
+    private static TransactionRequest request(
+            String key, TransactionType type, Long from, Long to, String amount) {
+        return new TransactionRequest(key, type, from, to, new BigDecimal(amount), "USD", "batch");
+    }
+}
@@ -0,0 +1,129 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.TransactionProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "ledger.deposit-coalescing.enabled=true",
+        "ledger.deposit-coalescing.window=50ms"
+})
+class DepositCoalescingIntegrationTest {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionProcessor transactionProcessor;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(20);
+
+    @BeforeEach
+    void cleanDatabase() {
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void concurrentCreditsAreAppliedTogetherWithChainedBalances() throws Exception {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-pool",
+                "USD",
+                new BigDecimal("0.00")
+        ));
+
+        List<Future<TransactionEntity>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            var request = new TransactionRequest(
+                    "coalesce-" + i,
+                    i % 4 == 0 ? TransactionType.REFUND : TransactionType.DEPOSIT,
+                    null,
+                    account.getId(),
+                    new BigDecimal("2.50"),
+                    "USD",
+                    "payout pool"
+            );
+            futures.add(executorService.submit(() -> transactionProcessor.create(request)));
+        }
+        for (Future<TransactionEntity> future : futures) {
+            assertThat(future.get(10, TimeUnit.SECONDS).getId()).isNotNull();
+        }
+
+        var transactions = transactionRepository.findAll().stream()
+                .sorted(Comparator.comparing(TransactionEntity::getToBalanceBefore))
+                .toList();
+
+        assertThat(accountRepository.findById(account.getId()).orElseThrow().getBalance())
+                .isEqualTo(Money.of("100.00"));
+        assertThat(transactions).hasSize(40);
+        assertThat(transactions.get(0).getToBalanceBefore()).isEqualTo(Money.ZERO);
+        for (int i = 1; i < transactions.size(); i++) {
+            assertThat(transactions.get(i).getToBalanceBefore())
+                    .isEqualTo(transactions.get(i - 1).getToBalanceAfter());
+        }
+        assertThat(meterRegistry.get("ledger.deposit.coalesced").summary().max()).isGreaterThan(1);
+    }
+
+    @Test
+    void repeatedKeyInOneWindowIsAppliedOnce() throws Exception {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-pool-dup",
+                "USD",
+                new BigDecimal("0.00")
+        ));
+
+        var request = new TransactionRequest(
+                "coalesce-dup",
+                TransactionType.DEPOSIT,
+                null,
+                account.getId(),
+                new BigDecimal("5.00"),
+                "USD",
+                "payout pool"
+        );
+        var first = executorService.submit(() -> transactionProcessor.create(request));
+        var second = executorService.submit(() -> transactionProcessor.create(request));
+
+        assertThat(first.get(10, TimeUnit.SECONDS).getId()).isEqualTo(second.get(10, TimeUnit.SECONDS).getId());
+        assertThat(accountRepository.findById(account.getId()).orElseThrow().getBalance())
+                .isEqualTo(Money.of("5.00"));
+        assertThat(transactionRepository.findAll()).hasSize(1);
+    }
+}
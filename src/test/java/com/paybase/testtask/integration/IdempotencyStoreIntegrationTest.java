@@ -0,0 +1,142 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.IdempotencyStore;
+import com.paybase.testtask.service.TransactionProcessor;
+import com.paybase.testtask.service.TransactionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"ledger.idempotency.purge-enabled=false", "ledger.idempotency.purge-batch-size=2"})
+class IdempotencyStoreIntegrationTest {
+
+    @Autowired
+    private IdempotencyStore keys;
+
+    @Autowired
+    private TransactionProcessor processor;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private AccountEntity account;
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbc.update("DELETE FROM idempotency_keys");
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+        account = accountService.create(new CreateAccountRequest("merchant-keys", "USD", new BigDecimal("100.00")));
+    }
+
+    @Test
+    void keyIsStoredUnderItsHashAndAnswersRetries() {
+        var tx = deposit("key-stored");
+
+        assertThat(deposit("key-stored").getId()).isEqualTo(tx.getId());
+        assertThat(transactionRepository.count()).isEqualTo(1);
+        assertThat(keys.find("key-stored")).contains(new IdempotencyStore.Claim(tx.getId(), tx.getCreatedAt()));
+
+        var row = jdbc.queryForMap("SELECT * FROM idempotency_keys");
+        assertThat((byte[]) row.get("key_hash")).hasSize(16);
+        assertThat(row.get("idempotency_key")).isEqualTo("key-stored");
+    }
+
+    @Test
+    void hashCollisionIsNotAnsweredWithTheOtherKeysTransaction() {
+        deposit("key-collides");
+        // the stored row now reads as another key with the same hash
+        jdbc.update("UPDATE idempotency_keys SET idempotency_key = 'key-other'");
+
+        assertThat(keys.find("key-collides")).isEmpty();
+        assertThatThrownBy(() -> deposit("key-collides"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(transactionRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void keyOfARemovedTransactionCanBeUsedAgain() {
+        var archived = deposit("key-reused");
+        transactionRepository.deleteById(archived.getId());
+
+        var tx = deposit("key-reused");
+
+        assertThat(tx.getId()).isNotEqualTo(archived.getId());
+        assertThat(keys.find("key-reused").map(IdempotencyStore.Claim::transactionId)).contains(tx.getId());
+    }
+
+    @Test
+    void requestRetriedAfterItsKeyExpiredIsTreatedAsNew() {
+        var first = deposit("key-expired");
+        keys.purge(Instant.now().plusSeconds(1));
+
+        var second = deposit("key-expired");
+
+        assertThat(second.getId()).isNotEqualTo(first.getId());
+        assertThat(transactionRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void transactionIsFoundByIdWithAndWithoutItsKey() {
+        var tx = deposit("key-lookup");
+
+        assertThat(transactionService.get(tx.getId()).getIdempotencyKey()).isEqualTo("key-lookup");
+
+        keys.purge(Instant.now().plusSeconds(1));
+
+        assertThat(transactionService.get(tx.getId()).getIdempotencyKey()).isEqualTo("key-lookup");
+    }
+
+    @Test
+    void expiredKeysArePurgedInBatches() {
+        var old = Timestamp.from(Instant.now().minus(Duration.ofDays(40)));
+        for (int i = 0; i < 5; i++) {
+            deposit("key-old-" + i);
+        }
+        deposit("key-fresh");
+        jdbc.update("UPDATE idempotency_keys SET created_at = ? WHERE idempotency_key LIKE 'key-old-%'", old);
+
+        assertThat(keys.purge(Instant.now().minus(Duration.ofDays(30)))).isEqualTo(5);
+
+        assertThat(jdbc.queryForList("SELECT idempotency_key FROM idempotency_keys", String.class))
+                .containsExactly("key-fresh");
+    }
+
+    private TransactionEntity deposit(String key) {
+        return processor.create(new TransactionRequest(key, TransactionType.DEPOSIT, null, account.getId(),
+                new BigDecimal("1.00"), "USD", null));
+    }
+}
@@ -0,0 +1,136 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.MismatchKind;
+import com.paybase.testtask.dto.ReconciliationMismatch;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.LedgerReconciliation;
+import com.paybase.testtask.service.TransactionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {"ledger.reconciliation.chunk-size=1", "ledger.reconciliation.fetch-size=2"})
+class LedgerReconciliationIntegrationTest {
+
+    @Autowired
+    private LedgerReconciliation reconciliation;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbcTemplate.update("DELETE FROM reconciliation_mismatches");
+        jdbcTemplate.update("DELETE FROM reconciliation_runs");
+        jdbcTemplate.update("DELETE FROM account_buckets");
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @Test
+    void consistentLedgerReconcilesCleanly() {
+        var a = account("merchant-rec-a", "100.00");
+        var b = account("merchant-rec-b", "0.00");
+        account("merchant-rec-idle", "5.00");
+        post("rec-1", TransactionType.DEPOSIT, null, a, "20.00");
+        post("rec-2", TransactionType.TRANSFER, a, b, "70.00");
+        post("rec-3", TransactionType.WITHDRAWAL, b, null, "15.00");
+        post("rec-4", TransactionType.FEE, a, null, "1.50");
+
+        var run = reconciliation.reconcile();
+
+        assertThat(run.status()).isEqualTo("COMPLETED");
+        assertThat(run.accounts()).isEqualTo(3);
+        assertThat(run.transactions()).isEqualTo(5);
+        assertThat(run.mismatches()).isZero();
+        assertThat(run.finishedAt()).isNotNull();
+    }
+
+    @Test
+    void tamperedBalancesAreReported() throws Exception {
+        var a = account("merchant-rec-a", "100.00");
+        var b = account("merchant-rec-b", "0.00");
+        post("rec-1", TransactionType.DEPOSIT, null, a, "20.00");
+        var edited = post("rec-2", TransactionType.TRANSFER, a, b, "70.00");
+        var next = post("rec-3", TransactionType.WITHDRAWAL, b, null, "15.00");
+        post("rec-4", TransactionType.FEE, a, null, "1.50");
+
+        // b's leg of the transfer claims it ended at 75, and a's balance drifted by a cent
+        jdbcTemplate.update("UPDATE transactions SET to_balance_after = 75.00 WHERE id = ?", edited.getId());
+        jdbcTemplate.update("UPDATE accounts SET balance = balance + 0.01 WHERE id = ?", a.getId());
+
+        var run = reconciliation.reconcile();
+
+        assertThat(run.mismatches()).isEqualTo(3);
+        assertThat(reconciliation.report(run.id(), 100).mismatches()).containsExactly(
+                new ReconciliationMismatch(a.getId(), null, MismatchKind.BALANCE, money("48.50"), money("48.51")),
+                new ReconciliationMismatch(b.getId(), edited.getId(), MismatchKind.WRONG_AMOUNT, money("70.00"), money("75.00")),
+                new ReconciliationMismatch(b.getId(), next.getId(), MismatchKind.BROKEN_CHAIN, money("75.00"), money("70.00")));
+
+        mockMvc.perform(get("/api/reconciliations/latest").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.run.id").value(run.id()))
+                .andExpect(jsonPath("$.run.mismatches").value(3))
+                .andExpect(jsonPath("$.mismatches.length()").value(2))
+                .andExpect(jsonPath("$.mismatches[0].kind").value("BALANCE"));
+    }
+
+    @Test
+    void unknownRunIsNotFound() throws Exception {
+        mockMvc.perform(get("/api/reconciliations/latest"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/reconciliations/{runId}", 999_999))
+                .andExpect(status().isNotFound());
+    }
+
+    private AccountEntity account(String merchantId, String balance) {
+        return accountService.create(new CreateAccountRequest(merchantId, "USD", new BigDecimal(balance)));
+    }
+
+    private TransactionEntity post(
+            String key, TransactionType type, AccountEntity from, AccountEntity to, String amount) {
+        return transactionService.create(new TransactionRequest(key, type,
+                from != null ? from.getId() : null, to != null ? to.getId() : null,
+                new BigDecimal(amount), "USD", null));
+    }
+
+    private static BigDecimal money(String value) {
+        return new BigDecimal(value).setScale(4);
+    }
+}
@@ -0,0 +1,177 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.MerchantDailyVolume;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.MerchantRollupFeed;
+import com.paybase.testtask.service.MerchantRollups;
+import com.paybase.testtask.service.OutboxRelay;
+import com.paybase.testtask.service.TransactionProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@SpringBootTest(properties = "ledger.outbox.relay-enabled=false")
+class MerchantRollupIntegrationTest {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionProcessor processor;
+
+    @Autowired
+    private OutboxRelay relay;
+
+    @Autowired
+    private MerchantRollupFeed feed;
+
+    @Autowired
+    private MerchantRollups rollups;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbc.update("DELETE FROM outbox_events");
+        jdbc.update("DELETE FROM merchant_balances");
+        jdbc.update("DELETE FROM merchant_daily_volumes");
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @Test
+    void publishedTransactionsAreRolledUpPerMerchantAndCurrency() {
+        var main = account("merchant-roll", "USD", "100.00");
+        var reserve = account("merchant-roll", "USD", "0.00");
+        account("merchant-roll", "EUR", "10.00");
+        var other = account("merchant-roll-other", "USD", "0.00");
+
+        post("roll-1", TransactionType.DEPOSIT, null, main, "20.00");
+        post("roll-2", TransactionType.TRANSFER, main, reserve, "30.00");
+        post("roll-3", TransactionType.WITHDRAWAL, reserve, null, "5.00");
+        post("roll-4", TransactionType.TRANSFER, main, other, "10.00");
+
+        // only the opening balances until the relay publishes
+        var usd = rollups.summary("merchant-roll", 1).currencies().get(1);
+        assertThat(usd.balance()).isEqualByComparingTo("100.00");
+        assertThat(usd.transactions()).isZero();
+
+        relay.drain();
+        assertThat(relay.drain()).isZero();
+
+        var summary = rollups.summary("merchant-roll", 1);
+        assertThat(summary.currencies()).hasSize(2);
+
+        var eur = summary.currencies().get(0);
+        assertThat(eur.currency()).isEqualTo("EUR");
+        assertThat(eur.balance()).isEqualByComparingTo("10.00");
+        assertThat(eur.days()).isEmpty();
+
+        usd = summary.currencies().get(1);
+        assertThat(usd.balance()).isEqualByComparingTo("105.00");
+        assertThat(usd.accounts()).isEqualTo(2);
+        assertThat(usd.transactions()).isEqualTo(5);
+        assertThat(usd.days()).containsExactly(
+                volume(TransactionType.DEPOSIT, 1, "20.00", 0, "0"),
+                volume(TransactionType.TRANSFER, 1, "30.00", 2, "40.00"),
+                volume(TransactionType.WITHDRAWAL, 0, "0", 1, "5.00"));
+
+        assertThat(rollups.summary("merchant-roll-other", 1).currencies().get(0).balance())
+                .isEqualByComparingTo("10.00");
+    }
+
+    @Test
+    void feedRollsUpWithoutTheRelayAndTheRelayDoesNotCountAgain() {
+        var main = account("merchant-roll", "USD", "100.00");
+        var reserve = account("merchant-roll", "USD", "0.00");
+
+        post("roll-1", TransactionType.DEPOSIT, null, main, "20.00");
+        post("roll-2", TransactionType.TRANSFER, main, reserve, "30.00");
+
+        assertThat(feed.feed()).isEqualTo(3);
+        assertThat(feed.feed()).isZero();
+
+        var usd = rollups.summary("merchant-roll", 1).currencies().get(0);
+        assertThat(usd.balance()).isEqualByComparingTo("120.00");
+        assertThat(usd.transactions()).isEqualTo(3);
+        // still waiting for the relay
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM outbox_events", Integer.class)).isEqualTo(3);
+
+        post("roll-3", TransactionType.WITHDRAWAL, reserve, null, "5.00");
+        assertThat(relay.drain()).isEqualTo(4);
+
+        usd = rollups.summary("merchant-roll", 1).currencies().get(0);
+        assertThat(usd.balance()).isEqualByComparingTo("115.00");
+        assertThat(usd.transactions()).isEqualTo(4);
+        assertThat(usd.days()).containsExactly(
+                volume(TransactionType.DEPOSIT, 1, "20.00", 0, "0"),
+                volume(TransactionType.TRANSFER, 1, "30.00", 1, "30.00"),
+                volume(TransactionType.WITHDRAWAL, 0, "0", 1, "5.00"));
+    }
+
+    @Test
+    void summaryEndpoint() throws Exception {
+        var main = account("merchant-roll", "USD", "50.00");
+        post("roll-1", TransactionType.FEE, main, null, "1.25");
+        relay.drain();
+
+        mockMvc.perform(get("/api/merchants/{merchantId}/summary", "merchant-roll").param("days", "7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currencies[0].balance").value(48.75))
+                .andExpect(jsonPath("$.currencies[0].days[0].type").value("FEE"))
+                .andExpect(jsonPath("$.currencies[0].days[0].debits").value(1));
+        mockMvc.perform(get("/api/merchants/{merchantId}/summary", "merchant-unknown"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/merchants/{merchantId}/summary", "merchant-roll").param("days", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private MerchantDailyVolume volume(TransactionType type, long credits, String creditVolume, long debits, String debitVolume) {
+        return new MerchantDailyVolume(today, type,
+                credits, new BigDecimal(creditVolume).setScale(4), debits, new BigDecimal(debitVolume).setScale(4));
+    }
+
+    private AccountEntity account(String merchantId, String currency, String balance) {
+        return accountService.create(new CreateAccountRequest(merchantId, currency, new BigDecimal(balance)));
+    }
+
+    private void post(String key, TransactionType type, AccountEntity from, AccountEntity to, String amount) {
+        processor.create(new TransactionRequest(key, type,
+                from != null ? from.getId() : null, to != null ? to.getId() : null,
+                new BigDecimal(amount), "USD", null));
+    }
+}
@@ -0,0 +1,117 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest
+class OpposingTransfersIntegrationTest {
+
+    private static final int THREADS_PER_DIRECTION = 8;
+    private static final int TRANSFERS_PER_THREAD = 25;
+    private static final Duration SLOW_TRANSFER = Duration.ofSeconds(1);
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(THREADS_PER_DIRECTION * 2);
+
+    @BeforeEach
+    void cleanDatabase() {
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void opposingTransfersDoNotDeadlock() throws Exception {
+        AccountEntity a = accountService.create(new CreateAccountRequest(
+                "merchant-a", "USD", new BigDecimal("10000.00")));
+        AccountEntity b = accountService.create(new CreateAccountRequest(
+                "merchant-b", "USD", new BigDecimal("10000.00")));
+
+        AtomicInteger deadlocks = new AtomicInteger();
+        AtomicInteger slow = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS_PER_DIRECTION * 2; t++) {
+            boolean forward = t % 2 == 0;
+            String prefix = "xfer-" + t + "-";
+            futures.add(executorService.submit(() -> {
+                start.await();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    long begin = System.nanoTime();
+                    try {
+                        transactionService.create(new TransactionRequest(
+                                prefix + i,
+                                TransactionType.TRANSFER,
+                                forward ? a.getId() : b.getId(),
+                                forward ? b.getId() : a.getId(),
+                                new BigDecimal("1.00"),
+                                "USD",
+                                "opposing"
+                        ));
+                    } catch (PessimisticLockingFailureException ex) {
+                        deadlocks.incrementAndGet();
+                    }
+                    if (System.nanoTime() - begin > SLOW_TRANSFER.toNanos()) {
+                        slow.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        AccountEntity reloadedA = accountRepository.findById(a.getId()).orElseThrow();
+        AccountEntity reloadedB = accountRepository.findById(b.getId()).orElseThrow();
+
+        assertThat(deadlocks.get()).isZero();
+        assertThat(slow.get()).isZero();
+        assertThat(transactionRepository.count())
+                .isEqualTo((long) THREADS_PER_DIRECTION * 2 * TRANSFERS_PER_THREAD);
+        assertThat(reloadedA.getBalance()).isEqualTo(Money.of("10000.00"));
+        assertThat(reloadedB.getBalance()).isEqualTo(Money.of("10000.00"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.TransactionProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "ledger.concurrency.mode=OPTIMISTIC",
+        "ledger.concurrency.max-attempts=50"
+})
+class OptimisticConcurrencyIntegrationTest {
+
+    private static final int THREADS = 8;
+    private static final int DEPOSITS_PER_THREAD = 25;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionProcessor processor;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+
+    @BeforeEach
+    void cleanDatabase() {
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void concurrentDepositsToOneAccountAreNotLost() throws Exception {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-hot", "USD", new BigDecimal("0.00")));
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            String prefix = "opt-" + t + "-";
+            futures.add(executorService.submit(() -> {
+                start.await();
+                for (int i = 0; i < DEPOSITS_PER_THREAD; i++) {
+                    processor.create(new TransactionRequest(
+                            prefix + i,
+                            TransactionType.DEPOSIT,
+                            null,
+                            account.getId(),
+                            new BigDecimal("1.00"),
+                            "USD",
+                            "optimistic"
+                    ));
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        AccountEntity reloaded = accountRepository.findById(account.getId()).orElseThrow();
+
+        assertThat(reloaded.getBalance()).isEqualTo(Money.of(String.valueOf(THREADS * DEPOSITS_PER_THREAD)));
+        assertThat(reloaded.getVersion()).isGreaterThanOrEqualTo((long) THREADS * DEPOSITS_PER_THREAD);
+        assertThat(transactionRepository.count()).isEqualTo((long) THREADS * DEPOSITS_PER_THREAD);
+        assertThat(registry.counter("ledger.optimistic.exhausted").count()).isZero();
+    }
+}
@@ -0,0 +1,169 @@
+package com.paybase.testtask.integration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.OutboxEvent;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.InMemoryOutboxSink;
+import com.paybase.testtask.service.OutboxRelay;
+import com.paybase.testtask.service.TransactionProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "ledger.outbox.relay-enabled=false",
+        "ledger.outbox.batch-size=7"
+})
+class OutboxRelayIntegrationTest {
+
+    private static final int THREADS = 4;
+    private static final int REQUESTS_PER_THREAD = 25;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionProcessor processor;
+
+    @Autowired
+    private OutboxRelay relay;
+
+    @Autowired
+    private InMemoryOutboxSink sink;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executorService = Executors.newFixedThreadPool(THREADS + 2);
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbc.update("DELETE FROM outbox_events");
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+        sink.clear();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void transferIsPublishedOncePerAccountAndRemovedFromOutbox() {
+        AccountEntity a = accountService.create(new CreateAccountRequest("m-a", "USD", new BigDecimal("100.00")));
+        AccountEntity b = accountService.create(new CreateAccountRequest("m-b", "USD", new BigDecimal("0.00")));
+
+        var tx = processor.create(new TransactionRequest(
+                "outbox-transfer", TransactionType.TRANSFER, a.getId(), b.getId(),
+                new BigDecimal("40.00"), "USD", "outbox"));
+
+        assertThat(relay.drain()).isEqualTo(2);
+
+        assertThat(sink.events())
+                .extracting(OutboxEvent::accountId)
+                .containsExactlyInAnyOrder(a.getId(), b.getId());
+        assertThat(sink.events()).allSatisfy(event -> assertThat(event.transactionId()).isEqualTo(tx.getId()));
+        assertThat(jdbc.queryForObject("SELECT count(*) FROM outbox_events", Integer.class)).isZero();
+        assertThat(relay.drain()).isZero();
+    }
+
+    @Test
+    void eventsOfEachAccountArePublishedInBalanceOrder() throws Exception {
+        AccountEntity a = accountService.create(new CreateAccountRequest("m-a", "USD", new BigDecimal("1000.00")));
+        AccountEntity b = accountService.create(new CreateAccountRequest("m-b", "USD", new BigDecimal("1000.00")));
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> relays = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            relays.add(executorService.submit(() -> {
+                while (writing.get()) {
+                    relay.drain();
+                }
+                return null;
+            }));
+        }
+
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean forward = t % 2 == 0;
+            String prefix = "outbox-" + t + "-";
+            writers.add(executorService.submit(() -> {
+                for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                    processor.create(new TransactionRequest(
+                            prefix + i,
+                            i % 3 == 0 ? TransactionType.DEPOSIT : TransactionType.TRANSFER,
+                            i % 3 == 0 ? null : forward ? a.getId() : b.getId(),
+                            forward ? b.getId() : a.getId(),
+                            new BigDecimal("1.00"),
+                            "USD",
+                            "outbox"));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        for (Future<?> r : relays) {
+            r.get(60, TimeUnit.SECONDS);
+        }
+        relay.drain();
+
+        Map<Long, List<OutboxEvent>> byAccount = sink.events().stream()
+                .collect(Collectors.groupingBy(OutboxEvent::accountId));
+
+        for (var entry : byAccount.entrySet()) {
+            BigDecimal previous = null;
+            for (OutboxEvent event : entry.getValue()) {
+                JsonNode payload = objectMapper.readTree(event.payload());
+                boolean debit = entry.getKey().equals(payload.path("fromAccountId").asLong());
+                BigDecimal before = payload.path(debit ? "fromBalanceBefore" : "toBalanceBefore").decimalValue();
+                BigDecimal after = payload.path(debit ? "fromBalanceAfter" : "toBalanceAfter").decimalValue();
+                if (previous != null) {
+                    assertThat(before).isEqualByComparingTo(previous);
+                }
+                previous = after;
+            }
+            BigDecimal balance = accountRepository.findById(entry.getKey()).orElseThrow().getBalance().toBigDecimal();
+            assertThat(previous).isEqualByComparingTo(balance);
+        }
+        assertThat(sink.events()).hasSize((int) (transactionRepository.count() * 2 - countDeposits()));
+    }
+
+    private long countDeposits() {
+        return transactionRepository.findAll().stream()
+                .filter(tx -> tx.getType() == TransactionType.DEPOSIT)
+                .count();
+    }
+}
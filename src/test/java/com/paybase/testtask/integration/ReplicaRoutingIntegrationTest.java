@@ -0,0 +1,156 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.config.ReadReplica;
+import com.paybase.testtask.config.ReplicaRoutingConfig;
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.IdempotencyKeyFilter;
+import com.paybase.testtask.service.TransactionProcessor;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs against two independent Postgres containers. The second stands in for a streaming
+ * replica: it gets the same schema, and the test writes a stale copy of the data to it, so
+ * each read shows which database served it.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {
+        "ledger.replica.enabled=true",
+        "ledger.replica.max-lag=1s",
+        "ledger.replica.lag-check-interval-ms=3600000",
+        "ledger.replica.lag-query=SELECT seconds FROM replica_lag"
+})
+class ReplicaRoutingIntegrationTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Container
+    static PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void replicaProperties(DynamicPropertyRegistry registry) {
+        registry.add("ledger.replica.url", replica::getJdbcUrl);
+        registry.add("ledger.replica.username", replica::getUsername);
+        registry.add("ledger.replica.password", replica::getPassword);
+    }
+
+    @BeforeAll
+    static void migrateReplica() {
+        Flyway.configure()
+                .dataSource(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword())
+                .load()
+                .migrate();
+        replicaJdbc().execute("CREATE TABLE replica_lag (seconds DOUBLE PRECISION NOT NULL)");
+        replicaJdbc().update("INSERT INTO replica_lag (seconds) VALUES (0)");
+    }
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionProcessor processor;
+
+    @Autowired
+    private ReadReplica readReplica;
+
+    // never claims to have seen a key, so repeated requests reach the unique-violation fallback
+    @MockitoBean
+    private IdempotencyKeyFilter keyFilter;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void replicaCaughtUp() {
+        replicaJdbc().update("UPDATE replica_lag SET seconds = 0");
+        readReplica.check();
+    }
+
+    @Test
+    void readOnlyTransactionsReadFromTheReplica() throws Exception {
+        var account = createWithStaleReplicaCopy("merchant-replica-read");
+
+        assertThat(accountService.balance(account.getId()).balance()).isEqualByComparingTo("40.00");
+        mockMvc.perform(get("/api/accounts/{id}/balance", account.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance").value(40.00));
+    }
+
+    @Test
+    void readYourWritesHeaderReadsFromThePrimary() throws Exception {
+        var account = createWithStaleReplicaCopy("merchant-replica-ryw");
+
+        mockMvc.perform(get("/api/accounts/{id}/balance", account.getId())
+                        .header(ReplicaRoutingConfig.READ_YOUR_WRITES_HEADER, "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance").value(100.00));
+    }
+
+    @Test
+    void laggingReplicaIsBypassed() {
+        var account = createWithStaleReplicaCopy("merchant-replica-lag");
+
+        replicaJdbc().update("UPDATE replica_lag SET seconds = 5");
+        readReplica.check();
+
+        assertThat(readReplica.isUsable()).isFalse();
+        assertThat(accountService.balance(account.getId()).balance()).isEqualByComparingTo("100.00");
+    }
+
+    @Test
+    void duplicateKeyIsAnsweredFromThePrimary() {
+        var account = accountService.create(new CreateAccountRequest("merchant-replica-dup", "USD", BigDecimal.ZERO));
+        var request = new TransactionRequest("replica-dup", TransactionType.DEPOSIT, null, account.getId(),
+                new BigDecimal("5.00"), "USD", null);
+
+        var first = processor.create(request);
+
+        // the replica never gets the transaction, as if it had not replayed it yet
+        assertThat(processor.create(request).getId()).isEqualTo(first.getId());
+    }
+
+    private AccountEntity createWithStaleReplicaCopy(String merchantId) {
+        var account = accountService.create(new CreateAccountRequest(merchantId, "USD", new BigDecimal("100.00")));
+        replicaJdbc().update("""
+                        INSERT INTO accounts (id, merchant_id, balance, currency, status, created_at, updated_at)
+                        VALUES (?, ?, 40.00, 'USD', 'ACTIVE', ?, ?)""",
+                account.getId(), merchantId,
+                Timestamp.from(account.getCreatedAt()), Timestamp.from(account.getCreatedAt()));
+        return account;
+    }
+
+    private static JdbcTemplate replicaJdbc() {
+        return new JdbcTemplate(new DriverManagerDataSource(
+                replica.getJdbcUrl(), replica.getUsername(), replica.getPassword()));
+    }
+}
@@ -0,0 +1,316 @@
+package com.paybase.testtask.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.paybase.testtask.config.ShardRoutingDataSource;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.BatchItemResult;
+import com.paybase.testtask.dto.BatchItemStatus;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.NotFoundException;
+import com.paybase.testtask.service.BatchTransactionService;
+import com.paybase.testtask.service.CrossShardTransfers;
+import com.paybase.testtask.service.OutboxRelay;
+import com.paybase.testtask.service.ShardRouter;
+import com.paybase.testtask.service.TransactionProcessor;
+import com.paybase.testtask.service.TransactionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Two in-memory H2 databases as shards 0 and 1, with the database concurrency limit of the
+ * {@code virtual} profile and deposit coalescing.
+ */
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@SpringBootTest(properties = {
+        "ledger.sharding.enabled=true",
+        "ledger.sharding.databases[0].url=jdbc:h2:mem:shard0;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false",
+        "ledger.sharding.databases[0].username=sa",
+        "ledger.sharding.databases[1].url=jdbc:h2:mem:shard1;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=false",
+        "ledger.sharding.databases[1].username=sa",
+        "ledger.sharding.saga-recovery-interval-ms=3600000",
+        "ledger.sharding.saga-recovery-age=0s",
+        "ledger.db-concurrency.enabled=true",
+        "ledger.deposit-coalescing.enabled=true"
+})
+class ShardingIntegrationTest {
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private ShardRoutingDataSource dataSource;
+
+    @Autowired
+    private TransactionProcessor processor;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BatchTransactionService batchTransactionService;
+
+    @Autowired
+    private CrossShardTransfers crossShardTransfers;
+
+    @Autowired
+    private OutboxRelay relay;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void cleanShards() {
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            var jdbc = jdbc(shard);
+            jdbc.update("DELETE FROM outbox_events");
+            jdbc.update("DELETE FROM merchant_balances");
+            jdbc.update("DELETE FROM merchant_daily_volumes");
+            jdbc.update("DELETE FROM transfer_sagas");
+            jdbc.update("DELETE FROM transactions");
+            jdbc.update("DELETE FROM accounts");
+        }
+    }
+
+    @Test
+    void accountsAreCreatedOnTheirMerchantsShardAndReadFromIt() throws Exception {
+        var a = open(0, "10.00");
+        var b = open(1, "20.00");
+
+        assertThat(ShardRouter.shardOf(a)).isZero();
+        assertThat(ShardRouter.shardOf(b)).isEqualTo(1);
+        assertThat(jdbc(1).queryForObject("SELECT COUNT(*) FROM accounts WHERE id = ?", Integer.class, b))
+                .isEqualTo(1);
+        assertThat(jdbc(0).queryForObject("SELECT COUNT(*) FROM accounts WHERE id = ?", Integer.class, b))
+                .isZero();
+
+        mockMvc.perform(get("/api/accounts/{id}/balance", b))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balance").value(20.00));
+
+        var deposit = processor.create(request("deposit-1", TransactionType.DEPOSIT, null, b, "5.00"));
+        assertThat(ShardRouter.shardOf(deposit.getId())).isEqualTo(1);
+        mockMvc.perform(get("/api/transactions/{id}", deposit.getId()))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void transactionIdsComeFromTheShardTheyAreWrittenTo() throws Exception {
+        long[] accounts = {open(0, "0.00"), open(1, "0.00")};
+
+        // more than one pool of ids per shard, drawn from alternately
+        for (int i = 0; i < 120; i++) {
+            int shard = i % 2;
+            var tx = processor.create(request("alternate-" + i, TransactionType.DEPOSIT, null, accounts[shard], "1.00"));
+
+            assertThat(ShardRouter.shardOf(tx.getId())).isEqualTo(shard);
+            mockMvc.perform(get("/api/transactions/{id}", tx.getId()))
+                    .andExpect(status().isOk());
+        }
+    }
+
+    @Test
+    void eachShardHasItsOwnConnectionLimit() {
+        for (int shard = 0; shard < router.shardCount(); shard++) {
+            assertThat(registry.find("ledger.db.permits.in_use").tag("shard", String.valueOf(shard)).gauge())
+                    .isNotNull();
+        }
+    }
+
+    @Test
+    void relayDrainsEveryShardIntoItsMerchantsRollups() throws Exception {
+        var account = open(1, "10.00");
+        processor.create(request("relayed-1", TransactionType.DEPOSIT, null, account, "5.00"));
+
+        relay.drain();
+
+        assertThat(jdbc(1).queryForObject("SELECT COUNT(*) FROM outbox_events", Integer.class)).isZero();
+        mockMvc.perform(get("/api/merchants/{merchantId}/summary", merchantOn(1)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currencies[0].balance").value(15.00))
+                .andExpect(jsonPath("$.currencies[0].transactions").value(1));
+    }
+
+    @Test
+    void crossShardTransferMovesBalancesAndIsIdempotent() {
+        var from = open(0, "100.00");
+        var to = open(1, "0.00");
+        var r = request("cross-1", TransactionType.TRANSFER, from, to, "40.00");
+
+        var tx = processor.create(r);
+        var retried = processor.create(r);
+
+        assertThat(retried.getId()).isEqualTo(tx.getId());
+        assertThat(balance(0, from)).isEqualByComparingTo("60.00");
+        assertThat(balance(1, to)).isEqualByComparingTo("40.00");
+        assertThat(sagaState(0, "cross-1")).isEqualTo("COMPLETED");
+    }
+
+    @Test
+    void transferToMissingAccountOnAnotherShardIsRefunded() {
+        var from = open(0, "100.00");
+        long missing = ShardRouter.firstId(1) + 1_000_000;
+
+        assertThatThrownBy(() -> processor.create(
+                request("cross-missing", TransactionType.TRANSFER, from, missing, "40.00")))
+                .isInstanceOf(NotFoundException.class);
+
+        assertThat(balance(0, from)).isEqualByComparingTo("100.00");
+        assertThat(sagaState(0, "cross-missing")).isEqualTo("COMPENSATED");
+    }
+
+    @Test
+    void recoveryCompletesATransferLeftHalfDone() {
+        var from = open(1, "100.00");
+        var to = open(0, "0.00");
+        var r = request("cross-stuck", TransactionType.TRANSFER, from, to, "25.00");
+
+        // the debit and saga row commit, then the process dies before the credit
+        router.on(1, () -> transactionTemplate.execute(status -> {
+            var debit = transactionService.debitLeg(r);
+            jdbc(1).update("""
+                            INSERT INTO transfer_sagas (idempotency_key, from_account_id, to_account_id, amount, currency,
+                                                        reference, state, debit_transaction_id, created_at, updated_at)
+                            VALUES (?, ?, ?, ?, 'USD', NULL, 'DEBITED', ?, ?, ?)""",
+                    r.idempotencyKey(), from, to, r.amount(), debit.getId(),
+                    Timestamp.from(Instant.now().minusSeconds(60)), Timestamp.from(Instant.now().minusSeconds(60)));
+            return debit;
+        }));
+        assertThat(balance(0, to)).isEqualByComparingTo("0.00");
+
+        crossShardTransfers.recover();
+
+        assertThat(balance(1, from)).isEqualByComparingTo("75.00");
+        assertThat(balance(0, to)).isEqualByComparingTo("25.00");
+        assertThat(sagaState(1, "cross-stuck")).isEqualTo("COMPLETED");
+    }
+
+    @Test
+    void keyUsedOnOneShardIsAnsweredFromItOnAnother() throws Exception {
+        var first = open(1, "0.00");
+        var second = open(0, "0.00");
+
+        long id = readId(postTransaction("reused-key", TransactionType.DEPOSIT, null, first, "5.00")
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        postTransaction("reused-key", TransactionType.DEPOSIT, null, second, "7.00")
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.transactionId").value(id));
+
+        List<BatchItemResult> results = batchTransactionService.submit(List.of(
+                request("reused-key", TransactionType.DEPOSIT, null, second, "7.00")));
+
+        assertThat(results).extracting(BatchItemResult::status).containsExactly(BatchItemStatus.DUPLICATE);
+        assertThat(results.get(0).transaction().transactionId()).isEqualTo(id);
+        assertThat(balance(1, first)).isEqualByComparingTo("5.00");
+        assertThat(balance(0, second)).isEqualByComparingTo("0.00");
+    }
+
+    @Test
+    void keyOfARejectedRequestIsOnlyFreeOnAnotherShardOnceItsOwnerIsStale() throws Exception {
+        var empty = open(1, "0.00");
+        var other = open(0, "0.00");
+
+        postTransaction("rejected-key", TransactionType.WITHDRAWAL, empty, null, "5.00")
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Insufficient funds"));
+        postTransaction("rejected-key", TransactionType.DEPOSIT, null, other, "7.00")
+                .andExpect(status().isConflict())
+                .andExpect(content().string("Idempotency key is in use by a request in progress, please retry"));
+        assertThat(balance(0, other)).isEqualByComparingTo("0.00");
+
+        jdbc(router.shardOfKey("rejected-key")).update("UPDATE idempotency_key_owners SET created_at = ?",
+                Timestamp.from(Instant.now().minusSeconds(3600)));
+
+        postTransaction("rejected-key", TransactionType.DEPOSIT, null, other, "7.00")
+                .andExpect(status().isOk());
+        assertThat(balance(0, other)).isEqualByComparingTo("7.00");
+    }
+
+    private ResultActions postTransaction(String key, TransactionType type, Long from, Long to, String amount)
+            throws Exception {
+        return mockMvc.perform(post("/api/transactions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request(key, type, from, to, amount))));
+    }
+
+    private long readId(String body) {
+        try {
+            return objectMapper.readTree(body).get("transactionId").asLong();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private long open(int shard, String balance) {
+        try {
+            var body = mockMvc.perform(post("/api/accounts")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {"merchantId": "%s", "currency": "USD", "initialBalance": %s}"""
+                                    .formatted(merchantOn(shard), balance)))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            return objectMapper.readTree(body).get("id").asLong();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private String merchantOn(int shard) {
+        for (int i = 0; ; i++) {
+            var merchantId = "merchant-shard-" + i;
+            if (router.shardOfMerchant(merchantId) == shard) {
+                return merchantId;
+            }
+        }
+    }
+
+    private BigDecimal balance(int shard, long accountId) {
+        return jdbc(shard).queryForObject("SELECT balance FROM accounts WHERE id = ?", BigDecimal.class, accountId);
+    }
+
+    private String sagaState(int shard, String key) {
+        return jdbc(shard).queryForObject("SELECT state FROM transfer_sagas WHERE idempotency_key = ?", String.class, key);
+    }
+
+    private JdbcTemplate jdbc(int shard) {
+        return new JdbcTemplate(dataSource.shards().get(shard));
+    }
+
+    private static TransactionRequest request(String key, TransactionType type, Long from, Long to, String amount) {
+        return new TransactionRequest(key, type, from, to, new BigDecimal(amount), "USD", null);
+    }
+}
@@ -0,0 +1,154 @@
+package com.paybase.testtask.integration;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.TransactionRequest;
+import com.paybase.testtask.exceptions.InsufficientFundsException;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import com.paybase.testtask.service.TransactionProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "ledger.single-writer.enabled=true",
+        "ledger.single-writer.shards=2"
+})
+class SingleWriterLedgerIntegrationTest {
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionProcessor transactionProcessor;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(20);
+
+    @BeforeEach
+    void cleanDatabase() {
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+    }
+
+    @AfterEach
+    void shutdownExecutor() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void concurrentWithdrawalsAreBatchedWithoutOverdraft() throws Exception {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-sw",
+                "USD",
+                new BigDecimal("1000.00")
+        ));
+
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String key = "sw-wd-" + i;
+            futures.add(executorService.submit(() -> {
+                try {
+                    transactionProcessor.create(new TransactionRequest(
+                            key,
+                            TransactionType.WITHDRAWAL,
+                            account.getId(),
+                            null,
+                            new BigDecimal("100.00"),
+                            "USD",
+                            "single-writer"
+                    ));
+                    return true;
+                } catch (InsufficientFundsException ex) {
+                    return false;
+                }
+            }));
+        }
+
+        int success = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(10, TimeUnit.SECONDS)) {
+                success++;
+            }
+        }
+
+        AccountEntity reloaded = accountRepository.findById(account.getId()).orElseThrow();
+        List<TransactionEntity> transactions = transactionRepository.findAll();
+
+        assertThat(success).isEqualTo(10);
+        assertThat(reloaded.getBalance()).isEqualTo(Money.of("0.00"));
+        assertThat(transactions).hasSize(10);
+        assertThat(transactions).allSatisfy(tx -> assertThat(tx.getFromBalanceAfter())
+                .isEqualTo(tx.getFromBalanceBefore().minus(tx.getAmount())));
+    }
+
+    @Test
+    void replayedKeyReturnsOriginalTransaction() {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-sw-ido",
+                "USD",
+                new BigDecimal("0.00")
+        ));
+
+        TransactionRequest request = new TransactionRequest(
+                "sw-dep-1",
+                TransactionType.DEPOSIT,
+                null,
+                account.getId(),
+                new BigDecimal("250.00"),
+                "USD",
+                "deposit"
+        );
+
+        TransactionEntity first = transactionProcessor.create(request);
+        TransactionEntity second = transactionProcessor.create(request);
+
+        assertThat(second.getId()).isEqualTo(first.getId());
+        assertThat(accountRepository.findById(account.getId()).orElseThrow().getBalance())
+                .isEqualTo(Money.of("250.00"));
+        assertThat(transactionRepository.findAll()).hasSize(1);
+    }
+
+    @Test
+    void insufficientFundsIsRaisedToCaller() {
+        AccountEntity account = accountService.create(new CreateAccountRequest(
+                "merchant-sw-nsf",
+                "USD",
+                new BigDecimal("10.00")
+        ));
+
+        assertThatThrownBy(() -> transactionProcessor.create(new TransactionRequest(
+                "sw-wd-nsf",
+                TransactionType.WITHDRAWAL,
+                account.getId(),
+                null,
+                new BigDecimal("25.00"),
+                "USD",
+                "withdraw"
+        ))).isInstanceOf(InsufficientFundsException.class);
+
+        assertThat(transactionRepository.findAll()).isEmpty();
+    }
+}
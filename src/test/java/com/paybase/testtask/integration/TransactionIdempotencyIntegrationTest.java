@@ -1,6 +1,7 @@
 package com.paybase.testtask.integration;
 
 import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 import com.paybase.testtask.dto.CreateAccountRequest;
@@ -67,9 +68,9 @@ class TransactionIdempotencyIntegrationTest {
         List<TransactionEntity> transactions = transactionRepository.findAll();
 
         assertThat(first.getId()).isEqualTo(second.getId());
-        assertThat(reloaded.getBalance()).isEqualByComparingTo("500.00");
+        assertThat(reloaded.getBalance()).isEqualTo(Money.of("500.00"));
         assertThat(transactions).hasSize(1);
         assertThat(transactions.get(0).getToBalanceAfter())
-                .isEqualByComparingTo("500.00");
+                .isEqualTo(Money.of("500.00"));
     }
 }
@@ -1,6 +1,7 @@
 package com.paybase.testtask.integration;
 
 import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 import com.paybase.testtask.dto.CreateAccountRequest;
@@ -72,10 +73,10 @@ class TransferAtomicityIntegrationTest {
         AccountEntity reloadedFrom = accountRepository.findById(from.getId()).orElseThrow();
         AccountEntity reloadedTo = accountRepository.findById(to.getId()).orElseThrow();
 
-        assertThat(reloadedFrom.getBalance()).isEqualByComparingTo("0.00");
-        assertThat(reloadedTo.getBalance()).isEqualByComparingTo("300.00");
-        assertThat(tx.getFromBalanceAfter()).isEqualByComparingTo("0.00");
-        assertThat(tx.getToBalanceAfter()).isEqualByComparingTo("300.00");
+        assertThat(reloadedFrom.getBalance()).isEqualTo(Money.of("0.00"));
+        assertThat(reloadedTo.getBalance()).isEqualTo(Money.of("300.00"));
+        assertThat(tx.getFromBalanceAfter()).isEqualTo(Money.of("0.00"));
+        assertThat(tx.getToBalanceAfter()).isEqualTo(Money.of("300.00"));
     }
 
     @Test
@@ -108,8 +109,8 @@ class TransferAtomicityIntegrationTest {
         AccountEntity reloadedTo = accountRepository.findById(to.getId()).orElseThrow();
         List<TransactionEntity> transactions = transactionRepository.findAll();
 
-        assertThat(reloadedFrom.getBalance()).isEqualByComparingTo("100.00");
-        assertThat(reloadedTo.getBalance()).isEqualByComparingTo("50.00");
+        assertThat(reloadedFrom.getBalance()).isEqualTo(Money.of("100.00"));
+        assertThat(reloadedTo.getBalance()).isEqualTo(Money.of("50.00"));
         assertThat(transactions).isEmpty();
     }
 }
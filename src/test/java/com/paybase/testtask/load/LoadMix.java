@@ -0,0 +1,119 @@
+package com.paybase.testtask.load;
+
+import com.paybase.testtask.domain.TransactionType;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shapes of traffic the harness can generate. Every mix also sends
+ * {@code load.balanceRatio} of its requests as balance reads.
+ */
+enum LoadMix {
+
+    /** Deposits and withdrawals where {@code load.hotRatio} of writes hit one account. */
+    HOT_ACCOUNT {
+        @Override
+        Operation nextWrite(LoadSettings settings, List<Long> accounts, Keys keys) {
+            var random = ThreadLocalRandom.current();
+            long account = random.nextDouble() < settings.hotRatio()
+                    ? accounts.get(0)
+                    : accounts.get(random.nextInt(accounts.size()));
+            return random.nextBoolean()
+                    ? Operation.write(TransactionType.DEPOSIT, keys.fresh(), null, account)
+                    : Operation.write(TransactionType.WITHDRAWAL, keys.fresh(), account, null);
+        }
+    },
+
+    /**
+     * Transfers along a fixed graph where each account has {@code load.fanout} neighbours
+     * and money flows both ways, so opposing transfers on the same pair are common.
+     */
+    TRANSFER_GRAPH {
+        @Override
+        Operation nextWrite(LoadSettings settings, List<Long> accounts, Keys keys) {
+            var random = ThreadLocalRandom.current();
+            int from = random.nextInt(accounts.size());
+            int to = (from + 1 + random.nextInt(Math.max(settings.fanout(), 1))) % accounts.size();
+            return Operation.write(TransactionType.TRANSFER, keys.fresh(), accounts.get(from), accounts.get(to));
+        }
+    },
+
+    /** Deposits where {@code load.duplicateRatio} of requests replay a recently used key. */
+    DUPLICATE_KEYS {
+        @Override
+        Operation nextWrite(LoadSettings settings, List<Long> accounts, Keys keys) {
+            var random = ThreadLocalRandom.current();
+            String key = random.nextDouble() < settings.duplicateRatio() ? keys.recent() : keys.fresh();
+            long account = accounts.get(Math.floorMod(key.hashCode(), accounts.size()));
+            return Operation.write(TransactionType.DEPOSIT, key, null, account);
+        }
+    },
+
+    /** Uniform deposits, withdrawals and transfers in a 2:1:1 ratio. */
+    MIXED {
+        @Override
+        Operation nextWrite(LoadSettings settings, List<Long> accounts, Keys keys) {
+            var random = ThreadLocalRandom.current();
+            long a = accounts.get(random.nextInt(accounts.size()));
+            long b = accounts.get(random.nextInt(accounts.size()));
+            return switch (random.nextInt(4)) {
+                case 0, 1 -> Operation.write(TransactionType.DEPOSIT, keys.fresh(), null, a);
+                case 2 -> Operation.write(TransactionType.WITHDRAWAL, keys.fresh(), a, null);
+                default -> Operation.write(TransactionType.TRANSFER, keys.fresh(), a, b);
+            };
+        }
+    };
+
+    Operation next(LoadSettings settings, List<Long> accounts, Keys keys) {
+        var random = ThreadLocalRandom.current();
+        if (random.nextDouble() < settings.balanceRatio()) {
+            return Operation.balance(accounts.get(random.nextInt(accounts.size())));
+        }
+        return nextWrite(settings, accounts, keys);
+    }
+
+    abstract Operation nextWrite(LoadSettings settings, List<Long> accounts, Keys keys);
+
+    /**
+     * A single request. {@code type} is null for balance reads.
+     */
+    record Operation(String name, TransactionType type, String key, Long fromAccountId, Long toAccountId) {
+
+        static Operation write(TransactionType type, String key, Long from, Long to) {
+            return new Operation(type.name(), type, key, from, to);
+        }
+
+        static Operation balance(Long accountId) {
+            return new Operation("BALANCE", null, null, accountId, null);
+        }
+    }
+
+    /**
+     * Per-client key source; remembers a window of recent keys for replays.
+     */
+    static final class Keys {
+
+        private final String prefix;
+        private final String[] recent = new String[64];
+        private long sequence;
+
+        Keys(String prefix) {
+            this.prefix = prefix;
+        }
+
+        String fresh() {
+            String key = prefix + "-" + sequence;
+            recent[(int) (sequence++ % recent.length)] = key;
+            return key;
+        }
+
+        String recent() {
+            if (sequence == 0) {
+                return fresh();
+            }
+            int window = (int) Math.min(sequence, recent.length);
+            return recent[(int) ((sequence - 1 - ThreadLocalRandom.current().nextInt(window)) % recent.length)];
+        }
+    }
+}
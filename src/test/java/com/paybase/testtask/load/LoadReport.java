@@ -0,0 +1,88 @@
+package com.paybase.testtask.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and error counts per operation (transaction type or balance read).
+ */
+final class LoadReport {
+
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, LongAdder>> errors = new ConcurrentHashMap<>();
+
+    void record(String operation, long latencyNanos, String error) {
+        latencies.computeIfAbsent(operation, op -> new ConcurrentHistogram(MAX_LATENCY, 3))
+                .recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY));
+        if (error != null) {
+            errors.computeIfAbsent(operation, op -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(error, e -> new LongAdder())
+                    .increment();
+        }
+    }
+
+    long requests() {
+        return latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    long errors(String operation, String error) {
+        var byError = errors.getOrDefault(operation, Map.of());
+        return byError.containsKey(error) ? byError.get(error).sum() : 0;
+    }
+
+    void print(String title, double seconds, PrintStream out) {
+        out.printf("%n=== %s: %d requests in %.1f s, %.0f req/s ===%n", title, requests(), seconds, requests() / seconds);
+        out.printf("%-12s %10s %9s %9s %9s %9s %9s %9s  %s%n",
+                "operation", "count", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        new TreeMap<>(latencies).forEach((operation, histogram) -> out.printf(
+                "%-12s %10d %9.0f %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                operation,
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()),
+                errorSummary(operation)));
+    }
+
+    /**
+     * Writes one HdrHistogram percentile distribution per operation, in the format the
+     * HdrHistogram plotter reads.
+     */
+    void writeDistributions(Path directory, String prefix) throws IOException {
+        Files.createDirectories(directory);
+        for (var entry : latencies.entrySet()) {
+            try (var out = new PrintStream(Files.newOutputStream(directory.resolve(prefix + "-" + entry.getKey() + ".hgrm")))) {
+                entry.getValue().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private String errorSummary(String operation) {
+        var byError = errors.get(operation);
+        if (byError == null) {
+            return "-";
+        }
+        var summary = new StringBuilder();
+        new TreeMap<>(byError).forEach((error, count) -> summary.append(error).append('=').append(count.sum()).append(' '));
+        return summary.toString().trim();
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,42 @@
+package com.paybase.testtask.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Knobs for {@link TransactionLoadTest}, read from system properties so a run can be
+ * shaped from the command line, e.g. {@code -Dload.clients=128 -Dload.duration=2m}.
+ */
+record LoadSettings(
+        Set<LoadMix> mixes,
+        int clients,
+        int accounts,
+        Duration warmup,
+        Duration duration,
+        double hotRatio,
+        int fanout,
+        double duplicateRatio,
+        double balanceRatio
+) {
+
+    static LoadSettings fromSystemProperties() {
+        String mixes = System.getProperty("load.mixes", "");
+        return new LoadSettings(
+                mixes.isBlank()
+                        ? EnumSet.allOf(LoadMix.class)
+                        : Arrays.stream(mixes.split(",")).map(String::trim).map(LoadMix::valueOf)
+                                .collect(Collectors.toCollection(() -> EnumSet.noneOf(LoadMix.class))),
+                Integer.getInteger("load.clients", 64),
+                Integer.getInteger("load.accounts", 200),
+                Duration.parse("PT" + System.getProperty("load.warmup", "5s")),
+                Duration.parse("PT" + System.getProperty("load.duration", "30s")),
+                Double.parseDouble(System.getProperty("load.hotRatio", "0.8")),
+                Integer.getInteger("load.fanout", 3),
+                Double.parseDouble(System.getProperty("load.duplicateRatio", "0.3")),
+                Double.parseDouble(System.getProperty("load.balanceRatio", "0.1"))
+        );
+    }
+}
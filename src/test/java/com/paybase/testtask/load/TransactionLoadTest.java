@@ -0,0 +1,175 @@
+package com.paybase.testtask.load;
+
+import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.repository.AccountRepository;
+import com.paybase.testtask.repository.TransactionRepository;
+import com.paybase.testtask.service.AccountService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Drives the HTTP API against a real Postgres with the traffic shapes in {@link LoadMix}
+ * and prints throughput, latency percentiles and error counts per operation. Needs docker;
+ * run with {@code mvn test -Pload}, see {@link LoadSettings} for the knobs.
+ */
+@Tag("load")
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class TransactionLoadTest {
+
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000.00");
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private final LoadSettings settings = LoadSettings.fromSystemProperties();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    private final List<Long> accounts = new ArrayList<>();
+
+    @BeforeEach
+    void seedAccounts() {
+        transactionRepository.deleteAll();
+        accountRepository.deleteAll();
+        for (int i = 0; i < settings.accounts(); i++) {
+            AccountEntity account = accountService.create(new CreateAccountRequest(
+                    "load-" + i, "USD", OPENING_BALANCE));
+            accounts.add(account.getId());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoadMix.class)
+    void run(LoadMix mix) throws Exception {
+        assumeTrue(settings.mixes().contains(mix), () -> mix + " not selected in load.mixes");
+
+        HttpClient http = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(Math.max(settings.clients() / 4, 4)))
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        ExecutorService clients = Executors.newFixedThreadPool(settings.clients());
+        LoadReport report = new LoadReport();
+
+        long started = System.nanoTime();
+        long measureFrom = started + settings.warmup().toNanos();
+        long deadline = measureFrom + settings.duration().toNanos();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < settings.clients(); c++) {
+            var keys = new LoadMix.Keys(mix + "-" + c);
+            futures.add(clients.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    var operation = mix.next(settings, accounts, keys);
+                    long begin = System.nanoTime();
+                    String error = send(http, operation);
+                    if (begin >= measureFrom) {
+                        report.record(operation.name(), System.nanoTime() - begin, error);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(settings.warmup().plus(settings.duration()).toSeconds() + 60, TimeUnit.SECONDS);
+        }
+        clients.shutdownNow();
+
+        report.print(mix.name(), settings.duration().toNanos() / 1e9, System.out);
+        report.writeDistributions(Path.of("target", "load"), mix.name());
+
+        for (TransactionType type : TransactionType.values()) {
+            assertThat(report.errors(type.name(), "500")).as("server errors for %s", type).isZero();
+        }
+        assertThat(report.errors("BALANCE", "500")).isZero();
+        assertLedgerBalances();
+    }
+
+    private String send(HttpClient http, LoadMix.Operation operation) {
+
+        var request = HttpRequest.newBuilder().timeout(Duration.ofSeconds(30));
+        if (operation.type() == null) {
+            request.uri(uri("/api/accounts/" + operation.fromAccountId() + "/balance")).GET();
+        } else {
+            String body = """
+                    {"idempotencyKey":"%s","type":"%s","fromAccountId":%s,"toAccountId":%s,\
+                    "amount":%s,"currency":"USD","reference":"load"}"""
+                    .formatted(operation.key(), operation.type(), operation.fromAccountId(),
+                            operation.toAccountId(), AMOUNT.toPlainString());
+            request.uri(uri("/api/transactions"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+        }
+
+        try {
+            int status = http.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            return status < 300 ? null : String.valueOf(status);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return ex.getClass().getSimpleName();
+        } catch (Exception ex) {
+            return ex.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Money is only created by deposits and destroyed by withdrawals, whatever the mix.
+     */
+    private void assertLedgerBalances() {
+        BigDecimal expected = OPENING_BALANCE.multiply(BigDecimal.valueOf(accounts.size()));
+        for (TransactionEntity tx : transactionRepository.findAll()) {
+            switch (tx.getType()) {
+                case DEPOSIT, REFUND -> expected = expected.add(tx.getAmount().toBigDecimal());
+                case WITHDRAWAL, FEE -> expected = expected.subtract(tx.getAmount().toBigDecimal());
+                case TRANSFER -> {
+                }
+            }
+        }
+        BigDecimal actual = accountRepository.findAll().stream()
+                .map(account -> account.getBalance().toBigDecimal())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(actual).isEqualByComparingTo(expected);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
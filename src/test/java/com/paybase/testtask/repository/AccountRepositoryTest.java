@@ -2,14 +2,15 @@ package com.paybase.testtask.repository;
 
 import com.paybase.testtask.domain.AccountEntity;
 import com.paybase.testtask.domain.AccountStatus;
+import com.paybase.testtask.domain.Money;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
 import org.springframework.test.context.ActiveProfiles;
 
-import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -26,7 +27,7 @@ class AccountRepositoryTest {
         AccountEntity account = new AccountEntity();
         account.setMerchantId("merchant-1");
         account.setCurrency("USD");
-        account.setBalance(new BigDecimal("100.00"));
+        account.setBalance(Money.of("100.00"));
         account.setStatus(AccountStatus.ACTIVE);
         account.setCreatedAt(Instant.now());
 
@@ -38,4 +39,24 @@ class AccountRepositoryTest {
                 .extracting(AccountEntity::getMerchantId)
                 .isEqualTo("merchant-1");
     }
+
+    @Test
+    void lockAllByIdReturnsAccountsInAscendingIdOrder() {
+        AccountEntity first = accountRepository.save(account("merchant-2"));
+        AccountEntity second = accountRepository.save(account("merchant-3"));
+
+        assertThat(accountRepository.lockAllById(List.of(second.getId(), first.getId())))
+                .extracting(AccountEntity::getId)
+                .containsExactly(first.getId(), second.getId());
+    }
+
+    private static AccountEntity account(String merchantId) {
+        AccountEntity account = new AccountEntity();
+        account.setMerchantId(merchantId);
+        account.setCurrency("USD");
+        account.setBalance(Money.of("100.00"));
+        account.setStatus(AccountStatus.ACTIVE);
+        account.setCreatedAt(Instant.now());
+        return account;
+    }
 }
@@ -2,16 +2,18 @@ package com.paybase.testtask.repository;
 
 import com.paybase.testtask.domain.AccountEntity;
 import com.paybase.testtask.domain.AccountStatus;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
-import java.math.BigDecimal;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -28,11 +30,11 @@ class TransactionRepositoryTest {
     private TransactionRepository transactionRepository;
 
     @Test
-    void findByIdempotencyKeyReturnsStoredTransaction() {
+    void findByIdAndCreatedAtReturnsStoredTransaction() {
         AccountEntity account = new AccountEntity();
         account.setMerchantId("merchant-1");
         account.setCurrency("USD");
-        account.setBalance(new BigDecimal("100.00"));
+        account.setBalance(Money.of("100.00"));
         account.setStatus(AccountStatus.ACTIVE);
         account.setCreatedAt(Instant.now());
         AccountEntity savedAccount = accountRepository.save(account);
@@ -41,16 +43,16 @@ class TransactionRepositoryTest {
         tx.setIdempotencyKey("key-1");
         tx.setType(TransactionType.DEPOSIT);
         tx.setToAccountId(savedAccount.getId());
-        tx.setAmount(new BigDecimal("25.00"));
+        tx.setAmount(Money.of("25.00"));
         tx.setCurrency("USD");
         tx.setStatus("COMPLETED");
-        tx.setToBalanceBefore(new BigDecimal("100.00"));
-        tx.setToBalanceAfter(new BigDecimal("125.00"));
-        tx.setCreatedAt(Instant.now());
+        tx.setToBalanceBefore(Money.of("100.00"));
+        tx.setToBalanceAfter(Money.of("125.00"));
+        tx.setCreatedAt(Instant.now().truncatedTo(ChronoUnit.MICROS));
 
-        transactionRepository.save(tx);
+        TransactionEntity saved = transactionRepository.save(tx);
 
-        assertThat(transactionRepository.findByIdempotencyKey("key-1"))
+        assertThat(transactionRepository.findByIdAndCreatedAt(saved.getId(), saved.getCreatedAt()))
                 .isPresent()
                 .get()
                 .extracting(TransactionEntity::getStatus)
@@ -58,11 +60,11 @@ class TransactionRepositoryTest {
     }
 
     @Test
-    void findAllByFromOrToAccountReturnsOrderedTransactions() {
+    void debitPageReturnsOrderedTransactions() {
         AccountEntity account = new AccountEntity();
         account.setMerchantId("merchant-2");
         account.setCurrency("USD");
-        account.setBalance(new BigDecimal("200.00"));
+        account.setBalance(Money.of("200.00"));
         account.setStatus(AccountStatus.ACTIVE);
         account.setCreatedAt(Instant.now());
         AccountEntity savedAccount = accountRepository.save(account);
@@ -71,30 +73,34 @@ class TransactionRepositoryTest {
         first.setIdempotencyKey("key-2");
         first.setType(TransactionType.WITHDRAWAL);
         first.setFromAccountId(savedAccount.getId());
-        first.setAmount(new BigDecimal("10.00"));
+        first.setAmount(Money.of("10.00"));
         first.setCurrency("USD");
         first.setStatus("COMPLETED");
-        first.setFromBalanceBefore(new BigDecimal("200.00"));
-        first.setFromBalanceAfter(new BigDecimal("190.00"));
+        first.setFromBalanceBefore(Money.of("200.00"));
+        first.setFromBalanceAfter(Money.of("190.00"));
         first.setCreatedAt(Instant.now().minusSeconds(60));
 
         TransactionEntity second = new TransactionEntity();
         second.setIdempotencyKey("key-3");
         second.setType(TransactionType.WITHDRAWAL);
         second.setFromAccountId(savedAccount.getId());
-        second.setAmount(new BigDecimal("5.00"));
+        second.setAmount(Money.of("5.00"));
         second.setCurrency("USD");
         second.setStatus("COMPLETED");
-        second.setFromBalanceBefore(new BigDecimal("190.00"));
-        second.setFromBalanceAfter(new BigDecimal("185.00"));
+        second.setFromBalanceBefore(Money.of("190.00"));
+        second.setFromBalanceAfter(Money.of("185.00"));
         second.setCreatedAt(Instant.now());
 
         transactionRepository.saveAll(List.of(second, first));
 
         List<TransactionEntity> results =
-                transactionRepository.findAllByFromAccountIdOrToAccountIdOrderByCreatedAt(
+                transactionRepository.findDebitPage(
                         savedAccount.getId(),
-                        savedAccount.getId()
+                        Instant.EPOCH,
+                        Instant.now().plusSeconds(60),
+                        Instant.EPOCH,
+                        0L,
+                        Limit.of(10)
                 );
 
         assertThat(results).hasSize(2);
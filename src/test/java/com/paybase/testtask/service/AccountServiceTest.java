@@ -2,8 +2,12 @@ package com.paybase.testtask.service;
 
 import com.paybase.testtask.domain.AccountEntity;
 import com.paybase.testtask.domain.AccountStatus;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.dto.BalanceResponse;
 import com.paybase.testtask.dto.CreateAccountRequest;
+import com.paybase.testtask.dto.StatementCursor;
+import com.paybase.testtask.dto.StatementPage;
 import com.paybase.testtask.exceptions.NotFoundException;
 import com.paybase.testtask.repository.AccountRepository;
 import com.paybase.testtask.repository.TransactionRepository;
@@ -13,6 +17,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -21,6 +26,9 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -33,6 +41,12 @@ class AccountServiceTest {
     @Mock
     private TransactionRepository transactionRepository;
 
+    @Mock
+    private BalanceCache balanceCache;
+
+    @Mock
+    private MerchantRollups rollups;
+
     @InjectMocks
     private AccountService accountService;
 
@@ -55,7 +69,7 @@ class AccountServiceTest {
         AccountEntity saved = captor.getValue();
         assertThat(saved.getMerchantId()).isEqualTo("merchant-1");
         assertThat(saved.getCurrency()).isEqualTo("USD");
-        assertThat(saved.getBalance()).isEqualByComparingTo("25.00");
+        assertThat(saved.getBalance()).isEqualTo(Money.of("25.00"));
         assertThat(saved.getStatus()).isEqualTo(AccountStatus.ACTIVE);
         assertThat(saved.getCreatedAt()).isNotNull();
         assertThat(result).isSameAs(saved);
@@ -63,27 +77,88 @@ class AccountServiceTest {
 
     @Test
     void balanceThrowsNotFoundWhenAccountMissing() {
-        when(accountRepository.findByIdForRead(99L)).thenReturn(Optional.empty());
+        when(accountRepository.findById(99L)).thenReturn(Optional.empty());
 
         assertThatThrownBy(() -> accountService.balance(99L))
                 .isInstanceOf(NotFoundException.class);
     }
 
     @Test
-    void statementReturnsTransactionsForAccount() {
+    void balanceReportsLastModificationTime() {
         AccountEntity account = new AccountEntity();
-        account.setId(10L);
-        account.setCreatedAt(Instant.now());
+        account.setId(7L);
+        account.setBalance(Money.of("12.50"));
+        account.setCurrency("EUR");
+        account.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+        account.setUpdatedAt(Instant.parse("2024-03-01T12:00:00Z"));
+
+        when(accountRepository.findById(7L)).thenReturn(Optional.of(account));
+
+        BalanceResponse result = accountService.balance(7L);
+
+        assertThat(result.balance()).isEqualByComparingTo("12.50");
+        assertThat(result.lastUpdated()).isEqualTo(Instant.parse("2024-03-01T12:00:00Z"));
+        verify(balanceCache).put(result);
+    }
+
+    @Test
+    void balanceIsServedFromCacheWhenFresh() {
+        BalanceResponse cached = new BalanceResponse(8L, new BigDecimal("1.00"), "USD", Instant.now());
+        when(balanceCache.get(8L)).thenReturn(Optional.of(cached));
+
+        assertThat(accountService.balance(8L)).isSameAs(cached);
+        verify(accountRepository, never()).findById(8L);
+    }
+
+    @Test
+    void statementMergesDebitsAndCreditsInCreationOrder() {
+        TransactionEntity credit = new TransactionEntity();
+        credit.setId(5L);
+        credit.setCreatedAt(Instant.parse("2024-01-02T10:00:00Z"));
+
+        TransactionEntity debit = new TransactionEntity();
+        debit.setId(6L);
+        debit.setCreatedAt(Instant.parse("2024-01-03T10:00:00Z"));
+
+        when(accountRepository.existsById(10L)).thenReturn(true);
+        when(transactionRepository.findDebitPage(eq(10L), any(), any(), any(), any(), eq(Limit.of(3))))
+                .thenReturn(List.of(debit));
+        when(transactionRepository.findCreditPage(eq(10L), any(), any(), any(), any(), eq(Limit.of(3))))
+                .thenReturn(List.of(credit));
+
+        StatementPage result = accountService.statement(10L, null, null, null, 2);
 
-        TransactionEntity transaction = new TransactionEntity();
-        transaction.setId(5L);
+        assertThat(result.items()).containsExactly(credit, debit);
+        assertThat(result.nextCursor()).isNull();
+    }
+
+    @Test
+    void statementReturnsCursorWhenMoreRowsExist() {
+        TransactionEntity first = new TransactionEntity();
+        first.setId(1L);
+        first.setCreatedAt(Instant.parse("2024-01-01T10:00:00Z"));
 
-        when(accountRepository.findByIdForRead(10L)).thenReturn(Optional.of(account));
-        when(transactionRepository.findAllByFromAccountIdOrToAccountIdOrderByCreatedAt(10L, 10L))
-                .thenReturn(List.of(transaction));
+        TransactionEntity second = new TransactionEntity();
+        second.setId(2L);
+        second.setCreatedAt(Instant.parse("2024-01-01T11:00:00Z"));
 
-        List<TransactionEntity> result = accountService.statement(10L);
+        when(accountRepository.existsById(10L)).thenReturn(true);
+        when(transactionRepository.findDebitPage(eq(10L), any(), any(), any(), any(), eq(Limit.of(2))))
+                .thenReturn(List.of(first, second));
+        when(transactionRepository.findCreditPage(eq(10L), any(), any(), any(), any(), eq(Limit.of(2))))
+                .thenReturn(List.of());
 
-        assertThat(result).containsExactly(transaction);
+        StatementPage result = accountService.statement(10L, null, null, null, 1);
+
+        assertThat(result.items()).containsExactly(first);
+        assertThat(StatementCursor.decode(result.nextCursor())).isEqualTo(StatementCursor.after(first));
+    }
+
+    @Test
+    void statementThrowsNotFoundWhenAccountMissing() {
+        when(accountRepository.existsById(99L)).thenReturn(false);
+
+        assertThatThrownBy(() -> accountService.statement(99L, null, null, null, 10))
+                .isInstanceOf(NotFoundException.class);
     }
 }
@@ -0,0 +1,45 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.BalanceCacheProperties;
+import com.paybase.testtask.dto.BalanceResponse;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceCacheTest {
+
+    @Test
+    void olderBalanceDoesNotReplaceNewerOne() {
+        BalanceCache cache = new BalanceCache(new BalanceCacheProperties(true, Duration.ofMinutes(1)));
+        Instant now = Instant.now();
+
+        cache.put(new BalanceResponse(1L, new BigDecimal("20.00"), "USD", now));
+        cache.put(new BalanceResponse(1L, new BigDecimal("10.00"), "USD", now.minusMillis(5)));
+
+        assertThat(cache.get(1L)).get()
+                .extracting(BalanceResponse::balance)
+                .isEqualTo(new BigDecimal("20.00"));
+    }
+
+    @Test
+    void entriesOlderThanMaxStalenessAreIgnored() {
+        BalanceCache cache = new BalanceCache(new BalanceCacheProperties(true, Duration.ZERO));
+
+        cache.put(new BalanceResponse(1L, new BigDecimal("20.00"), "USD", Instant.now()));
+
+        assertThat(cache.get(1L)).isEmpty();
+    }
+
+    @Test
+    void disabledCacheNeverServesEntries() {
+        BalanceCache cache = new BalanceCache(new BalanceCacheProperties(false, Duration.ofMinutes(1)));
+
+        cache.put(new BalanceResponse(1L, new BigDecimal("20.00"), "USD", Instant.now()));
+
+        assertThat(cache.get(1L)).isEmpty();
+    }
+}
@@ -0,0 +1,61 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ConcurrencyProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContentionTrackerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void pessimisticModeAlwaysLocks() {
+        var tracker = tracker(ConcurrencyProperties.Mode.PESSIMISTIC);
+
+        assertThat(tracker.optimistic()).isFalse();
+        assertThat(tracker.shouldLock(1L)).isTrue();
+    }
+
+    @Test
+    void hotAccountFallsBackToRowLocking() {
+        var tracker = tracker(ConcurrencyProperties.Mode.OPTIMISTIC);
+
+        assertThat(tracker.shouldLock(1L)).isFalse();
+
+        tracker.recordConflict(List.of(1L));
+        assertThat(tracker.shouldLock(1L)).isFalse();
+
+        tracker.recordConflict(List.of(1L));
+        tracker.recordConflict(List.of(1L));
+
+        assertThat(tracker.shouldLock(1L)).isTrue();
+        assertThat(tracker.shouldLock(2L)).isFalse();
+        assertThat(registry.counter("ledger.optimistic.fallbacks").count()).isEqualTo(1.0);
+        assertThat(registry.counter("ledger.optimistic.conflicts").count()).isEqualTo(3.0);
+    }
+
+    @Test
+    void occasionalConflictsDoNotTriggerFallback() {
+        var tracker = tracker(ConcurrencyProperties.Mode.OPTIMISTIC);
+
+        for (int i = 0; i < 20; i++) {
+            tracker.recordConflict(List.of(1L));
+            for (int j = 0; j < 9; j++) {
+                tracker.recordSuccess(List.of(1L));
+            }
+        }
+
+        assertThat(tracker.shouldLock(1L)).isFalse();
+    }
+
+    private ContentionTracker tracker(ConcurrencyProperties.Mode mode) {
+        var props = new ConcurrencyProperties(mode, 5, Duration.ofMillis(5), Duration.ofMillis(5),
+                Duration.ofMillis(100), 0.3, Duration.ofMinutes(1));
+        return new ContentionTracker(props, registry);
+    }
+}
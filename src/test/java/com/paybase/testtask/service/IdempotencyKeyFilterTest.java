@@ -0,0 +1,91 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.IdempotencyKeyFilterProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyKeyFilterTest {
+
+    @Mock
+    private IdempotencyStore keys;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void addedKeysAreAlwaysReportedAsPossiblyPresent() {
+        IdempotencyKeyFilter filter = filter(true, 1_000);
+
+        IntStream.range(0, 5_000).forEach(i -> filter.put("key-" + i));
+
+        assertThat(IntStream.range(0, 5_000)).allMatch(i -> filter.mightContain("key-" + i));
+        assertThat(filter.size()).isEqualTo(5_000);
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTargetAfterGrowing() {
+        IdempotencyKeyFilter filter = filter(true, 1_000);
+
+        IntStream.range(0, 10_000).forEach(i -> filter.put("key-" + i));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> filter.mightContain("other-" + i))
+                .count();
+
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+        assertThat(filter.expectedFalsePositiveRate()).isLessThan(0.02);
+        assertThat(registry.get("ledger.idempotency.filter.memory").gauge().value()).isPositive();
+    }
+
+    @Test
+    void fullFilterStopsGrowingAndLooksUpEveryKey() {
+        IdempotencyKeyFilter filter = filter(true, 1_000, 2);
+
+        IntStream.range(0, 5_000).forEach(i -> filter.put("key-" + i));
+
+        assertThat(filter.size()).isEqualTo(3_000);
+        assertThat(filter.mightContain("never-added")).isTrue();
+        assertThat(filter.expectedFalsePositiveRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    void rebuildKeepsOnlyTheRecentKeys() {
+        IdempotencyKeyFilter filter = filter(true, 1_000, 2);
+        IntStream.range(0, 5_000).forEach(i -> filter.put("key-" + i));
+        when(keys.recentKeys(10)).thenReturn(List.of("key-recent"));
+
+        filter.rebuild();
+
+        assertThat(filter.size()).isEqualTo(1);
+        assertThat(filter.mightContain("key-recent")).isTrue();
+        assertThat(filter.mightContain("never-added")).isFalse();
+    }
+
+    @Test
+    void disabledFilterTreatsEveryKeyAsPossiblyPresent() {
+        IdempotencyKeyFilter filter = filter(false, 1_000);
+
+        assertThat(filter.mightContain("never-added")).isTrue();
+    }
+
+    private IdempotencyKeyFilter filter(boolean enabled, int capacity) {
+        return filter(enabled, capacity, 4);
+    }
+
+    private IdempotencyKeyFilter filter(boolean enabled, int capacity, int maxStages) {
+        return new IdempotencyKeyFilter(
+                new IdempotencyKeyFilterProperties(enabled, capacity, 0.01, 10, maxStages, 86400000),
+                keys,
+                registry
+        );
+    }
+}
@@ -0,0 +1,148 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.JournalProperties;
+import com.paybase.testtask.domain.Money;
+import com.paybase.testtask.domain.TransactionEntity;
+import com.paybase.testtask.domain.TransactionType;
+import com.paybase.testtask.dto.JournalEntry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LedgerJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<LedgerJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (var journal : opened) {
+            journal.destroy();
+        }
+    }
+
+    @Test
+    void concurrentAppendsAreReadBackAcrossSegments() throws Exception {
+        var journal = open(DataSize.ofKilobytes(8));
+
+        var pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long first = t * 250L;
+            futures.add(pool.submit(() -> LongStream.range(first, first + 250).forEach(id -> {
+                journal.appendAfterCommit(transaction(id));
+                journal.awaitPending();
+            })));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        List<JournalEntry> entries = new ArrayList<>();
+        assertThat(journal.reader(0).replay(entries::add)).isEqualTo(2000);
+        assertThat(entries).extracting(JournalEntry::transactionId)
+                .containsExactlyInAnyOrderElementsOf(LongStream.range(0, 2000).boxed().toList());
+        assertThat(JournalCodec.segments(directory)).hasSizeGreaterThan(1);
+
+        var sample = entries.stream().filter(e -> e.transactionId() == 7).findFirst().orElseThrow();
+        assertThat(sample.idempotencyKey()).isEqualTo("key-7");
+        assertThat(sample.type()).isEqualTo(TransactionType.TRANSFER);
+        assertThat(sample.fromAccountId()).isEqualTo(1L);
+        assertThat(sample.toAccountId()).isNull();
+        assertThat(sample.amount()).isEqualTo(Money.of("7.5"));
+        assertThat(sample.toBalanceAfter()).isNull();
+        assertThat(sample.reference()).isNull();
+        assertThat(sample.createdAt()).isEqualTo(Instant.ofEpochSecond(1_700_000_000L, 7));
+        assertThat(registry.get("ledger.journal.group.size").summary().totalAmount()).isEqualTo(2000);
+    }
+
+    @Test
+    void readerResumesFromOffsetAndTailsNewEntries() throws Exception {
+        var journal = open(DataSize.ofKilobytes(8));
+        for (long id = 0; id < 10; id++) {
+            journal.appendAfterCommit(transaction(id));
+        }
+        journal.awaitPending();
+
+        var reader = journal.reader(0);
+        for (int i = 0; i < 4; i++) {
+            reader.next();
+        }
+        var resumed = journal.reader(reader.position());
+        assertThat(resumed.next().transactionId()).isEqualTo(4);
+
+        assertThat(reader.replay(e -> { })).isEqualTo(6);
+        assertThat(reader.next()).isNull();
+
+        journal.appendAfterCommit(transaction(10));
+        journal.awaitPending();
+        assertThat(reader.next().transactionId()).isEqualTo(10);
+    }
+
+    @Test
+    void tornTailIsDroppedOnReopen() throws Exception {
+        var journal = open(DataSize.ofMegabytes(1));
+        long end = 0;
+        long lastStart = 0;
+        for (long id = 0; id < 5; id++) {
+            lastStart = end == 0 ? JournalCodec.SEGMENT_HEADER : end;
+            end = journal.append(transaction(id));
+        }
+        journal.destroy();
+        opened.clear();
+
+        try (var file = new RandomAccessFile(JournalCodec.segmentPath(directory, 0).toFile(), "rw")) {
+            file.seek(end - 3);
+            file.write(new byte[]{1, 2, 3});
+        }
+
+        var reopened = open(DataSize.ofMegabytes(1));
+        assertThat(reopened.durableOffset()).isEqualTo(lastStart);
+        assertThat(JournalReader.open(directory, 0).replay(e -> { })).isEqualTo(4);
+
+        reopened.appendAfterCommit(transaction(99));
+        reopened.awaitPending();
+        assertThat(reopened.reader(lastStart).next().transactionId()).isEqualTo(99);
+    }
+
+    private LedgerJournal open(DataSize segmentSize) throws IOException {
+        var journal = new LedgerJournal(
+                new JournalProperties(true, directory, segmentSize, Duration.ofSeconds(5)), registry);
+        opened.add(journal);
+        return journal;
+    }
+
+    private static TransactionEntity transaction(long id) {
+        var tx = new TransactionEntity();
+        tx.setId(id);
+        tx.setIdempotencyKey("key-" + id);
+        tx.setType(TransactionType.TRANSFER);
+        tx.setFromAccountId(1L);
+        tx.setAmount(Money.of("7.5"));
+        tx.setCurrency("USD");
+        tx.setStatus("COMPLETED");
+        tx.setFromBalanceBefore(Money.of("100"));
+        tx.setFromBalanceAfter(Money.of("92.5"));
+        tx.setCreatedAt(Instant.ofEpochSecond(1_700_000_000L, id));
+        return tx;
+    }
+}
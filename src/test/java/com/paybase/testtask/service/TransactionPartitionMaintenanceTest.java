@@ -0,0 +1,76 @@
+package com.paybase.testtask.service;
+
+import com.paybase.testtask.config.ShardingProperties;
+import com.paybase.testtask.config.TransactionPartitionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TransactionPartitionMaintenanceTest {
+
+    @Mock
+    private JdbcTemplate jdbc;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void createsMissingUpcomingPartitions() {
+        when(jdbc.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("transactions_p2025_02", "transactions_p2025_03", "transactions_p2025_04"));
+
+        maintenance(0).maintain(YearMonth.of(2025, 3));
+
+        verify(jdbc).execute("CREATE TABLE IF NOT EXISTS transactions_p2025_05 PARTITION OF transactions "
+                + "FOR VALUES FROM ('2025-05-01') TO ('2025-06-01')");
+        verify(jdbc).execute("CREATE TABLE IF NOT EXISTS transactions_p2025_06 PARTITION OF transactions "
+                + "FOR VALUES FROM ('2025-06-01') TO ('2025-07-01')");
+        verify(jdbc, never()).execute("CREATE SCHEMA IF NOT EXISTS archive");
+    }
+
+    @Test
+    void archivesPartitionsPastRetention() {
+        when(jdbc.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "transactions_p2024_12", "transactions_p2025_01", "transactions_p2025_02",
+                "transactions_p2025_03", "transactions_p2025_04", "transactions_p2025_05", "transactions_p2025_06"));
+
+        maintenance(2).maintain(YearMonth.of(2025, 3));
+
+        InOrder order = inOrder(jdbc);
+        order.verify(jdbc).execute("CREATE SCHEMA IF NOT EXISTS archive");
+        order.verify(jdbc).execute("ALTER TABLE transactions DETACH PARTITION transactions_p2024_12");
+        order.verify(jdbc).execute("ALTER TABLE transactions_p2024_12 SET SCHEMA archive");
+        verify(jdbc, never()).execute("ALTER TABLE transactions DETACH PARTITION transactions_p2025_01");
+        assertThat(registry.get("ledger.partitions.archived").counter().count()).isEqualTo(1);
+    }
+
+    private TransactionPartitionMaintenance maintenance(int retainMonths) {
+        return new TransactionPartitionMaintenance(
+                new TransactionPartitionProperties(true, 3600000, 3, retainMonths, "archive"),
+                jdbc,
+                new TransactionTemplate(transactionManager),
+                new ShardRouter(new ShardingProperties(false, List.of(), 5000, Duration.ofSeconds(30), Duration.ofMinutes(5))),
+                registry);
+    }
+}
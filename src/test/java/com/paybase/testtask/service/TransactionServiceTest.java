@@ -1,20 +1,28 @@
 package com.paybase.testtask.service;
 
+import com.paybase.testtask.config.ConcurrencyProperties;
+import com.paybase.testtask.config.LedgerMetricsProperties;
 import com.paybase.testtask.domain.AccountEntity;
+import com.paybase.testtask.domain.Money;
 import com.paybase.testtask.domain.TransactionEntity;
 import com.paybase.testtask.domain.TransactionType;
 import com.paybase.testtask.dto.TransactionRequest;
 import com.paybase.testtask.exceptions.InsufficientFundsException;
 import com.paybase.testtask.repository.AccountRepository;
 import com.paybase.testtask.repository.TransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -32,6 +40,33 @@ class TransactionServiceTest {
     @Mock
     private TransactionRepository transactionRepository;
 
+    @Mock
+    private IdempotencyKeyFilter keyFilter;
+
+    @Mock
+    private IdempotencyStore keys;
+
+    @Mock
+    private BalanceCache balanceCache;
+
+    @Mock
+    private OutboxWriter outbox;
+
+    @Mock
+    private LedgerJournal journal;
+
+    @Mock
+    private AccountBuckets buckets;
+
+    @Spy
+    private ContentionTracker contention = tracker(ConcurrencyProperties.Mode.PESSIMISTIC);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private LedgerMetrics metrics = new LedgerMetrics(
+            new LedgerMetricsProperties(4, Duration.ofMillis(200)), registry);
+
     @InjectMocks
     private TransactionService transactionService;
 
@@ -50,12 +85,15 @@ class TransactionServiceTest {
                 "deposit"
         );
 
-        when(transactionRepository.findByIdempotencyKey("idempotent-1"))
-                .thenReturn(Optional.of(existing));
+        when(keyFilter.mightContain("idempotent-1")).thenReturn(true);
+        Instant createdAt = Instant.parse("2024-03-01T10:00:00Z");
+        when(keys.find("idempotent-1")).thenReturn(Optional.of(new IdempotencyStore.Claim(42L, createdAt)));
+        when(transactionRepository.findByIdAndCreatedAt(42L, createdAt)).thenReturn(Optional.of(existing));
 
         TransactionEntity result = transactionService.create(request);
 
         assertThat(result).isSameAs(existing);
+        assertThat(registry.counter("ledger.idempotency.requests", "result", "hit").count()).isEqualTo(1.0);
         verify(accountRepository, never()).lockById(org.mockito.ArgumentMatchers.any());
         verify(transactionRepository, never()).save(org.mockito.ArgumentMatchers.any());
     }
@@ -64,7 +102,7 @@ class TransactionServiceTest {
     void depositUpdatesBalanceAndPersistsTransaction() {
         AccountEntity account = new AccountEntity();
         account.setId(1L);
-        account.setBalance(new BigDecimal("50.00"));
+        account.setBalance(Money.of("50.00"));
 
         TransactionRequest request = new TransactionRequest(
                 "dep-1",
@@ -76,26 +114,28 @@ class TransactionServiceTest {
                 "deposit"
         );
 
-        when(transactionRepository.findByIdempotencyKey("dep-1"))
-                .thenReturn(Optional.empty());
+        when(keyFilter.mightContain("dep-1")).thenReturn(true);
+        when(keys.find("dep-1")).thenReturn(Optional.empty());
         when(accountRepository.lockById(1L)).thenReturn(Optional.of(account));
         when(transactionRepository.save(org.mockito.ArgumentMatchers.any()))
                 .thenAnswer(invocation -> invocation.getArgument(0));
 
         TransactionEntity result = transactionService.create(request);
 
-        assertThat(account.getBalance()).isEqualByComparingTo("75.00");
+        assertThat(account.getBalance()).isEqualTo(Money.of("75.00"));
         assertThat(result.getToAccountId()).isEqualTo(1L);
-        assertThat(result.getToBalanceBefore()).isEqualByComparingTo("50.00");
-        assertThat(result.getToBalanceAfter()).isEqualByComparingTo("75.00");
+        assertThat(result.getToBalanceBefore()).isEqualTo(Money.of("50.00"));
+        assertThat(result.getToBalanceAfter()).isEqualTo(Money.of("75.00"));
         assertThat(result.getFromBalanceBefore()).isNull();
+        assertThat(registry.find("ledger.account.lock.wait").timers())
+                .anySatisfy(timer -> assertThat(timer.count()).isEqualTo(1));
     }
 
     @Test
     void withdrawThrowsWhenInsufficientFunds() {
         AccountEntity account = new AccountEntity();
         account.setId(2L);
-        account.setBalance(new BigDecimal("10.00"));
+        account.setBalance(Money.of("10.00"));
 
         TransactionRequest request = new TransactionRequest(
                 "wd-1",
@@ -107,25 +147,27 @@ class TransactionServiceTest {
                 "withdraw"
         );
 
-        when(transactionRepository.findByIdempotencyKey("wd-1"))
-                .thenReturn(Optional.empty());
+        when(keyFilter.mightContain("wd-1")).thenReturn(true);
+        when(keys.find("wd-1")).thenReturn(Optional.empty());
         when(accountRepository.lockById(2L)).thenReturn(Optional.of(account));
 
         assertThatThrownBy(() -> transactionService.create(request))
                 .isInstanceOf(InsufficientFundsException.class);
 
         verify(transactionRepository, never()).save(org.mockito.ArgumentMatchers.any());
+        assertThat(registry.counter("ledger.transactions.insufficient_funds", "type", "WITHDRAWAL").count())
+                .isEqualTo(1.0);
     }
 
     @Test
     void transferUpdatesBothAccountsAndPersistsTransaction() {
         AccountEntity from = new AccountEntity();
         from.setId(1L);
-        from.setBalance(new BigDecimal("100.00"));
+        from.setBalance(Money.of("100.00"));
 
         AccountEntity to = new AccountEntity();
         to.setId(2L);
-        to.setBalance(new BigDecimal("50.00"));
+        to.setBalance(Money.of("50.00"));
 
         TransactionRequest request = new TransactionRequest(
                 "tr-1",
@@ -137,26 +179,89 @@ class TransactionServiceTest {
                 "transfer"
         );
 
-        when(transactionRepository.findByIdempotencyKey("tr-1"))
-                .thenReturn(Optional.empty());
-        when(accountRepository.lockById(1L)).thenReturn(Optional.of(from));
-        when(accountRepository.lockById(2L)).thenReturn(Optional.of(to));
+        when(keyFilter.mightContain("tr-1")).thenReturn(true);
+        when(keys.find("tr-1")).thenReturn(Optional.empty());
+        when(accountRepository.lockAllById(List.of(1L, 2L))).thenReturn(List.of(from, to));
         when(transactionRepository.save(org.mockito.ArgumentMatchers.any()))
                 .thenAnswer(invocation -> invocation.getArgument(0));
 
         TransactionEntity result = transactionService.create(request);
 
-        assertThat(from.getBalance()).isEqualByComparingTo("70.00");
-        assertThat(to.getBalance()).isEqualByComparingTo("80.00");
+        assertThat(from.getBalance()).isEqualTo(Money.of("70.00"));
+        assertThat(to.getBalance()).isEqualTo(Money.of("80.00"));
 
         ArgumentCaptor<TransactionEntity> captor = ArgumentCaptor.forClass(TransactionEntity.class);
         verify(transactionRepository).save(captor.capture());
         TransactionEntity saved = captor.getValue();
 
-        assertThat(saved.getFromBalanceBefore()).isEqualByComparingTo("100.00");
-        assertThat(saved.getFromBalanceAfter()).isEqualByComparingTo("70.00");
-        assertThat(saved.getToBalanceBefore()).isEqualByComparingTo("50.00");
-        assertThat(saved.getToBalanceAfter()).isEqualByComparingTo("80.00");
+        assertThat(saved.getFromBalanceBefore()).isEqualTo(Money.of("100.00"));
+        assertThat(saved.getFromBalanceAfter()).isEqualTo(Money.of("70.00"));
+        assertThat(saved.getToBalanceBefore()).isEqualTo(Money.of("50.00"));
+        assertThat(saved.getToBalanceAfter()).isEqualTo(Money.of("80.00"));
         assertThat(result).isSameAs(saved);
     }
+
+    @Test
+    void createSkipsLookupWhenFilterReportsUnknownKey() {
+        AccountEntity account = new AccountEntity();
+        account.setId(3L);
+        account.setBalance(Money.of("0.00"));
+
+        TransactionRequest request = new TransactionRequest(
+                "fresh-1",
+                TransactionType.DEPOSIT,
+                null,
+                3L,
+                new BigDecimal("10.00"),
+                "USD",
+                "deposit"
+        );
+
+        when(keyFilter.mightContain("fresh-1")).thenReturn(false);
+        when(accountRepository.lockById(3L)).thenReturn(Optional.of(account));
+        when(transactionRepository.save(org.mockito.ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        transactionService.create(request);
+
+        verify(keys, never()).find("fresh-1");
+        verify(keys).claim(org.mockito.ArgumentMatchers.any());
+        verify(keyFilter).put("fresh-1");
+    }
+
+    @Test
+    void optimisticModeLoadsAccountWithoutRowLock() {
+        AccountEntity account = new AccountEntity();
+        account.setId(4L);
+        account.setBalance(Money.of("5.00"));
+
+        TransactionRequest request = new TransactionRequest(
+                "optimistic-1",
+                TransactionType.DEPOSIT,
+                null,
+                4L,
+                new BigDecimal("1.00"),
+                "USD",
+                "deposit"
+        );
+
+        var service = new TransactionService(accountRepository, transactionRepository, keyFilter, keys, balanceCache,
+                tracker(ConcurrencyProperties.Mode.OPTIMISTIC), metrics, outbox, journal, buckets);
+
+        when(keyFilter.mightContain("optimistic-1")).thenReturn(false);
+        when(accountRepository.findById(4L)).thenReturn(Optional.of(account));
+        when(transactionRepository.save(org.mockito.ArgumentMatchers.any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        service.create(request);
+
+        assertThat(account.getBalance()).isEqualTo(Money.of("6.00"));
+        verify(accountRepository, never()).lockById(4L);
+    }
+
+    private static ContentionTracker tracker(ConcurrencyProperties.Mode mode) {
+        var props = new ConcurrencyProperties(mode, 5, Duration.ofMillis(5), Duration.ofMillis(5),
+                Duration.ofMillis(100), 0.3, Duration.ofMinutes(1));
+        return new ContentionTracker(props, new SimpleMeterRegistry());
+    }
 }